@@ -0,0 +1,219 @@
+package neuralnet.core;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Java Vector API implementation of Kernels.<br>
+ * Uses the widest vectors the CPU supports, as detected by the JVM at runtime, with a scalar loop for whatever is left over.
+ * Must be compiled and run with <em>--add-modules jdk.incubator.vector</em>; see Kernels for details and the tolerance
+ * compared to the scalar kernels.
+ */
+final class VectorKernels extends Kernels {
+	static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	@Override
+	String name() {
+		return "vector (" + SPECIES.length() + " x double)";
+	}
+	@Override
+	double sparseInputThreshold() {
+		//The dense kernels are several times faster here, so the inputs have to be much sparser for skipping zeros to pay off
+		return 0.15;
+	}
+	@Override
+	double dot(final double[] a, final int aOffset, final double[] b, final int bOffset, final int len) {
+		final int bound = SPECIES.loopBound(len);
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(; i < bound; i += SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+			sum = sum.add(va.mul(vb));
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for(; i < len; i ++)
+			result += a[aOffset + i] * b[bOffset + i];
+		return result;
+	}
+	@Override
+	void dot4(final double[] a, final int aOffset, final double[] b, final int bOffset, final int stride, final int len, final double[] out, final int outOffset) {
+		final int b0 = bOffset, b1 = b0 + stride, b2 = b1 + stride, b3 = b2 + stride;
+		final int bound = SPECIES.loopBound(len);
+		DoubleVector s0 = DoubleVector.zero(SPECIES), s1 = s0, s2 = s0, s3 = s0;
+		int i = 0;
+		for(; i < bound; i += SPECIES.length()) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+			s0 = s0.add(x.mul(DoubleVector.fromArray(SPECIES, b, b0 + i)));
+			s1 = s1.add(x.mul(DoubleVector.fromArray(SPECIES, b, b1 + i)));
+			s2 = s2.add(x.mul(DoubleVector.fromArray(SPECIES, b, b2 + i)));
+			s3 = s3.add(x.mul(DoubleVector.fromArray(SPECIES, b, b3 + i)));
+		}
+		double r0 = s0.reduceLanes(VectorOperators.ADD), r1 = s1.reduceLanes(VectorOperators.ADD);
+		double r2 = s2.reduceLanes(VectorOperators.ADD), r3 = s3.reduceLanes(VectorOperators.ADD);
+		for(; i < len; i ++) {
+			final double x = a[aOffset + i];
+			r0 += x * b[b0 + i];
+			r1 += x * b[b1 + i];
+			r2 += x * b[b2 + i];
+			r3 += x * b[b3 + i];
+		}
+		out[outOffset] += r0;
+		out[outOffset + 1] += r1;
+		out[outOffset + 2] += r2;
+		out[outOffset + 3] += r3;
+	}
+	@Override
+	void axpy(final double alpha, final double[] x, final int xOffset, final double[] y, final int yOffset, final int len) {
+		final int bound = SPECIES.loopBound(len);
+		int i = 0;
+		for(; i < bound; i += SPECIES.length()) {
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+			vy.add(DoubleVector.fromArray(SPECIES, x, xOffset + i).mul(alpha)).intoArray(y, yOffset + i);
+		}
+		for(; i < len; i ++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+	@Override
+	void multiplyAdd4(final double x0, final double x1, final double x2, final double x3, final double[] b, final int bOffset, final int stride,
+			final double[] c, final int cOffset, final int len) {
+		final int b0 = bOffset, b1 = b0 + stride, b2 = b1 + stride, b3 = b2 + stride;
+		final int bound = SPECIES.loopBound(len);
+		int i = 0;
+		for(; i < bound; i += SPECIES.length()) {
+			//Same order of operations as the scalar version, so the results are identical
+			DoubleVector t = DoubleVector.fromArray(SPECIES, b, b0 + i).mul(x0);
+			t = t.add(DoubleVector.fromArray(SPECIES, b, b1 + i).mul(x1));
+			t = t.add(DoubleVector.fromArray(SPECIES, b, b2 + i).mul(x2));
+			t = t.add(DoubleVector.fromArray(SPECIES, b, b3 + i).mul(x3));
+			DoubleVector.fromArray(SPECIES, c, cOffset + i).add(t).intoArray(c, cOffset + i);
+		}
+		for(; i < len; i ++)
+			c[cOffset + i] += x0 * b[b0 + i] + x1 * b[b1 + i] + x2 * b[b2 + i] + x3 * b[b3 + i];
+	}
+	@Override
+	void update(final double[] w, final double[] gradient, final double[] velocity, final int len, final double decay,
+			final double learningRate, final double momentumCoefficient) {
+		final int bound = SPECIES.loopBound(len);
+		int k = 0;
+		if(velocity != null) {
+			for(; k < bound; k += SPECIES.length()) {
+				DoubleVector v = DoubleVector.fromArray(SPECIES, velocity, k).mul(momentumCoefficient)
+						.sub(DoubleVector.fromArray(SPECIES, gradient, k).mul(learningRate));
+				v.intoArray(velocity, k);
+				DoubleVector.fromArray(SPECIES, w, k).mul(decay).add(v).intoArray(w, k);
+			}
+			for(; k < len; k ++) {
+				velocity[k] = momentumCoefficient * velocity[k] - learningRate * gradient[k];
+				w[k] = w[k] * decay + velocity[k];
+			}
+		}
+		else {
+			for(; k < bound; k += SPECIES.length()) {
+				DoubleVector.fromArray(SPECIES, w, k).mul(decay)
+						.sub(DoubleVector.fromArray(SPECIES, gradient, k).mul(learningRate)).intoArray(w, k);
+			}
+			for(; k < len; k ++)
+				w[k] = w[k] * decay - learningRate * gradient[k];
+		}
+	}
+
+	@Override
+	float dot(final float[] a, final int aOffset, final float[] b, final int bOffset, final int len) {
+		final int bound = FLOAT_SPECIES.loopBound(len);
+		FloatVector sum = FloatVector.zero(FLOAT_SPECIES);
+		int i = 0;
+		for(; i < bound; i += FLOAT_SPECIES.length()) {
+			FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+			FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i);
+			sum = sum.add(va.mul(vb));
+		}
+		float result = sum.reduceLanes(VectorOperators.ADD);
+		for(; i < len; i ++)
+			result += a[aOffset + i] * b[bOffset + i];
+		return result;
+	}
+	@Override
+	void dot4(final float[] a, final int aOffset, final float[] b, final int bOffset, final int stride, final int len, final float[] out, final int outOffset) {
+		final int b0 = bOffset, b1 = b0 + stride, b2 = b1 + stride, b3 = b2 + stride;
+		final int bound = FLOAT_SPECIES.loopBound(len);
+		FloatVector s0 = FloatVector.zero(FLOAT_SPECIES), s1 = s0, s2 = s0, s3 = s0;
+		int i = 0;
+		for(; i < bound; i += FLOAT_SPECIES.length()) {
+			FloatVector x = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+			s0 = s0.add(x.mul(FloatVector.fromArray(FLOAT_SPECIES, b, b0 + i)));
+			s1 = s1.add(x.mul(FloatVector.fromArray(FLOAT_SPECIES, b, b1 + i)));
+			s2 = s2.add(x.mul(FloatVector.fromArray(FLOAT_SPECIES, b, b2 + i)));
+			s3 = s3.add(x.mul(FloatVector.fromArray(FLOAT_SPECIES, b, b3 + i)));
+		}
+		float r0 = s0.reduceLanes(VectorOperators.ADD), r1 = s1.reduceLanes(VectorOperators.ADD);
+		float r2 = s2.reduceLanes(VectorOperators.ADD), r3 = s3.reduceLanes(VectorOperators.ADD);
+		for(; i < len; i ++) {
+			final float x = a[aOffset + i];
+			r0 += x * b[b0 + i];
+			r1 += x * b[b1 + i];
+			r2 += x * b[b2 + i];
+			r3 += x * b[b3 + i];
+		}
+		out[outOffset] += r0;
+		out[outOffset + 1] += r1;
+		out[outOffset + 2] += r2;
+		out[outOffset + 3] += r3;
+	}
+	@Override
+	void axpy(final float alpha, final float[] x, final int xOffset, final float[] y, final int yOffset, final int len) {
+		final int bound = FLOAT_SPECIES.loopBound(len);
+		int i = 0;
+		for(; i < bound; i += FLOAT_SPECIES.length()) {
+			FloatVector vy = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+			vy.add(FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i).mul(alpha)).intoArray(y, yOffset + i);
+		}
+		for(; i < len; i ++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+	@Override
+	void multiplyAdd4(final float x0, final float x1, final float x2, final float x3, final float[] b, final int bOffset, final int stride,
+			final float[] c, final int cOffset, final int len) {
+		final int b0 = bOffset, b1 = b0 + stride, b2 = b1 + stride, b3 = b2 + stride;
+		final int bound = FLOAT_SPECIES.loopBound(len);
+		int i = 0;
+		for(; i < bound; i += FLOAT_SPECIES.length()) {
+			FloatVector t = FloatVector.fromArray(FLOAT_SPECIES, b, b0 + i).mul(x0);
+			t = t.add(FloatVector.fromArray(FLOAT_SPECIES, b, b1 + i).mul(x1));
+			t = t.add(FloatVector.fromArray(FLOAT_SPECIES, b, b2 + i).mul(x2));
+			t = t.add(FloatVector.fromArray(FLOAT_SPECIES, b, b3 + i).mul(x3));
+			FloatVector.fromArray(FLOAT_SPECIES, c, cOffset + i).add(t).intoArray(c, cOffset + i);
+		}
+		for(; i < len; i ++)
+			c[cOffset + i] += x0 * b[b0 + i] + x1 * b[b1 + i] + x2 * b[b2 + i] + x3 * b[b3 + i];
+	}
+	@Override
+	void update(final float[] w, final float[] gradient, final float[] velocity, final int len, final float decay,
+			final float learningRate, final float momentumCoefficient) {
+		final int bound = FLOAT_SPECIES.loopBound(len);
+		int k = 0;
+		if(velocity != null) {
+			for(; k < bound; k += FLOAT_SPECIES.length()) {
+				FloatVector v = FloatVector.fromArray(FLOAT_SPECIES, velocity, k).mul(momentumCoefficient)
+						.sub(FloatVector.fromArray(FLOAT_SPECIES, gradient, k).mul(learningRate));
+				v.intoArray(velocity, k);
+				FloatVector.fromArray(FLOAT_SPECIES, w, k).mul(decay).add(v).intoArray(w, k);
+			}
+			for(; k < len; k ++) {
+				velocity[k] = momentumCoefficient * velocity[k] - learningRate * gradient[k];
+				w[k] = w[k] * decay + velocity[k];
+			}
+		}
+		else {
+			for(; k < bound; k += FLOAT_SPECIES.length()) {
+				FloatVector.fromArray(FLOAT_SPECIES, w, k).mul(decay)
+						.sub(FloatVector.fromArray(FLOAT_SPECIES, gradient, k).mul(learningRate)).intoArray(w, k);
+			}
+			for(; k < len; k ++)
+				w[k] = w[k] * decay - learningRate * gradient[k];
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+
+import mnist.MNISTImage;
+import mnist.MNISTLoader;
+import neuralnet.core.ActivationFunction;
+import neuralnet.core.ClassificationNeuralNetwork;
+import neuralnet.core.NeuralNetworkException;
+
+/*
+ * Reports the accuracy and speed of the approximate sigmoid and tanh activation functions.
+ * First the maximum error of each approximation (and of its derivative) is measured on a fine grid, and the speed of the
+ * bulk activation of each function is timed. Then every network in "trained networks" is evaluated on the MNIST test set
+ * with its exact activation function and with the approximation, and the accuracy, the number of images classified
+ * differently and the classification speed are printed.
+ * If the MNIST files are not in the data folder, random images are used instead; the accuracy is then meaningless,
+ * but the number of images classified differently still is.
+ * Usage: ApproximateActivationReport [networks folder]
+ */
+public class ApproximateActivationReport {
+	static final int REPEATS = 5;
+
+	//Returns the approximation of an exact activation function, or null if it has none
+	static ActivationFunction approximationOf(ActivationFunction exact) {
+		if(exact == ClassificationNeuralNetwork.SIGMOID_ACTIVATION)
+			return ClassificationNeuralNetwork.FAST_SIGMOID_ACTIVATION;
+		if(exact == ClassificationNeuralNetwork.TANH_ACTIVATION)
+			return ClassificationNeuralNetwork.FAST_TANH_ACTIVATION;
+		return null;
+	}
+	//Prints the maximum absolute error of an approximation and its derivative from -32 to 32
+	static void printError(String name, ActivationFunction exact, ActivationFunction approx) {
+		double maxError = 0, maxDerivativeError = 0;
+		for(int i = -(1 << 22); i <= 1 << 22; i ++) {
+			double z = i / 131072.0 + 0.3e-6;
+			maxError = Math.max(maxError, Math.abs(exact.activation(z) - approx.activation(z)));
+			maxDerivativeError = Math.max(maxDerivativeError, Math.abs(exact.activationDerivative(z) - approx.activationDerivative(z)));
+		}
+		System.out.printf("%-8s max error %.2e, derivative max error %.2e\n", name, maxError, maxDerivativeError);
+	}
+	//Returns the number of nanoseconds the bulk activation of a function takes per element
+	static double timeActivation(ActivationFunction f, double[] z, double[] a) {
+		double best = Double.MAX_VALUE;
+		for(int rep = 0; rep < REPEATS * 4; rep ++) {
+			long start = System.nanoTime();
+			for(int k = 0; k < 20; k ++)
+				f.activation(z, a, 0, z.length);
+			best = Math.min(best, (System.nanoTime() - start) / (20.0 * z.length));
+		}
+		return best;
+	}
+	//Returns the number of images per second classified, and stores the results of classification
+	static double timeClassify(ClassificationNeuralNetwork<MNISTImage> net, MNISTImage[] data, Object[] results) {
+		double best = 0;
+		for(int rep = 0; rep < REPEATS; rep ++) {
+			long start = System.nanoTime();
+			for(int i = 0; i < data.length; i ++)
+				results[i] = net.classify(data[i]);
+			best = Math.max(best, data.length / ((System.nanoTime() - start) / 1e9));
+		}
+		return best;
+	}
+
+	public static void main(String[] args) throws IOException, NeuralNetworkException {
+		File dir = new File(args.length > 0 ? args[0] : "trained networks");
+		MNISTImage[] data;
+		String dataName;
+		try {
+			data = MNISTLoader.loadTestingImages();
+			dataName = "the MNIST test set";
+		}
+		catch(IOException | IllegalArgumentException e) {
+			System.out.println("MNIST data not found (" + e.getMessage() + "), using random images");
+			data = TrainingBenchmark.randomImages(MNISTLoader.TESTING_IMG_COUNT, 42);
+			dataName = "random images (MNIST data not found; the accuracies are meaningless)";
+		}
+
+		printError("sigmoid", ClassificationNeuralNetwork.SIGMOID_ACTIVATION, ClassificationNeuralNetwork.FAST_SIGMOID_ACTIVATION);
+		printError("tanh", ClassificationNeuralNetwork.TANH_ACTIVATION, ClassificationNeuralNetwork.FAST_TANH_ACTIVATION);
+		//Weighted sums spread like those of a trained network's hidden layer
+		java.util.Random r = new java.util.Random(42);
+		double[] z = new double[4096], a = new double[4096];
+		for(int i = 0; i < z.length; i ++)
+			z[i] = r.nextGaussian() * 4;
+		System.out.printf("%-8s %12s %12s %9s\n", "", "Exact (ns)", "Approx (ns)", "Speedup");
+		for(ActivationFunction exact : new ActivationFunction[] { ClassificationNeuralNetwork.SIGMOID_ACTIVATION, ClassificationNeuralNetwork.TANH_ACTIVATION }) {
+			double e = timeActivation(exact, z, a);
+			double f = timeActivation(approximationOf(exact), z, a);
+			System.out.printf("%-8s %12.2f %12.2f %9.2f\n", exact == ClassificationNeuralNetwork.SIGMOID_ACTIVATION ? "sigmoid" : "tanh", e, f, e / f);
+		}
+		System.out.println();
+
+		System.out.printf("Networks evaluated on %d %s\n", data.length, dataName);
+		System.out.printf("%-16s %-15s %10s %10s %8s %14s %14s %9s\n", "Network", "Topology", "Exact", "Approx", "Changed",
+				"Exact (img/s)", "Approx (img/s)", "Speedup");
+		Object[] exactResults = new Object[data.length], approxResults = new Object[data.length];
+		for(File f : dir.listFiles()) {
+			if(!f.getName().endsWith(".ann") || f.getName().endsWith(".f32.ann"))
+				continue;
+			ClassificationNeuralNetwork<MNISTImage> net = new ClassificationNeuralNetwork<MNISTImage>(f);
+			ActivationFunction exact = net.getActivationFunction();
+			ActivationFunction approx = approximationOf(exact);
+			if(approx == null) {
+				System.out.printf("%-16s has no approximate activation function\n", f.getName());
+				continue;
+			}
+			double exactSpeed = timeClassify(net, data, exactResults);
+			net.setActivationFunction(approx);
+			double approxSpeed = timeClassify(net, data, approxResults);
+			int exactCorrect = 0, approxCorrect = 0, changed = 0;
+			for(int i = 0; i < data.length; i ++) {
+				if(exactResults[i].equals(data[i].getClassification()))
+					exactCorrect ++;
+				if(approxResults[i].equals(data[i].getClassification()))
+					approxCorrect ++;
+				if(!exactResults[i].equals(approxResults[i]))
+					changed ++;
+			}
+			System.out.printf("%-16s %-15s %9.2f%% %9.2f%% %8d %14.0f %14.0f %9.2f\n", f.getName(), TrainingBenchmark.name(net.getNeuronCounts()),
+					100.0 * exactCorrect / data.length, 100.0 * approxCorrect / data.length, changed, exactSpeed, approxSpeed, approxSpeed / exactSpeed);
+		}
+	}
+}
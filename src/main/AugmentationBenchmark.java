@@ -0,0 +1,70 @@
+package main;
+
+import java.io.IOException;
+
+import mnist.AugmentedMNISTDataset;
+import mnist.ImageAugmenter;
+import mnist.MNISTImage;
+import neuralnet.core.ClassificationNeuralNetwork;
+
+/*
+ * Measures how fast ImageAugmenter distorts images on one thread with translation only, with rotation and with elastic
+ * distortion, and the bytes allocated for each image, which should be 0.
+ * Then compares the training throughput on images distorted once beforehand with the throughput on an AugmentedMNISTDataset,
+ * which distorts them again every epoch; these should be about the same as long as the augmentation keeps up with training.
+ * (Distorted images are compared with distorted images because interpolation makes them denser, which changes the cost of training.)
+ * Usage: AugmentationBenchmark [augmentation threads] [batch size]
+ */
+public class AugmentationBenchmark {
+	static final int SAMPLES = 20000;
+
+	public static void main(String[] args) throws IOException {
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		final int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		MNISTImage[] images = TrainingBenchmark.randomImages(SAMPLES, 5);
+
+		String[] names = { "Translation", "+ Rotation", "+ Elastic" };
+		ImageAugmenter[] augmenters = {
+			new ImageAugmenter(2, 0, 0, 1),
+			new ImageAugmenter(2, 10, 0, 1),
+			new ImageAugmenter(2, 10, 1.5, 1),
+		};
+		byte[] out = new byte[MNISTImage.PIXEL_COUNT];
+		System.out.printf("%-14s %16s %16s\n", "Augmentation", "Images/s", "Bytes/image");
+		for(int a = 0; a < augmenters.length; a ++) {
+			double best = Double.MAX_VALUE;
+			long allocated = 0;
+			for(int round = 0; round < 4; round ++) {
+				long bytes = TrainingBenchmark.allocatedBytes();
+				long start = System.nanoTime();
+				for(MNISTImage img : images)
+					augmenters[a].augment(img.data, img.offset, out, 0);
+				best = Math.min(best, (System.nanoTime() - start) / 1e9);
+				allocated = TrainingBenchmark.allocatedBytes() - bytes;
+			}
+			System.out.printf("%-14s %16.0f %16.1f\n", names[a], SAMPLES / best, (double) allocated / SAMPLES);
+		}
+
+		System.out.printf("\nTraining 784-50-10, batch size %d, %d augmentation thread(s)\n", batchSize, threads);
+		ClassificationNeuralNetwork<MNISTImage> net = new ClassificationNeuralNetwork<MNISTImage>(new int[] { MNISTImage.PIXEL_COUNT, 50, 10 },
+				ClassificationNeuralNetwork.SIGMOID_ACTIVATION, ClassificationNeuralNetwork.CROSSENTROPY_SIGMOID_COST);
+		ImageAugmenter augmenter = new ImageAugmenter(2, 10, 1.5, 2);
+		MNISTImage[] distorted = new MNISTImage[SAMPLES];
+		for(int i = 0; i < SAMPLES; i ++)
+			distorted[i] = augmenter.augment(images[i]);
+		AugmentedMNISTDataset augmented = new AugmentedMNISTDataset(images, augmenter, threads);
+		double fixed = Double.MAX_VALUE, onTheFly = Double.MAX_VALUE;
+		for(int round = 0; round < 3; round ++) {
+			long start = System.nanoTime();
+			net.SGD(distorted, batchSize, 0.05, 0.0, 1);
+			fixed = Math.min(fixed, (System.nanoTime() - start) / 1e9);
+			start = System.nanoTime();
+			net.SGD(augmented, batchSize, 0.05, 0.0, 0.0, 1);
+			onTheFly = Math.min(onTheFly, (System.nanoTime() - start) / 1e9);
+		}
+		System.out.printf("%-14s %16s\n", "Data", "Images/s");
+		System.out.printf("%-14s %16.0f\n", "Pre-distorted", SAMPLES / fixed);
+		System.out.printf("%-14s %16.0f\n", "On the fly", SAMPLES / onTheFly);
+	}
+
+}
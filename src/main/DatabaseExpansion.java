@@ -1,34 +1,46 @@
 package main;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import mnist.DatabaseExpander;
-import mnist.MNISTImage;
+import mnist.ImageTransform;
 import mnist.MNISTLoader;
+import mnist.MappedMNISTDataset;
 
 public class DatabaseExpansion {
 
-	public static void expand12() throws FileNotFoundException, IOException {
-		MNISTImage[] original = MNISTLoader.loadTrainingImages();
-		MNISTImage[] artificial = DatabaseExpander.expandByTranslation(original, 2);
-		int pt1Len = artificial.length / 2;
-		MNISTImage[] pt1 = new MNISTImage[pt1Len];
-		MNISTImage[] pt2 = new MNISTImage[artificial.length - pt1Len];
-		System.arraycopy(artificial, 0, pt1, 0, pt1Len);
-		System.arraycopy(artificial, pt1Len, pt2, 0, pt2.length);
-		MNISTLoader.saveImages(pt1, new File("data\\expanded_training_images_1"), new File("data\\expanded_training_labels_1"));
-		MNISTLoader.saveImages(pt2, new File("data\\expanded_training_images_2"), new File("data\\expanded_training_labels_2"));
+	//The training images, mapped from the file so they are not loaded into memory
+	static MappedMNISTDataset mapTrainingDataset() throws IOException {
+		return new MappedMNISTDataset(new File("data\\training_images"), new File("data\\training_labels")).range(0, MNISTLoader.TRAINING_IMG_COUNT);
 	}
-	public static void expand3() throws FileNotFoundException, IOException {
-		MNISTImage[] original = MNISTLoader.loadTrainingImages();
-		MNISTImage[] artificial = DatabaseExpander.expandByTranslation2(original, 2);
-		MNISTLoader.saveImages(artificial, new File("data\\expanded_training_images_3"), new File("data\\expanded_training_labels_3"));
+	//The training images shifted up, right, down and left by 2 pixels, split into two files
+	public static void expand12(int threads) throws IOException {
+		DatabaseExpander.expand(mapTrainingDataset(), DatabaseExpander.translations(2),
+				new File[] { new File("data\\expanded_training_images_1"), new File("data\\expanded_training_images_2") },
+				new File[] { new File("data\\expanded_training_labels_1"), new File("data\\expanded_training_labels_2") }, threads);
 	}
-	public static void main(String[] args) throws FileNotFoundException, IOException {
+	//The training images shifted diagonally by 2 pixels
+	public static void expand3(int threads) throws IOException {
+		DatabaseExpander.expand(mapTrainingDataset(), DatabaseExpander.diagonalTranslations(2),
+				new File("data\\expanded_training_images_3"), new File("data\\expanded_training_labels_3"), threads);
+	}
+	//The training images rotated by up to 10 degrees, scaled by up to 10% and sheared by up to 0.2, two of each
+	public static void expand4(int threads) throws IOException {
+		ImageTransform[] transforms = DatabaseExpander.concatArrays(DatabaseExpander.rotations(10, 2), DatabaseExpander.scalings(0.1, 2), DatabaseExpander.shears(0.2, 2));
+		DatabaseExpander.expand(mapTrainingDataset(), transforms,
+				new File("data\\expanded_training_images_4"), new File("data\\expanded_training_labels_4"), threads);
+	}
+	public static void expand12() throws IOException {
+		expand12(Runtime.getRuntime().availableProcessors());
+	}
+	public static void expand3() throws IOException {
+		expand3(Runtime.getRuntime().availableProcessors());
+	}
+	public static void main(String[] args) throws IOException {
 		expand12();
 		expand3();
+		expand4(Runtime.getRuntime().availableProcessors());
 	}
 
 }
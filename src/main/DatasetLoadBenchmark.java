@@ -0,0 +1,122 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import mnist.MNISTDataset;
+import mnist.MNISTImage;
+import mnist.MNISTLoader;
+import mnist.MappedMNISTDataset;
+import mnist.MappedMNISTImage;
+
+/*
+ * Compares three ways of getting the training, validation and test sets from IDX files:
+ * reading them through a stream (skipping to the validation images by reading past the training images),
+ * copying them out of the memory-mapped files with MNISTLoader.loadDataset(), and using views of the mapped files.
+ * Prints the best time of each and the heap memory taken by the result.
+ * Uses the files in data if they are there, otherwise writes 60000 random images to a temporary folder.
+ * Usage: DatasetLoadBenchmark [repeats]
+ */
+public class DatasetLoadBenchmark {
+
+	//Loading through a BufferedInputStream, as MNISTLoader did before the files were mapped
+	static MNISTDataset streamLoad(int imgCount, File imagesFile, File labelsFile, int offset) throws IOException {
+		MNISTDataset dataset = new MNISTDataset(imgCount);
+		DataInputStream images = new DataInputStream(new BufferedInputStream(new FileInputStream(imagesFile)));
+		DataInputStream labels = new DataInputStream(new BufferedInputStream(new FileInputStream(labelsFile)));
+		try {
+			labels.skipBytes(8 + offset);
+			long toSkip = 16 + (long) offset * MNISTImage.PIXEL_COUNT;
+			while(toSkip > 0) {
+				images.readByte();
+				toSkip -= 1 + images.skipBytes((int) Math.min(toSkip - 1, Integer.MAX_VALUE));
+			}
+			images.readFully(dataset.getPixels());
+			labels.readFully(dataset.getLabels());
+		}
+		finally {
+			labels.close();
+			images.close();
+		}
+		return dataset;
+	}
+
+	static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for(int i = 0; i < 3; i ++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public static void main(String[] args) throws IOException {
+		final int repeats = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		File trainingImages = new File("data\\training_images"), trainingLabels = new File("data\\training_labels");
+		File testingImages = new File("data\\testing_images"), testingLabels = new File("data\\testing_labels");
+		File temp = null;
+		try {
+			new MappedMNISTDataset(trainingImages, trainingLabels);
+			new MappedMNISTDataset(testingImages, testingLabels);
+		}
+		catch(IOException | IllegalArgumentException e) {
+			System.out.println("MNIST data not found, using random images");
+			temp = new File(System.getProperty("java.io.tmpdir"), "mnist-benchmark");
+			temp.mkdirs();
+			trainingImages = new File(temp, "training_images");
+			trainingLabels = new File(temp, "training_labels");
+			testingImages = new File(temp, "testing_images");
+			testingLabels = new File(temp, "testing_labels");
+			MNISTDataset training = new MNISTDataset(TrainingBenchmark.randomImages(MNISTLoader.TRAINING_IMG_COUNT + MNISTLoader.VALIDATION_IMG_COUNT, 1));
+			MNISTLoader.saveImages(training, trainingImages, trainingLabels);
+			MNISTLoader.saveImages(new MNISTDataset(TrainingBenchmark.randomImages(MNISTLoader.TESTING_IMG_COUNT, 2)), testingImages, testingLabels);
+		}
+
+		String[] names = { "Training", "Validation", "Test" };
+		File[][] files = { { trainingImages, trainingLabels }, { trainingImages, trainingLabels }, { testingImages, testingLabels } };
+		int[] offsets = { 0, MNISTLoader.TRAINING_IMG_COUNT, 0 };
+		int[] counts = { MNISTLoader.TRAINING_IMG_COUNT, MNISTLoader.VALIDATION_IMG_COUNT, MNISTLoader.TESTING_IMG_COUNT };
+
+		System.out.printf("%-12s %12s %12s %12s %14s %14s\n", "Set", "Stream (ms)", "Copy (ms)", "Map (ms)", "Copy (heap MB)", "Map (heap MB)");
+		for(int s = 0; s < names.length; s ++) {
+			double stream = Double.MAX_VALUE, copy = Double.MAX_VALUE, map = Double.MAX_VALUE;
+			MNISTDataset copied = null;
+			MappedMNISTImage[] mapped = null;
+			for(int i = 0; i < repeats; i ++) {
+				long start = System.nanoTime();
+				MNISTDataset streamed = streamLoad(counts[s], files[s][0], files[s][1], offsets[s]);
+				stream = Math.min(stream, (System.nanoTime() - start) / 1e6);
+
+				copied = null;
+				start = System.nanoTime();
+				copied = MNISTLoader.loadDataset(counts[s], files[s][0], files[s][1], offsets[s]);
+				copy = Math.min(copy, (System.nanoTime() - start) / 1e6);
+
+				mapped = null;
+				start = System.nanoTime();
+				mapped = new MappedMNISTDataset(files[s][0], files[s][1]).images(offsets[s], offsets[s] + counts[s]);
+				map = Math.min(map, (System.nanoTime() - start) / 1e6);
+
+				if(!Arrays.equals(streamed.getPixels(), copied.getPixels()) || !Arrays.equals(streamed.getLabels(), copied.getLabels()))
+					throw new IllegalStateException("The loaders do not agree");
+			}
+			//The heap taken by each result, measured by letting it go
+			long before = usedHeap();
+			copied = null;
+			final double copyHeap = (before - usedHeap()) / 1e6;
+			before = usedHeap();
+			mapped = null;
+			final double mapHeap = (before - usedHeap()) / 1e6;
+			System.out.printf("%-12s %12.2f %12.2f %12.2f %14.1f %14.1f\n", names[s], stream, copy, map, copyHeap, mapHeap);
+		}
+
+		if(temp != null) {
+			for(File f : temp.listFiles())
+				f.delete();
+			temp.delete();
+		}
+	}
+
+}
@@ -1,12 +1,16 @@
 package main;
 
+//import mnist.AugmentedMNISTDataset;
+//import mnist.ImageAugmenter;
 import mnist.MNISTLoader;
 
 import java.io.File;
 
-import mnist.DatabaseExpander;
 //import mnist.DatabaseExpander;
+import mnist.MNISTDataset;
 import mnist.MNISTImage;
+import mnist.MappedMNISTDataset;
+import mnist.StreamingMNISTDataset;
 import neuralnet.classification.CompositeClassifier;
 import neuralnet.core.ClassificationNeuralNetwork;
 
@@ -14,14 +18,19 @@ public class DigitRecognitionBasic {
 
 	public static void main(String[] args) {
 		try {
-			MNISTImage[] trainingImages = MNISTLoader.loadTrainingImages();
+			MNISTDataset training = MNISTLoader.loadTrainingDataset();
+			MNISTImage[] trainingImages = training.images();
 			MNISTImage[] testingImages = MNISTLoader.loadTestingImages();
-			MNISTImage[] expanded1 = MNISTLoader.loadImagesFromFile(new File("data\\expanded_training_images_1"), new File("data\\expanded_training_labels_1"));
-			MNISTImage[] expanded2 = MNISTLoader.loadImagesFromFile(new File("data\\expanded_training_images_2"), new File("data\\expanded_training_labels_2"));
-			MNISTImage[] expanded3 = MNISTLoader.loadImagesFromFile(new File("data\\expanded_training_images_3"), new File("data\\expanded_training_labels_3"));
-			
-			MNISTImage[] expandedImagesLarge = DatabaseExpander.concatArrays(trainingImages, expanded1, expanded2);
-			MNISTImage[] expandedImagesSmall = DatabaseExpander.concatArrays(trainingImages, expanded3);
+			//The expanded images are streamed from the files a chunk at a time instead of being loaded and concatenated
+			MappedMNISTDataset originalFile = new MappedMNISTDataset(new File("data\\training_images"), new File("data\\training_labels"));
+			MappedMNISTDataset original = originalFile.range(0, MNISTLoader.TRAINING_IMG_COUNT);
+			MappedMNISTDataset expanded1 = new MappedMNISTDataset(new File("data\\expanded_training_images_1"), new File("data\\expanded_training_labels_1"));
+			MappedMNISTDataset expanded2 = new MappedMNISTDataset(new File("data\\expanded_training_images_2"), new File("data\\expanded_training_labels_2"));
+			MappedMNISTDataset expanded3 = new MappedMNISTDataset(new File("data\\expanded_training_images_3"), new File("data\\expanded_training_labels_3"));
+			StreamingMNISTDataset expandedImagesLarge = new StreamingMNISTDataset(StreamingMNISTDataset.DEFAULT_CHUNK_SIZE, StreamingMNISTDataset.DEFAULT_BLOCK_SIZE, original, expanded1, expanded2);
+			StreamingMNISTDataset expandedImagesSmall = new StreamingMNISTDataset(StreamingMNISTDataset.DEFAULT_CHUNK_SIZE, StreamingMNISTDataset.DEFAULT_BLOCK_SIZE, original, expanded3);
+			//Instead of the fixed expanded files, the training images can be distorted differently every epoch
+			//AugmentedMNISTDataset augmentedImages = new AugmentedMNISTDataset(trainingImages, new ImageAugmenter(2, 10, 1.5, System.nanoTime()), Runtime.getRuntime().availableProcessors());
 			
 			MNISTImage[] smallDataset = new MNISTImage[1000];
 			System.arraycopy(trainingImages, 0, smallDataset, 0, 1000);
@@ -29,6 +38,9 @@ public class DigitRecognitionBasic {
 					new int[] { MNISTImage.PIXEL_COUNT, 50, 10 },
 					ClassificationNeuralNetwork.SIGMOID_ACTIVATION,
 					ClassificationNeuralNetwork.CROSSENTROPY_SIGMOID_COST);
+			net.setTrainingParallelism(Runtime.getRuntime().availableProcessors());
+			//Decode the streamed images on another thread while training
+			net.setInputPrefetching(1);
 			//net.scheduledSGD(trainingImages, 3, 0.20, 0.5, 0.6, testingImages, 3, 0.5, 4);
 			//net.dropoutSGD(smallDataset, 2, 0.10, 0.5, 0.4, 30, testingImages);
 			
@@ -37,6 +49,8 @@ public class DigitRecognitionBasic {
 			
 			net.scheduledSGD(expandedImagesSmall, 1, 0.05, 5.0, 0.6, testingImages, 4, 0.25, 4);
 			net.saveData(new File("Momentum_expanded.ann"));
+			//net.scheduledSGD(augmentedImages, 1, 0.05, 5.0, 0.6, testingImages, 4, 0.25, 4);
+			//net.saveData(new File("Momentum_augmented.ann"));
 		} 
 		catch (Exception e) {
 			e.printStackTrace();
@@ -0,0 +1,121 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import mnist.DatabaseExpander;
+import mnist.MNISTDataset;
+import mnist.MNISTLoader;
+import mnist.MappedMNISTDataset;
+
+/*
+ * Compares expanding the training set by 4 translations the old way, building every translated image in memory and then
+ * saving the two halves (DatabaseExpansion.expand12() before it was streamed), with DatabaseExpander.expand(),
+ * which transforms chunks of the images on several threads and writes them as they are done.
+ * Prints the best time of each and the peak heap used, and checks that the files are the same.
+ * Uses the files in data if they are there, otherwise writes 60000 random images to a temporary folder.
+ * Usage: ExpansionBenchmark [threads] [repeats]
+ */
+public class ExpansionBenchmark {
+
+	//Samples the used heap every millisecond and keeps the highest value
+	static final class HeapSampler extends Thread {
+		volatile boolean done;
+		volatile long peak;
+
+		HeapSampler() {
+			setDaemon(true);
+		}
+		@Override
+		public void run() {
+			Runtime rt = Runtime.getRuntime();
+			while(!done) {
+				peak = Math.max(peak, rt.totalMemory() - rt.freeMemory());
+				try {
+					Thread.sleep(1);
+				}
+				catch(InterruptedException e) {
+					return;
+				}
+			}
+		}
+		//Stops sampling and returns the peak in MB, above the heap used when sampling started
+		double finish(long base) throws InterruptedException {
+			done = true;
+			join();
+			return (peak - base) / 1e6;
+		}
+	}
+
+	static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for(int i = 0; i < 3; i ++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		final int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		File trainingImages = new File("data\\training_images"), trainingLabels = new File("data\\training_labels");
+		File temp = new File(System.getProperty("java.io.tmpdir"), "expansion-benchmark");
+		temp.mkdirs();
+		MappedMNISTDataset source;
+		try {
+			source = new MappedMNISTDataset(trainingImages, trainingLabels).range(0, MNISTLoader.TRAINING_IMG_COUNT);
+		}
+		catch(IOException | IllegalArgumentException e) {
+			System.out.println("MNIST data not found, using random images");
+			trainingImages = new File(temp, "training_images");
+			trainingLabels = new File(temp, "training_labels");
+			MNISTLoader.saveImages(TrainingBenchmark.randomImages(MNISTLoader.TRAINING_IMG_COUNT + MNISTLoader.VALIDATION_IMG_COUNT, 1), trainingImages, trainingLabels);
+			source = new MappedMNISTDataset(trainingImages, trainingLabels).range(0, MNISTLoader.TRAINING_IMG_COUNT);
+		}
+		File[] oldImages = { new File(temp, "old_images_1"), new File(temp, "old_images_2") };
+		File[] oldLabels = { new File(temp, "old_labels_1"), new File(temp, "old_labels_2") };
+		File[] newImages = { new File(temp, "new_images_1"), new File(temp, "new_images_2") };
+		File[] newLabels = { new File(temp, "new_labels_1"), new File(temp, "new_labels_2") };
+
+		double oldTime = Double.MAX_VALUE, newTime = Double.MAX_VALUE, oldHeap = 0, newHeap = 0;
+		for(int i = 0; i < repeats; i ++) {
+			long base = usedHeap();
+			HeapSampler sampler = new HeapSampler();
+			sampler.start();
+			long start = System.nanoTime();
+			MNISTDataset original = MNISTLoader.loadDataset(MNISTLoader.TRAINING_IMG_COUNT, trainingImages, trainingLabels, 0);
+			MNISTDataset artificial = DatabaseExpander.expandByTranslation(original, 2);
+			int pt1Len = artificial.size() / 2;
+			MNISTLoader.saveImages(artificial, 0, pt1Len, oldImages[0], oldLabels[0]);
+			MNISTLoader.saveImages(artificial, pt1Len, artificial.size(), oldImages[1], oldLabels[1]);
+			oldTime = Math.min(oldTime, (System.nanoTime() - start) / 1e9);
+			oldHeap = Math.max(oldHeap, sampler.finish(base));
+			original = artificial = null;
+
+			base = usedHeap();
+			sampler = new HeapSampler();
+			sampler.start();
+			start = System.nanoTime();
+			DatabaseExpander.expand(source, DatabaseExpander.translations(2), newImages, newLabels, threads);
+			newTime = Math.min(newTime, (System.nanoTime() - start) / 1e9);
+			newHeap = Math.max(newHeap, sampler.finish(base));
+		}
+		boolean same = true;
+		for(int f = 0; f < 2; f ++) {
+			same &= Arrays.equals(Files.readAllBytes(oldImages[f].toPath()), Files.readAllBytes(newImages[f].toPath()));
+			same &= Arrays.equals(Files.readAllBytes(oldLabels[f].toPath()), Files.readAllBytes(newLabels[f].toPath()));
+		}
+
+		System.out.printf("Expanding %d images 4x, %d thread(s), best of %d\n", source.size(), threads, repeats);
+		System.out.printf("%-12s %12s %16s\n", "", "Time (s)", "Peak heap (MB)");
+		System.out.printf("%-12s %12.3f %16.1f\n", "In memory", oldTime, oldHeap);
+		System.out.printf("%-12s %12.3f %16.1f\n", "Streaming", newTime, newHeap);
+		System.out.printf("Files identical: %s\n", same);
+
+		for(File f : temp.listFiles())
+			f.delete();
+		temp.delete();
+	}
+
+}
@@ -0,0 +1,26 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+
+import neuralnet.core.FloatClassificationNeuralNetwork;
+import neuralnet.core.NeuralNetworkException;
+
+/*
+ * Converts every double-precision network in "trained networks" to single precision.
+ * Each converted network is saved next to the original with the extension ".f32.ann".
+ */
+public class FloatConversion {
+
+	public static void main(String[] args) throws IOException, NeuralNetworkException {
+		File dir = new File(args.length > 0 ? args[0] : "trained networks");
+		for(File f : dir.listFiles()) {
+			if(!f.getName().endsWith(".ann") || f.getName().endsWith(".f32.ann"))
+				continue;
+			File out = new File(dir, f.getName().substring(0, f.getName().length() - 4) + ".f32.ann");
+			FloatClassificationNeuralNetwork.convertFile(f, out);
+			System.out.printf("%s: %d -> %d bytes\n", f.getName(), f.length(), out.length());
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package main;
+
+import mnist.MNISTImage;
+import mnist.MNISTLoader;
+import neuralnet.core.ClassificationNeuralNetwork;
+
+/*
+ * Compares the convergence of synchronous SGD with lock-free Hogwild SGD on MNIST.
+ * Both start from the same network and use the same hyperparameters; the classification rate on the test set
+ * is printed after every epoch, along with the total training time.
+ * Usage: HogwildComparison [threads] [epochs]
+ */
+public class HogwildComparison {
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int epochs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		MNISTImage[] trainingImages = MNISTLoader.loadTrainingImages();
+		MNISTImage[] testingImages = MNISTLoader.loadTestingImages();
+
+		ClassificationNeuralNetwork<MNISTImage> sync = new ClassificationNeuralNetwork<MNISTImage>(
+				new int[] { MNISTImage.PIXEL_COUNT, 50, 10 },
+				ClassificationNeuralNetwork.SIGMOID_ACTIVATION,
+				ClassificationNeuralNetwork.CROSSENTROPY_SIGMOID_COST);
+		@SuppressWarnings("unchecked")
+		ClassificationNeuralNetwork<MNISTImage> hogwild = (ClassificationNeuralNetwork<MNISTImage>) sync.clone();
+
+		System.out.println("Synchronous SGD, 1 thread:");
+		long start = System.nanoTime();
+		sync.SGD(trainingImages, 10, 0.5, 5.0, epochs, testingImages);
+		double syncTime = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("\n\nHogwild SGD, %d threads:\n", threads);
+		start = System.nanoTime();
+		hogwild.hogwildSGD(trainingImages, 10, 0.5, 5.0, epochs, threads, testingImages);
+		double hogwildTime = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("\n\nSynchronous: %.1fs, %.2f%% final\n", syncTime, 100.0 * sync.evaluate(testingImages) / testingImages.length);
+		System.out.printf("Hogwild: %.1fs, %.2f%% final\n", hogwildTime, 100.0 * hogwild.evaluate(testingImages) / testingImages.length);
+	}
+
+}
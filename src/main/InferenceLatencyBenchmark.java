@@ -0,0 +1,127 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import mnist.MNISTImage;
+import mnist.MNISTLoader;
+import neuralnet.core.ClassificationNeuralNetwork;
+import neuralnet.core.InferenceModel;
+import neuralnet.core.NeuralNetworkException;
+
+/*
+ * Measures the latency of classifying one image at a time with a compiled InferenceModel, compared to
+ * ClassificationNeuralNetwork.classify(), with several threads classifying at once.
+ * Every call is timed on its own, and the median (p50), 99th percentile (p99) and maximum latency over all threads
+ * are printed, along with the total throughput and the number of bytes allocated by each call.
+ * The MNIST test images are used, or random images if the MNIST files are not in the data folder.
+ * Usage: InferenceLatencyBenchmark [network file] [thread counts...]
+ */
+public class InferenceLatencyBenchmark {
+	static final int CALLS_PER_THREAD = 20000;
+	static final int WARMUP_CALLS = 20000;
+
+	//Something that classifies one image, so both the model and the network can be timed by the same code
+	interface Classifier {
+		int classify(MNISTImage img);
+	}
+
+	//Results of the last call to every classifier, so the JIT can't remove the calls
+	static volatile int sink;
+
+	//Times CALLS_PER_THREAD calls on each of a number of threads and prints the latency percentiles
+	static void measure(String name, final Classifier classifier, final MNISTImage[] data, int threads) throws InterruptedException {
+		final long[][] latencies = new long[threads][CALLS_PER_THREAD];
+		final long[] allocated = new long[threads];
+		Thread[] workers = new Thread[threads];
+		for(int t = 0; t < threads; t ++) {
+			final int thread = t;
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					int result = 0;
+					//Start each thread at a different image
+					int next = thread * 997 % data.length;
+					long bytes = TrainingBenchmark.allocatedBytes();
+					for(int i = 0; i < CALLS_PER_THREAD; i ++) {
+						MNISTImage img = data[next];
+						next = next + 1 == data.length ? 0 : next + 1;
+						long start = System.nanoTime();
+						result += classifier.classify(img);
+						latencies[thread][i] = System.nanoTime() - start;
+					}
+					allocated[thread] = TrainingBenchmark.allocatedBytes() - bytes;
+					sink = result;
+				}
+			};
+		}
+		long start = System.nanoTime();
+		for(Thread worker : workers)
+			worker.start();
+		for(Thread worker : workers)
+			worker.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long[] all = new long[threads * CALLS_PER_THREAD];
+		long totalAllocated = 0;
+		for(int t = 0; t < threads; t ++) {
+			System.arraycopy(latencies[t], 0, all, t * CALLS_PER_THREAD, CALLS_PER_THREAD);
+			totalAllocated += allocated[t];
+		}
+		Arrays.sort(all);
+		System.out.printf("%-10s %8d %12.1f %12.1f %12.1f %14.0f %14.1f\n", name, threads,
+				all[all.length / 2] / 1e3, all[(int) (all.length * 0.99)] / 1e3, all[all.length - 1] / 1e3,
+				all.length / seconds, (double) totalAllocated / all.length);
+	}
+
+	public static void main(String[] args) throws IOException, NeuralNetworkException, InterruptedException {
+		File file = new File(args.length > 0 ? args[0] : "trained networks/98.18%.ann");
+		int[] threadCounts = new int[] { 1, 4, 16, 64 };
+		if(args.length > 1) {
+			threadCounts = new int[args.length - 1];
+			for(int i = 1; i < args.length; i ++)
+				threadCounts[i - 1] = Integer.parseInt(args[i]);
+		}
+		MNISTImage[] data;
+		try {
+			data = MNISTLoader.loadTestingImages();
+		}
+		catch(IOException e) {
+			System.out.println("MNIST data not found (" + e.getMessage() + "), using random images");
+			data = TrainingBenchmark.randomImages(MNISTLoader.TESTING_IMG_COUNT, 42);
+		}
+
+		final ClassificationNeuralNetwork<MNISTImage> net = new ClassificationNeuralNetwork<MNISTImage>(file);
+		final InferenceModel<MNISTImage> model = net.compile();
+		Classifier networkClassifier = new Classifier() {
+			@Override
+			public int classify(MNISTImage img) {
+				return (Integer) net.classify(img);
+			}
+		};
+		Classifier modelClassifier = new Classifier() {
+			@Override
+			public int classify(MNISTImage img) {
+				return model.classifyIndex(img);
+			}
+		};
+		//Check that the model gives the same results as the network
+		int different = 0;
+		for(MNISTImage img : data)
+			if(modelClassifier.classify(img) != networkClassifier.classify(img))
+				different ++;
+		System.out.printf("%s (%s), %d processors, %d images classified differently by the model\n", file.getName(),
+				TrainingBenchmark.name(net.getNeuronCounts()), Runtime.getRuntime().availableProcessors(), different);
+
+		//Warm up the JIT before timing
+		for(int i = 0; i < WARMUP_CALLS; i ++) {
+			sink = networkClassifier.classify(data[i % data.length]) + modelClassifier.classify(data[i % data.length]);
+		}
+		System.out.printf("%-10s %8s %12s %12s %12s %14s %14s\n", "", "Threads", "p50 (us)", "p99 (us)", "Max (us)", "Throughput/s", "Bytes/call");
+		for(int threads : threadCounts) {
+			measure("Network", networkClassifier, data, threads);
+			measure("Model", modelClassifier, data, threads);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import mnist.MNISTDataset;
+import mnist.MNISTImage;
+import mnist.MNISTLoader;
+import mnist.MappedMNISTDataset;
+import neuralnet.core.ClassificationNeuralNetwork;
+import neuralnet.core.Classifiable;
+import neuralnet.core.Permutation;
+
+/*
+ * Compares the training throughput with and without background input prefetching (setInputPrefetching()),
+ * on images in memory (MNISTImages, whose inputs are copied as bytes) and on views of a memory-mapped IDX file
+ * (MappedMNISTImages, whose inputs are decoded from the mapped file one pixel at a time).
+ * Both runs start from the same weights and shuffle with the same seed, and the trained weights are checked to be identical.
+ * The speedup depends on having spare cores for the producer threads.
+ * Usage: InputPrefetchBenchmark [producer threads] [training threads] [batch size]
+ */
+public class InputPrefetchBenchmark {
+	static final int SAMPLES = 20000;
+	static final int EPOCHS = 3;
+
+	//Gives access to the training loop with a fixed shuffle and to the weights
+	static class BenchmarkNetwork extends ClassificationNeuralNetwork<Classifiable> {
+		BenchmarkNetwork(ClassificationNeuralNetwork<?> net) {
+			super(net);
+		}
+		//Trains for a few epochs and returns the time taken in seconds
+		double train(Classifiable[] data, int batchSize) {
+			Permutation permutation = new Permutation(data.length, 1);
+			int[] order = new int[data.length];
+			long start = System.nanoTime();
+			for(int epoch = 0; epoch < EPOCHS; epoch ++) {
+				permutation.shuffle();
+				for(int i = 0; i < order.length; i ++)
+					order[i] = permutation.get(i);
+				learnEpoch(data, order, batchSize, 0.1, 1.0, data.length, null, 0);
+			}
+			return (System.nanoTime() - start) / 1e9;
+		}
+		boolean sameParameters(BenchmarkNetwork other) {
+			return Arrays.deepEquals(weights, other.weights) && Arrays.deepEquals(biases, other.biases);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		final int producers = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		final int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		final int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		MNISTImage[] images = TrainingBenchmark.randomImages(SAMPLES, 3);
+		File imagesFile = File.createTempFile("prefetch", ".idx3"), labelsFile = File.createTempFile("prefetch", ".idx1");
+		try {
+			MNISTLoader.saveImages(new MNISTDataset(images), imagesFile, labelsFile);
+			String[] names = { "In memory", "Mapped" };
+			Classifiable[][] sets = { images, new MappedMNISTDataset(imagesFile, labelsFile).images() };
+
+			ClassificationNeuralNetwork<Classifiable> initial = new ClassificationNeuralNetwork<Classifiable>(new int[] { MNISTImage.PIXEL_COUNT, 50, 10 },
+					ClassificationNeuralNetwork.SIGMOID_ACTIVATION, ClassificationNeuralNetwork.CROSSENTROPY_SIGMOID_COST);
+			System.out.printf("%d producer thread(s), %d training thread(s), batch size %d, %d cores\n", producers, threads, batchSize,
+					Runtime.getRuntime().availableProcessors());
+			System.out.printf("%-12s %16s %16s %10s %10s\n", "Data", "Off (img/s)", "On (img/s)", "Speedup", "Identical");
+			for(int s = 0; s < sets.length; s ++) {
+				double off = Double.MAX_VALUE, on = Double.MAX_VALUE;
+				boolean identical = true;
+				//The first round warms up the JIT
+				for(int round = 0; round < 3; round ++) {
+					BenchmarkNetwork plain = new BenchmarkNetwork(initial), prefetched = new BenchmarkNetwork(initial);
+					plain.setTrainingParallelism(threads);
+					prefetched.setTrainingParallelism(threads);
+					prefetched.setInputPrefetching(producers);
+					final double plainTime = plain.train(sets[s], batchSize);
+					final double prefetchedTime = prefetched.train(sets[s], batchSize);
+					if(round != 0) {
+						off = Math.min(off, plainTime);
+						on = Math.min(on, prefetchedTime);
+					}
+					identical &= plain.sameParameters(prefetched);
+					plain.setTrainingParallelism(1);
+					prefetched.setTrainingParallelism(1);
+				}
+				final double trained = (double) EPOCHS * SAMPLES;
+				System.out.printf("%-12s %16.0f %16.0f %9.2fx %10s\n", names[s], trained / off, trained / on, off / on, identical);
+			}
+		}
+		finally {
+			imagesFile.delete();
+			labelsFile.delete();
+		}
+	}
+
+}
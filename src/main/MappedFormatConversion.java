@@ -0,0 +1,50 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import neuralnet.core.ClassificationNeuralNetwork;
+import neuralnet.core.NeuralNetworkException;
+
+/*
+ * Converts every network in "trained networks" to the memory-mapped format (version 0x03).
+ * Each converted network is saved next to the original with the extension ".v3.ann".
+ * Each converted network is checked against the original, and the sizes and the times taken to load both files are printed.
+ * Usage: MappedFormatConversion [networks folder]
+ */
+public class MappedFormatConversion {
+	static final int LOADS = 20;
+
+	//Returns the best time in milliseconds to load a network from a file
+	static double timeLoad(File f) throws IOException, NeuralNetworkException {
+		double best = Double.MAX_VALUE;
+		for(int i = 0; i < LOADS; i ++) {
+			long start = System.nanoTime();
+			new ClassificationNeuralNetwork<>(f);
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+		}
+		return best;
+	}
+
+	public static void main(String[] args) throws IOException, NeuralNetworkException {
+		File dir = new File(args.length > 0 ? args[0] : "trained networks");
+		System.out.printf("%-16s %12s %12s %10s %10s %9s %8s\n", "Network", "v1 (bytes)", "v3 (bytes)", "v1 (ms)", "v3 (ms)", "Speedup", "Same");
+		for(File f : dir.listFiles()) {
+			if(!f.getName().endsWith(".ann") || f.getName().endsWith(".f32.ann") || f.getName().endsWith(".v3.ann"))
+				continue;
+			File out = new File(dir, f.getName().substring(0, f.getName().length() - 4) + ".v3.ann");
+			ClassificationNeuralNetwork.convertToMappedFormat(f, out);
+
+			//Save the converted network in the original format again; it should be the same as the original byte for byte
+			File check = File.createTempFile("check", ".ann");
+			new ClassificationNeuralNetwork<>(out).saveData(check);
+			boolean same = Arrays.equals(Files.readAllBytes(f.toPath()), Files.readAllBytes(check.toPath()));
+			check.delete();
+
+			double v1 = timeLoad(f), v3 = timeLoad(out);
+			System.out.printf("%-16s %12d %12d %10.2f %10.2f %9.1f %8s\n", f.getName(), f.length(), out.length(), v1, v3, v1 / v3, same);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package main;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import neuralnet.core.ClassificationNeuralNetwork;
+import neuralnet.core.Classifiable;
+import neuralnet.core.NeuralNetworkException;
+
+/*
+ * Compares the speed of loading and saving a large network in the version 0x01 format with the old stream code, which
+ * reads and writes one number at a time through a DataInputStream/DataOutputStream, and with the current FileChannel code.
+ * A network with random parameters is written with the old code, loaded and saved again with the new code, and the two
+ * files are checked to be the same. Each operation is repeated and the best time is printed.
+ * Usage: NetworkFileBenchmark [repeats] [neuron counts...], e.g. NetworkFileBenchmark 3 784 4096 4096 10
+ */
+public class NetworkFileBenchmark {
+
+	//The file constructor before the FileChannel code, for version 0x01 only; returns the weights followed by the biases
+	static double[][] streamLoad(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		in.readByte();
+		int[] counts = new int[0];
+		int count;
+		while((count = in.readInt()) != 0) {
+			counts = Arrays.copyOf(counts, counts.length + 1);
+			counts[counts.length - 1] = count;
+		}
+		in.readByte();
+		in.readByte();
+		double[][] parameters = new double[2 * counts.length][];
+		for(int i = 1; i < counts.length; i ++) {
+			parameters[i] = new double[counts[i] * counts[i - 1]];
+			for(int k = 0; k < parameters[i].length; k ++)
+				parameters[i][k] = in.readDouble();
+		}
+		for(int i = 1; i < counts.length; i ++) {
+			parameters[counts.length + i] = new double[counts[i]];
+			for(int j = 0; j < counts[i]; j ++)
+				parameters[counts.length + i][j] = in.readDouble();
+		}
+		in.close();
+		return parameters;
+	}
+	//saveData() before the FileChannel code
+	static void streamSave(File f, int[] counts, double[][] weights, double[][] biases) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
+		out.writeByte(0x01);
+		for(int i = 0; i < counts.length; i ++)
+			out.writeInt(counts[i]);
+		out.writeInt(0);
+		out.writeByte(ClassificationNeuralNetwork.SIGMOID_ACTIVATION.getCode());
+		out.writeByte(ClassificationNeuralNetwork.QUADRATIC_COST.getCode());
+		for(int i = 1; i < counts.length; i ++)
+			for(int k = 0; k < weights[i].length; k ++)
+				out.writeDouble(weights[i][k]);
+		for(int i = 1; i < counts.length; i ++)
+			for(int j = 0; j < counts[i]; j ++)
+				out.writeDouble(biases[i][j]);
+		out.close();
+	}
+
+	public static void main(String[] args) throws IOException, NeuralNetworkException {
+		final int repeats = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int[] counts = { 784, 4096, 4096, 10 };
+		if(args.length > 2) {
+			counts = new int[args.length - 1];
+			for(int i = 1; i < args.length; i ++)
+				counts[i - 1] = Integer.parseInt(args[i]);
+		}
+		Random r = new Random(0);
+		double[][] weights = new double[counts.length][], biases = new double[counts.length][];
+		for(int i = 1; i < counts.length; i ++) {
+			weights[i] = new double[counts[i] * counts[i - 1]];
+			biases[i] = new double[counts[i]];
+			for(int k = 0; k < weights[i].length; k ++)
+				weights[i][k] = r.nextGaussian();
+			for(int j = 0; j < counts[i]; j ++)
+				biases[i][j] = r.nextGaussian();
+		}
+
+		File streamFile = File.createTempFile("stream", ".ann");
+		File channelFile = File.createTempFile("channel", ".ann");
+		try {
+			double streamSave = Double.MAX_VALUE, streamLoad = Double.MAX_VALUE;
+			double channelSave = Double.MAX_VALUE, channelLoad = Double.MAX_VALUE;
+			ClassificationNeuralNetwork<Classifiable> net = null;
+			for(int i = 0; i < repeats; i ++) {
+				long start = System.nanoTime();
+				streamSave(streamFile, counts, weights, biases);
+				streamSave = Math.min(streamSave, (System.nanoTime() - start) / 1e9);
+
+				start = System.nanoTime();
+				streamLoad(streamFile);
+				streamLoad = Math.min(streamLoad, (System.nanoTime() - start) / 1e9);
+
+				//Let the last copy be collected before loading another
+				net = null;
+				start = System.nanoTime();
+				net = new ClassificationNeuralNetwork<>(streamFile);
+				channelLoad = Math.min(channelLoad, (System.nanoTime() - start) / 1e9);
+
+				start = System.nanoTime();
+				net.saveData(channelFile);
+				channelSave = Math.min(channelSave, (System.nanoTime() - start) / 1e9);
+			}
+			final boolean same = Arrays.equals(Files.readAllBytes(streamFile.toPath()), Files.readAllBytes(channelFile.toPath()));
+			final double mb = streamFile.length() / 1e6;
+
+			System.out.printf("Network %s, %.1f MB, best of %d\n", Arrays.toString(counts), mb, repeats);
+			System.out.printf("%-10s %12s %12s %12s %12s\n", "", "Load (s)", "Load (MB/s)", "Save (s)", "Save (MB/s)");
+			System.out.printf("%-10s %12.3f %12.1f %12.3f %12.1f\n", "Stream", streamLoad, mb / streamLoad, streamSave, mb / streamSave);
+			System.out.printf("%-10s %12.3f %12.1f %12.3f %12.1f\n", "Channel", channelLoad, mb / channelLoad, channelSave, mb / channelSave);
+			System.out.printf("Speedup: load %.1fx, save %.1fx; files identical: %s\n", streamLoad / channelLoad, streamSave / channelSave, same);
+		}
+		finally {
+			streamFile.delete();
+			channelFile.delete();
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+
+import mnist.MNISTImage;
+import mnist.MNISTLoader;
+import neuralnet.core.ClassificationNeuralNetwork;
+import neuralnet.core.InferenceModel;
+import neuralnet.core.NeuralNetworkException;
+import neuralnet.core.PrunedModel;
+
+/*
+ * Prunes a trained network to 50%, 80% and 95% sparsity in every layer and reports the tradeoff between accuracy and speed:
+ * the accuracy on the MNIST test set right after pruning and after fine-tuning on the training set with SGD,
+ * the number of images classified differently from the unpruned network, the size of the compressed sparse row model
+ * and its single-threaded classification speed compared to the dense InferenceModel.
+ * If the MNIST files are not in the data folder, random images are used for testing and fine-tuning is skipped;
+ * the accuracy is then meaningless, but the number of images classified differently and the speed still are.
+ * Usage: PruningReport [network file] [fine-tuning epochs]
+ */
+public class PruningReport {
+	static final double[] SPARSITIES = new double[] { 0.5, 0.8, 0.95 };
+	static final int REPEATS = 5;
+
+	//Something that classifies one image, so both kinds of model can be timed by the same code
+	interface Classifier {
+		int classify(MNISTImage img);
+	}
+
+	//Classifies every image a few times and returns the best number of images per second, storing the results
+	static double time(Classifier classifier, MNISTImage[] data, int[] results) {
+		double best = 0;
+		for(int rep = 0; rep < REPEATS; rep ++) {
+			long start = System.nanoTime();
+			for(int i = 0; i < data.length; i ++)
+				results[i] = classifier.classify(data[i]);
+			best = Math.max(best, data.length / ((System.nanoTime() - start) / 1e9));
+		}
+		return best;
+	}
+	static double accuracy(ClassificationNeuralNetwork<MNISTImage> net, MNISTImage[] data) {
+		return 100.0 * net.evaluate(data) / data.length;
+	}
+
+	public static void main(String[] args) throws IOException, NeuralNetworkException {
+		File file = new File(args.length > 0 ? args[0] : "trained networks/98.18%.ann");
+		int epochs = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		MNISTImage[] test, training;
+		try {
+			test = MNISTLoader.loadTestingImages();
+			training = MNISTLoader.loadTrainingImages();
+		}
+		catch(IOException e) {
+			System.out.println("MNIST data not found (" + e.getMessage() + "), using random images without fine-tuning");
+			test = TrainingBenchmark.randomImages(MNISTLoader.TESTING_IMG_COUNT, 42);
+			training = null;
+		}
+
+		final ClassificationNeuralNetwork<MNISTImage> original = new ClassificationNeuralNetwork<MNISTImage>(file);
+		final InferenceModel<MNISTImage> dense = original.compile();
+		int[] denseResults = new int[test.length], prunedResults = new int[test.length];
+		double denseSpeed = time(new Classifier() {
+			@Override
+			public int classify(MNISTImage img) {
+				return dense.classifyIndex(img);
+			}
+		}, test, denseResults);
+		int[] counts = original.getNeuronCounts();
+		long denseWeights = 0;
+		for(int i = 1; i < counts.length; i ++)
+			denseWeights += counts[i] * counts[i - 1];
+		long denseBytes = 8 * denseWeights;
+		for(int i = 1; i < counts.length; i ++)
+			denseBytes += 8 * counts[i];
+		System.out.printf("%s (%s): %.2f%%, %d weights, %.1f KB, %.0f img/s dense\n", file.getName(), TrainingBenchmark.name(counts),
+				accuracy(original, test), denseWeights, denseBytes / 1024.0, denseSpeed);
+		if(training != null)
+			System.out.printf("Fine-tuning for %d epoch(s)\n", epochs);
+
+		System.out.printf("%-9s %9s %10s %9s %11s %8s %12s %9s\n", "Sparsity", "Weights", "Size (KB)", "Pruned", "Fine-tuned", "Changed",
+				"CSR img/s", "Speedup");
+		for(double sparsity : SPARSITIES) {
+			ClassificationNeuralNetwork<MNISTImage> net = new ClassificationNeuralNetwork<MNISTImage>(original);
+			net.prune(sparsity);
+			double prunedAccuracy = accuracy(net, test);
+			double tunedAccuracy = Double.NaN;
+			if(training != null) {
+				net.SGD(training, 10, 0.1, 5.0, epochs);
+				tunedAccuracy = accuracy(net, test);
+			}
+			final PrunedModel<MNISTImage> model = net.compilePruned();
+			double speed = time(new Classifier() {
+				@Override
+				public int classify(MNISTImage img) {
+					return model.classifyIndex(img);
+				}
+			}, test, prunedResults);
+			int changed = 0;
+			for(int i = 0; i < test.length; i ++)
+				if(denseResults[i] != prunedResults[i])
+					changed ++;
+			System.out.printf("%8.0f%% %9d %10.1f %8.2f%% %10.2f%% %8d %12.0f %9.2f\n", sparsity * 100, model.getWeightCount(),
+					model.getParameterBytes() / 1024.0, prunedAccuracy, tunedAccuracy, changed, speed, speed / denseSpeed);
+		}
+	}
+}
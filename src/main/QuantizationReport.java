@@ -0,0 +1,100 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+
+import mnist.MNISTImage;
+import mnist.MNISTLoader;
+import neuralnet.core.ClassificationNeuralNetwork;
+import neuralnet.core.InferenceModel;
+import neuralnet.core.NeuralNetworkException;
+import neuralnet.core.QuantizedModel;
+
+/*
+ * Quantizes every network in "trained networks" to 8-bit integers and compares it to the double-precision network
+ * on the MNIST test set: the accuracy of both, the number of images classified differently, the size of the parameters
+ * and the single-threaded classification speed (of an InferenceModel for the doubles).
+ * The quantized models are calibrated on the first images of the validation set.
+ * If the MNIST files are not in the data folder, random images are used instead; the accuracy is then meaningless,
+ * but the number of images classified differently still is.
+ * Usage: QuantizationReport [networks folder] [calibration images]
+ */
+public class QuantizationReport {
+	static final int REPEATS = 5;
+
+	//Something that classifies one image, so both kinds of model can be timed by the same code
+	interface Classifier {
+		int classify(MNISTImage img);
+	}
+
+	//Classifies every image a few times and returns the best number of images per second, storing the results
+	static double time(Classifier classifier, MNISTImage[] data, int[] results) {
+		double best = 0;
+		for(int rep = 0; rep < REPEATS; rep ++) {
+			long start = System.nanoTime();
+			for(int i = 0; i < data.length; i ++)
+				results[i] = classifier.classify(data[i]);
+			best = Math.max(best, data.length / ((System.nanoTime() - start) / 1e9));
+		}
+		return best;
+	}
+
+	public static void main(String[] args) throws IOException, NeuralNetworkException {
+		File dir = new File(args.length > 0 ? args[0] : "trained networks");
+		int calibrationCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		MNISTImage[] test, calibration;
+		try {
+			test = MNISTLoader.loadTestingImages();
+			MNISTImage[] validation = MNISTLoader.loadValidationImages();
+			calibration = new MNISTImage[Math.min(calibrationCount, validation.length)];
+			System.arraycopy(validation, 0, calibration, 0, calibration.length);
+		}
+		catch(IOException e) {
+			System.out.println("MNIST data not found (" + e.getMessage() + "), using random images");
+			test = TrainingBenchmark.randomImages(MNISTLoader.TESTING_IMG_COUNT, 42);
+			calibration = TrainingBenchmark.randomImages(calibrationCount, 43);
+		}
+		System.out.printf("Calibrated on %d images, evaluated on %d\n", calibration.length, test.length);
+
+		System.out.printf("%-16s %-15s %9s %9s %8s %8s %11s %11s %12s %12s\n", "Network", "Topology", "Double", "Int8", "Drop", "Changed",
+				"Double (KB)", "Int8 (KB)", "Double img/s", "Int8 img/s");
+		int[] doubleResults = new int[test.length], int8Results = new int[test.length];
+		for(File f : dir.listFiles()) {
+			if(!f.getName().endsWith(".ann") || f.getName().endsWith(".f32.ann"))
+				continue;
+			ClassificationNeuralNetwork<MNISTImage> net = new ClassificationNeuralNetwork<MNISTImage>(f);
+			final InferenceModel<MNISTImage> model = net.compile();
+			final QuantizedModel<MNISTImage> quantized = new QuantizedModel<MNISTImage>(net, calibration);
+			double doubleSpeed = time(new Classifier() {
+				@Override
+				public int classify(MNISTImage img) {
+					return model.classifyIndex(img);
+				}
+			}, test, doubleResults);
+			double int8Speed = time(new Classifier() {
+				@Override
+				public int classify(MNISTImage img) {
+					return quantized.classifyIndex(img);
+				}
+			}, test, int8Results);
+
+			int doubleCorrect = 0, int8Correct = 0, changed = 0;
+			for(int i = 0; i < test.length; i ++) {
+				if(test[i].getClassification().equals(doubleResults[i]))
+					doubleCorrect ++;
+				if(test[i].getClassification().equals(int8Results[i]))
+					int8Correct ++;
+				if(doubleResults[i] != int8Results[i])
+					changed ++;
+			}
+			int[] counts = net.getNeuronCounts();
+			long doubleBytes = 0;
+			for(int i = 1; i < counts.length; i ++)
+				doubleBytes += 8L * (counts[i] * counts[i - 1] + counts[i]);
+			double doubleAccuracy = 100.0 * doubleCorrect / test.length, int8Accuracy = 100.0 * int8Correct / test.length;
+			System.out.printf("%-16s %-15s %8.2f%% %8.2f%% %7.2f%% %8d %11.1f %11.1f %12.0f %12.0f\n", f.getName(), TrainingBenchmark.name(counts),
+					doubleAccuracy, int8Accuracy, doubleAccuracy - int8Accuracy, changed, doubleBytes / 1024.0, quantized.getParameterBytes() / 1024.0,
+					doubleSpeed, int8Speed);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package main;
+
+import java.io.IOException;
+
+import mnist.MNISTImage;
+import mnist.MNISTLoader;
+import neuralnet.core.ClassificationNeuralNetwork;
+
+/*
+ * Compares the dense and sparse first layer of ClassificationNeuralNetwork on the MNIST training images.
+ * The images are trained on and classified once with the sparse path disabled and once with it always on,
+ * and the density of the images and the default threshold are printed so the choice the network makes can be checked.
+ * If the MNIST files are not in the data folder, random images of about the same density are used instead.
+ * Usage: SparseInputBenchmark [batch size]
+ */
+public class SparseInputBenchmark {
+	static final int[][] TOPOLOGIES = new int[][] {
+		{ MNISTImage.PIXEL_COUNT, 30, 10 },
+		{ MNISTImage.PIXEL_COUNT, 100, 10 },
+		{ MNISTImage.PIXEL_COUNT, 300, 10 },
+	};
+	static final int SAMPLES = 10000;
+
+	//Returns the number of images per second trained on and classified, with the sparse path off and on
+	static double[] measure(int[] topology, MNISTImage[] data, int batchSize, double threshold) {
+		ClassificationNeuralNetwork<MNISTImage> net = new ClassificationNeuralNetwork<MNISTImage>(topology,
+				ClassificationNeuralNetwork.SIGMOID_ACTIVATION, ClassificationNeuralNetwork.CROSSENTROPY_SIGMOID_COST);
+		net.setSparseInputThreshold(threshold);
+		//Warm up the JIT before timing
+		net.SGD(data, batchSize, 0.01, 0.0, 1);
+		net.evaluate(data);
+
+		long start = System.nanoTime();
+		net.SGD(data, batchSize, 0.01, 0.0, 2);
+		double train = 2 * data.length / ((System.nanoTime() - start) / 1e9);
+		start = System.nanoTime();
+		net.evaluate(data);
+		double forward = data.length / ((System.nanoTime() - start) / 1e9);
+		return new double[] { train, forward };
+	}
+
+	public static void main(String[] args) {
+		int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		MNISTImage[] data;
+		try {
+			MNISTImage[] all = MNISTLoader.loadTrainingImages();
+			data = new MNISTImage[SAMPLES];
+			System.arraycopy(all, 0, data, 0, SAMPLES);
+		}
+		catch(IOException e) {
+			System.out.println("MNIST data not found (" + e.getMessage() + "), using random images");
+			data = TrainingBenchmark.randomImages(SAMPLES, 42);
+		}
+
+		long nonZero = 0;
+		for(MNISTImage img : data)
+			for(int i = 0; i < MNISTImage.PIXEL_COUNT; i ++)
+				if(img.data[img.offset + i] != 0)
+					nonZero ++;
+		double density = (double) nonZero / ((long) data.length * MNISTImage.PIXEL_COUNT);
+		System.out.printf("Input density %.1f%%, default sparse threshold %.0f%% (%s path is used by default)\n", density * 100,
+				ClassificationNeuralNetwork.DEFAULT_SPARSE_INPUT_THRESHOLD * 100,
+				density < ClassificationNeuralNetwork.DEFAULT_SPARSE_INPUT_THRESHOLD ? "sparse" : "dense");
+		System.out.printf("Batch size %d\n", batchSize);
+		System.out.printf("%-15s %14s %14s %14s %14s %9s %9s\n", "Topology", "Dense train", "Sparse train", "Dense fwd", "Sparse fwd", "Train x", "Fwd x");
+		for(int[] topology : TOPOLOGIES) {
+			double[] dense = measure(topology, data, batchSize, 0);
+			double[] sparse = measure(topology, data, batchSize, 1);
+			System.out.printf("%-15s %14.0f %14.0f %14.0f %14.0f %9.2f %9.2f\n", TrainingBenchmark.name(topology),
+					dense[0], sparse[0], dense[1], sparse[1], sparse[0] / dense[0], sparse[1] / dense[1]);
+		}
+	}
+}
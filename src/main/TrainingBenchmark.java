@@ -0,0 +1,133 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import mnist.MNISTImage;
+import neuralnet.core.ClassificationNeuralNetwork;
+import neuralnet.core.FloatClassificationNeuralNetwork;
+
+/*
+ * Measures the forward (classify) and forward + backward (SGD) throughput of ClassificationNeuralNetwork
+ * on a few topologies, using random images with about the same density as MNIST digits, followed by that of
+ * FloatClassificationNeuralNetwork on the same topologies. The float network always runs on one thread.
+ * Also reports the number of bytes allocated by all threads, including the training pool's, for each image learned,
+ * which should stay close to 0 since the training loop reuses its workspaces; exits with status 1 if it goes above
+ * MAX_BYTES_PER_IMAGE on any topology, so the claim can be checked by a script.
+ * Usage: TrainingBenchmark [threads] [batch size]
+ */
+public class TrainingBenchmark {
+	static final int[][] TOPOLOGIES = new int[][] {
+		{ MNISTImage.PIXEL_COUNT, 50, 10 },
+		{ MNISTImage.PIXEL_COUNT, 300, 10 },
+		{ MNISTImage.PIXEL_COUNT, 800, 800, 10 },
+	};
+	static final int SAMPLES = 10000;
+	//What the training loop may allocate per image once warmed up; each SGD() call makes one Permutation of the data
+	//(4 bytes per image per call), and anything else would be a regression
+	static final double MAX_BYTES_PER_IMAGE = 16;
+
+	static MNISTImage[] randomImages(int count, long seed) {
+		Random r = new Random(seed);
+		MNISTImage[] images = new MNISTImage[count];
+		for(int n = 0; n < count; n ++) {
+			MNISTImage img = new MNISTImage(r.nextInt(10));
+			//About 20% of the pixels of an MNIST digit are non-zero
+			for(int i = 0; i < MNISTImage.PIXEL_COUNT; i ++)
+				if(r.nextInt(5) == 0)
+					img.data[i] = (byte) r.nextInt(256);
+			images[n] = img;
+		}
+		return images;
+	}
+
+	static String name(int[] topology) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < topology.length; i ++) {
+			if(i != 0) sb.append('-');
+			sb.append(topology[i]);
+		}
+		return sb.toString();
+	}
+
+	//Bytes allocated so far by the current thread, or -1 if the JVM can't tell
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+	//Bytes allocated so far by every live thread, or -1 if the JVM can't tell
+	//Threads that have ended are not counted, so this only works for threads that outlive the measurement, like a pool's
+	static long allThreadsAllocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		long total = 0;
+		for(long bytes : ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(bean.getAllThreadIds()))
+			if(bytes > 0)
+				total += bytes;
+		return total;
+	}
+
+	public static void main(String[] args) {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		MNISTImage[] data = randomImages(SAMPLES, 42);
+
+		boolean allocationFree = true;
+		System.out.printf("%d thread(s), batch size %d\n", threads, batchSize);
+		System.out.printf("%-20s %18s %18s %18s\n", "Topology", "Forward (img/s)", "Train (img/s)", "Train (bytes/img)");
+		for(int[] topology : TOPOLOGIES) {
+			ClassificationNeuralNetwork<MNISTImage> net = new ClassificationNeuralNetwork<MNISTImage>(topology,
+					ClassificationNeuralNetwork.SIGMOID_ACTIVATION, ClassificationNeuralNetwork.CROSSENTROPY_SIGMOID_COST);
+			net.setTrainingParallelism(threads);
+
+			//Warm up the JIT before timing
+			net.evaluate(data);
+			net.SGD(data, batchSize, 0.01, 0.0, 1);
+
+			long start = System.nanoTime();
+			net.evaluate(data);
+			double forward = SAMPLES / ((System.nanoTime() - start) / 1e9);
+
+			long allocated = allThreadsAllocatedBytes();
+			start = System.nanoTime();
+			net.SGD(data, batchSize, 0.01, 0.0, 2);
+			double train = 2 * SAMPLES / ((System.nanoTime() - start) / 1e9);
+			allocated = allThreadsAllocatedBytes() - allocated;
+			final double bytesPerImage = (double) allocated / (2 * SAMPLES);
+
+			System.out.printf("%-20s %18.0f %18.0f %18.1f\n", name(topology), forward, train, bytesPerImage);
+			if(bytesPerImage > MAX_BYTES_PER_IMAGE)
+				allocationFree = false;
+			net.setTrainingParallelism(1);
+		}
+		for(int[] topology : TOPOLOGIES) {
+			FloatClassificationNeuralNetwork<MNISTImage> net = new FloatClassificationNeuralNetwork<MNISTImage>(topology,
+					ClassificationNeuralNetwork.SIGMOID_ACTIVATION, ClassificationNeuralNetwork.CROSSENTROPY_SIGMOID_COST);
+
+			net.evaluate(data);
+			net.SGD(data, batchSize, 0.01, 0.0, 1, null);
+
+			long start = System.nanoTime();
+			net.evaluate(data);
+			double forward = SAMPLES / ((System.nanoTime() - start) / 1e9);
+
+			long allocated = allThreadsAllocatedBytes();
+			start = System.nanoTime();
+			net.SGD(data, batchSize, 0.01, 0.0, 2, null);
+			double train = 2 * SAMPLES / ((System.nanoTime() - start) / 1e9);
+			allocated = allThreadsAllocatedBytes() - allocated;
+			final double bytesPerImage = (double) allocated / (2 * SAMPLES);
+
+			System.out.printf("%-20s %18.0f %18.0f %18.1f\n", name(topology) + " (float)", forward, train, bytesPerImage);
+			if(bytesPerImage > MAX_BYTES_PER_IMAGE)
+				allocationFree = false;
+		}
+		if(!allocationFree) {
+			System.out.printf("Training allocated more than %.0f bytes per image\n", MAX_BYTES_PER_IMAGE);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package mnist;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import neuralnet.core.Permutation;
+import neuralnet.core.TrainingDataSource;
+
+/*
+ * A TrainingDataSource that gives the network a freshly distorted version of every image each epoch, using an ImageAugmenter,
+ * instead of a fixed set of expanded copies stored on disk.
+ * The images come from another source (e.g. a StreamingMNISTDataset) or from an array, a chunk at a time. Each chunk is split
+ * between a number of threads, each with its own copy of the augmenter, which write the distorted images into one of two
+ * packed MNISTDatasets. While the network trains on one, the next chunk is distorted into the other in the background,
+ * so the augmentation only holds up training if it is slower than training itself.
+ * After the first epoch, nothing is allocated (except for the array of the last chunk of an epoch, if it is not full).
+ */
+public final class AugmentedMNISTDataset implements TrainingDataSource<MNISTImage> {
+	public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+	final TrainingDataSource<MNISTImage> source;
+	final ForkJoinPool pool;
+	//The tasks that distort each part of a chunk, each with its own augmenter
+	final PartTask[] parts;
+	//The two chunks and views of their images
+	final MNISTDataset[] chunks = new MNISTDataset[2];
+	final MNISTImage[][] views = new MNISTImage[2][];
+	//The tasks that fill each chunk, and the one running, if any
+	final FillTask[] fills = { new FillTask(0), new FillTask(1) };
+	FillTask pending;
+
+	//Distorts the images of another source, using a number of threads
+	public AugmentedMNISTDataset(TrainingDataSource<MNISTImage> source, ImageAugmenter augmenter, int threads) {
+		this.source = source;
+		threads = Math.max(threads, 1);
+		parts = new PartTask[threads];
+		parts[0] = new PartTask(augmenter);
+		for(int t = 1; t < threads; t ++)
+			parts[t] = new PartTask(new ImageAugmenter(augmenter, augmenter.random.nextLong()));
+		pool = new ForkJoinPool(threads);
+	}
+	//Distorts images in memory, shuffled each epoch and split into chunks of the default size
+	public AugmentedMNISTDataset(MNISTImage[] images, ImageAugmenter augmenter, int threads) {
+		this(new ShuffledImages(images, DEFAULT_CHUNK_SIZE), augmenter, threads);
+	}
+
+	@Override
+	public int size() {
+		return source.size();
+	}
+	//Starts a new epoch of the source, and distorting its first chunk
+	@Override
+	public void startEpoch() throws IOException {
+		if(pending != null) {
+			pending.join();
+			pending = null;
+		}
+		source.startEpoch();
+		start(0);
+	}
+	//Returns the chunk that was distorted in the background, and starts on the next one
+	@Override
+	public MNISTImage[] nextChunk() throws IOException {
+		if(pending == null)
+			return null;
+		final FillTask done = pending;
+		done.join();
+		pending = null;
+		if(done.error != null)
+			throw done.error;
+		if(done.count == 0)
+			return null;
+		//The network is done with the other chunk, since it asked for this one
+		start(1 - done.chunk);
+		return done.count == views[done.chunk].length ? views[done.chunk] : Arrays.copyOf(views[done.chunk], done.count);
+	}
+	void start(int chunk) {
+		pending = fills[chunk];
+		pending.reinitialize();
+		pool.execute(pending);
+	}
+
+	/*
+	 * Gets the next chunk of the source and distorts it into one of the chunks, splitting the images between the augmenters.
+	 */
+	final class FillTask extends RecursiveAction {
+		private static final long serialVersionUID = -2950368213447095315L;
+
+		final int chunk;
+		//The number of images in the chunk when done, and the error from the source, if any
+		int count;
+		IOException error;
+
+		FillTask(int chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute() {
+			final MNISTImage[] in;
+			error = null;
+			try {
+				in = source.nextChunk();
+			}
+			catch(IOException e) {
+				error = e;
+				count = 0;
+				return;
+			}
+			count = in != null ? in.length : 0;
+			if(count == 0)
+				return;
+			if(chunks[chunk] == null || chunks[chunk].size() < count) {
+				chunks[chunk] = new MNISTDataset(count);
+				views[chunk] = chunks[chunk].images();
+			}
+			for(int p = 0; p < parts.length; p ++)
+				parts[p].reset(in, chunk, (int) ((long) count * p / parts.length), (int) ((long) count * (p + 1) / parts.length));
+			invokeAll(parts);
+		}
+	}
+	/*
+	 * Distorts a range of the images of a chunk of the source into one of the chunks.
+	 */
+	final class PartTask extends RecursiveAction {
+		private static final long serialVersionUID = 4400713046393016893L;
+
+		final ImageAugmenter augmenter;
+		MNISTImage[] in;
+		int chunk;
+		int from, to;
+
+		PartTask(ImageAugmenter augmenter) {
+			this.augmenter = augmenter;
+		}
+
+		void reset(MNISTImage[] in, int chunk, int from, int to) {
+			reinitialize();
+			this.in = in;
+			this.chunk = chunk;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			final MNISTDataset out = chunks[chunk];
+			final MNISTImage[] outViews = views[chunk];
+			for(int i = from; i < to; i ++) {
+				augmenter.augment(in[i].data, in[i].offset, out.pixels, MNISTDataset.offsetOf(i));
+				out.labels[i] = (byte) in[i].classification;
+				outViews[i].classification = in[i].classification;
+			}
+			in = null;
+		}
+	}
+
+	/*
+	 * Images in memory, shuffled each epoch and handed out a chunk at a time.
+	 */
+	static final class ShuffledImages implements TrainingDataSource<MNISTImage> {
+		final MNISTImage[] images;
+		final Permutation order;
+		final MNISTImage[] chunk;
+		int next;
+
+		ShuffledImages(MNISTImage[] images, int chunkSize) {
+			this.images = images;
+			order = new Permutation(images.length);
+			chunk = new MNISTImage[Math.min(chunkSize, images.length)];
+			next = images.length;
+		}
+
+		@Override
+		public int size() {
+			return images.length;
+		}
+		@Override
+		public void startEpoch() {
+			order.shuffle();
+			next = 0;
+		}
+		@Override
+		public MNISTImage[] nextChunk() {
+			final int count = Math.min(chunk.length, images.length - next);
+			if(count == 0)
+				return null;
+			for(int i = 0; i < count; i ++)
+				chunk[i] = images[order.get(next + i)];
+			next += count;
+			return count == chunk.length ? chunk : Arrays.copyOf(chunk, count);
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package mnist;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Array;
+import java.util.Arrays;
 
 public final class DatabaseExpander {
 	@SafeVarargs
@@ -17,6 +20,20 @@ public final class DatabaseExpander {
 		}
 		return arr;
 	}
+	//Concatenates datasets into a new packed dataset, copying the pixels and labels in bulk
+	public static MNISTDataset concatDatasets(MNISTDataset... sets) {
+		int total = 0;
+		for(MNISTDataset d : sets)
+			total += d.size;
+		MNISTDataset out = new MNISTDataset(total);
+		int i = 0;
+		for(MNISTDataset d : sets) {
+			System.arraycopy(d.pixels, 0, out.pixels, MNISTDataset.offsetOf(i), d.pixels.length);
+			System.arraycopy(d.labels, 0, out.labels, i, d.size);
+			i += d.size;
+		}
+		return out;
+	}
 	
 	static int constrain(int val, int upper, int lower) {
 		int a = val < upper ? val : upper;
@@ -24,12 +41,80 @@ public final class DatabaseExpander {
 	}
 	static MNISTImage translateImage(MNISTImage src, int xa, int ya) {
 		MNISTImage img = new MNISTImage((int) src.getClassification());
+		translateImage(src.data, src.offset, img.data, 0, xa, ya);
+		return img;
+	}
+	//Translates the image at src[srcOffset] and writes the result to the image at dest[destOffset], without allocating
+	//Pixels moved past the edges are clamped to the edges; pixels not covered by the source are left blank
+	public static void translateImage(byte[] src, int srcOffset, byte[] dest, int destOffset, int xa, int ya) {
+		Arrays.fill(dest, destOffset, destOffset + MNISTImage.PIXEL_COUNT, (byte) 0);
 		for(int x = 0; x < MNISTImage.SIZE; x ++) {
+			int dx = constrain(x + xa, MNISTImage.SIZE - 1, 0);
 			for(int y = 0; y < MNISTImage.SIZE; y ++) {
-				img.set(constrain(x + xa, MNISTImage.SIZE - 1, 0), constrain(y + ya, MNISTImage.SIZE - 1, 0), src.get(x, y));
+				dest[destOffset + constrain(y + ya, MNISTImage.SIZE - 1, 0) * MNISTImage.SIZE + dx] = src[srcOffset + y * MNISTImage.SIZE + x];
+			}
+		}
+	}
+	//Warps the image at src[srcOffset] and writes the result to the image at dest[destOffset], without allocating
+	//With (u, v) the position of a pixel of dest relative to the center of the image, the pixel is sampled from
+	//(m[0] * u + m[1] * v + m[2], m[3] * u + m[4] * v + m[5]) relative to the center of src, moved by (dx[i], dy[i]) if dx and dy
+	//are not null, where i is the index of the pixel; i.e. m is the inverse of the affine transform applied to the image
+	//Pixels are interpolated bilinearly, and everything outside of src is blank
+	public static void warpImage(byte[] src, int srcOffset, byte[] dest, int destOffset, double[] m, double[] dx, double[] dy) {
+		final double c = (MNISTImage.SIZE - 1) / 2.0;
+		for(int y = 0; y < MNISTImage.SIZE; y ++) {
+			final double v = y - c;
+			for(int x = 0; x < MNISTImage.SIZE; x ++) {
+				final double u = x - c;
+				final int i = y * MNISTImage.SIZE + x;
+				double sx = m[0] * u + m[1] * v + m[2] + c;
+				double sy = m[3] * u + m[4] * v + m[5] + c;
+				if(dx != null) {
+					sx += dx[i];
+					sy += dy[i];
+				}
+				dest[destOffset + i] = (byte) sample(src, srcOffset, sx, sy);
 			}
 		}
-		return img;
+	}
+	//The value of the image at src[srcOffset] at a point between pixels, interpolated bilinearly, rounded to the nearest integer
+	static int sample(byte[] src, int srcOffset, double sx, double sy) {
+		if(sx <= -1 || sy <= -1 || sx >= MNISTImage.SIZE || sy >= MNISTImage.SIZE)
+			return 0;
+		//sx and sy are above -1, so adding 1 before truncating rounds down
+		final int x0 = (int) (sx + 1) - 1, y0 = (int) (sy + 1) - 1;
+		int p00, p01, p10, p11;
+		if(x0 >= 0 && y0 >= 0 && x0 < MNISTImage.SIZE - 1 && y0 < MNISTImage.SIZE - 1) {
+			final int k = srcOffset + y0 * MNISTImage.SIZE + x0;
+			p00 = src[k] & 0xFF;
+			p01 = src[k + 1] & 0xFF;
+			p10 = src[k + MNISTImage.SIZE] & 0xFF;
+			p11 = src[k + MNISTImage.SIZE + 1] & 0xFF;
+		}
+		else {
+			p00 = pixel(src, srcOffset, x0, y0);
+			p01 = pixel(src, srcOffset, x0 + 1, y0);
+			p10 = pixel(src, srcOffset, x0, y0 + 1);
+			p11 = pixel(src, srcOffset, x0 + 1, y0 + 1);
+		}
+		//Most of an MNIST digit is blank
+		if((p00 | p01 | p10 | p11) == 0)
+			return 0;
+		final double fx = sx - x0, fy = sy - y0;
+		final double top = p00 + (p01 - p00) * fx;
+		final double bottom = p10 + (p11 - p10) * fx;
+		return (int) (top + (bottom - top) * fy + 0.5);
+	}
+	//The value of pixel (x, y) of the image at src[srcOffset], or 0 if it is outside of the image
+	static int pixel(byte[] src, int srcOffset, int x, int y) {
+		if(x < 0 || y < 0 || x >= MNISTImage.SIZE || y >= MNISTImage.SIZE)
+			return 0;
+		return src[srcOffset + y * MNISTImage.SIZE + x] & 0xFF;
+	}
+	//Translates image i of source by (xa, ya) and stores it as image j of dest
+	static void translateInto(MNISTDataset source, int i, MNISTDataset dest, int j, int xa, int ya) {
+		translateImage(source.pixels, MNISTDataset.offsetOf(i), dest.pixels, MNISTDataset.offsetOf(j), xa, ya);
+		dest.labels[j] = source.labels[i];
 	}
 	public static MNISTImage[] expandByTranslation(MNISTImage[] source, int amount) {
 		MNISTImage[] out = new MNISTImage[source.length * 4];
@@ -49,4 +134,129 @@ public final class DatabaseExpander {
 		}
 		return out;
 	}
+	//Same as the above, but work on packed datasets directly; the only allocation is the output dataset
+	public static MNISTDataset expandByTranslation(MNISTDataset source, int amount) {
+		MNISTDataset out = new MNISTDataset(source.size * 4);
+		for(int i = 0; i < source.size; i ++) {
+			translateInto(source, i, out, i * 4, 0, -amount);
+			translateInto(source, i, out, i * 4 + 1, amount, 0);
+			translateInto(source, i, out, i * 4 + 2, 0, amount);
+			translateInto(source, i, out, i * 4 + 3, -amount, 0);
+		}
+		return out;
+	}
+	public static MNISTDataset expandByTranslation2(MNISTDataset source, int amount) {
+		MNISTDataset out = new MNISTDataset(source.size * 2);
+		for(int i = 0; i < source.size; i ++) {
+			translateInto(source, i, out, i * 2, amount, amount);
+			translateInto(source, i, out, i * 2 + 1, -amount, -amount);
+		}
+		return out;
+	}
+	
+	//Expands a dataset by applying every transform to every image, and writes the transformed copies to IDX files
+	//The number of copies of each image is the number of transforms; to keep the original images, include translation(0, 0)
+	//The copies are split evenly between the pairs of image and label files, in order, and are written in the same order as
+	//expandByTranslation(): every copy of the first image, then every copy of the second, and so on
+	//The images are transformed by a number of threads and written as they are done, so only a few thousand are in memory at a time
+	public static void expand(MappedMNISTDataset source, ImageTransform[] transforms, File[] imageFiles, File[] labelFiles, int threads) throws IOException {
+		if(imageFiles.length != labelFiles.length || imageFiles.length == 0)
+			throw new IllegalArgumentException("Every image file needs a label file");
+		if(transforms.length == 0)
+			throw new IllegalArgumentException("No transforms");
+		threads = Math.max(threads, 1);
+		new ExpansionPipeline(source, transforms, threads).run(imageFiles, labelFiles, threads);
+	}
+	public static void expand(MappedMNISTDataset source, ImageTransform[] transforms, File imageFile, File labelFile, int threads) throws IOException {
+		expand(source, transforms, new File[] { imageFile }, new File[] { labelFile }, threads);
+	}
+
+	//Shifts the image by (xa, ya) pixels, with translateImage()
+	public static ImageTransform translation(final int xa, final int ya) {
+		return new ImageTransform() {
+			@Override
+			public void apply(byte[] src, int srcOffset, byte[] dest, int destOffset) {
+				translateImage(src, srcOffset, dest, destOffset, xa, ya);
+			}
+		};
+	}
+	//Maps each point (u, v) of the image, relative to its center, to (a * u + b * v + tx, c * u + d * v + ty), with warpImage()
+	public static ImageTransform affine(double a, double b, double c, double d, double tx, double ty) {
+		final double det = a * d - b * c;
+		if(det == 0)
+			throw new IllegalArgumentException("The transform cannot be inverted");
+		//warpImage() needs the inverse, which finds the point of the source each pixel comes from
+		final double[] m = { d / det, -b / det, 0, -c / det, a / det, 0 };
+		m[2] = -(m[0] * tx + m[1] * ty);
+		m[5] = -(m[3] * tx + m[4] * ty);
+		return new ImageTransform() {
+			@Override
+			public void apply(byte[] src, int srcOffset, byte[] dest, int destOffset) {
+				warpImage(src, srcOffset, dest, destOffset, m, null, null);
+			}
+		};
+	}
+	//Rotates the image clockwise by an angle in degrees around its center (counterclockwise if the angle is negative)
+	public static ImageTransform rotation(double degrees) {
+		final double angle = Math.toRadians(degrees);
+		//y points down, so this turns the image clockwise on screen
+		return affine(Math.cos(angle), -Math.sin(angle), Math.sin(angle), Math.cos(angle), 0, 0);
+	}
+	//Scales the image by a factor along each axis around its center
+	public static ImageTransform scaling(double xFactor, double yFactor) {
+		return affine(xFactor, 0, 0, yFactor, 0, 0);
+	}
+	//Shears the image around its center: each row is shifted by xFactor times its distance from the center,
+	//and each column by yFactor times its distance
+	public static ImageTransform shear(double xFactor, double yFactor) {
+		return affine(1, xFactor, yFactor, 1, 0, 0);
+	}
+
+	//Sets of transforms, for expanding a dataset by a chosen factor
+	//The shifts of expandByTranslation(): up, right, down and left by amount pixels
+	public static ImageTransform[] translations(int amount) {
+		return new ImageTransform[] { translation(0, -amount), translation(amount, 0), translation(0, amount), translation(-amount, 0) };
+	}
+	//The shifts of expandByTranslation2(): diagonally down-right and up-left by amount pixels
+	public static ImageTransform[] diagonalTranslations(int amount) {
+		return new ImageTransform[] { translation(amount, amount), translation(-amount, -amount) };
+	}
+	//count (even) rotations with angles evenly spaced from -maxDegrees to maxDegrees, leaving out 0 (the original image)
+	//e.g. rotations(10, 4) rotates by -10, -5, 5 and 10 degrees
+	public static ImageTransform[] rotations(double maxDegrees, int count) {
+		final double[] steps = symmetricSteps(count);
+		ImageTransform[] out = new ImageTransform[count];
+		for(int i = 0; i < count; i ++)
+			out[i] = rotation(maxDegrees * steps[i]);
+		return out;
+	}
+	//count (even) uniform scalings with factors evenly spaced from 1 - maxChange to 1 + maxChange, leaving out 1
+	public static ImageTransform[] scalings(double maxChange, int count) {
+		final double[] steps = symmetricSteps(count);
+		ImageTransform[] out = new ImageTransform[count];
+		for(int i = 0; i < count; i ++)
+			out[i] = scaling(1 + maxChange * steps[i], 1 + maxChange * steps[i]);
+		return out;
+	}
+	//count (even) horizontal shears with factors evenly spaced from -maxFactor to maxFactor, leaving out 0
+	public static ImageTransform[] shears(double maxFactor, int count) {
+		final double[] steps = symmetricSteps(count);
+		ImageTransform[] out = new ImageTransform[count];
+		for(int i = 0; i < count; i ++)
+			out[i] = shear(maxFactor * steps[i], 0);
+		return out;
+	}
+	//count numbers evenly spaced from -1 to 1, as if 0 were included, but without 0, e.g. -1, -1/2, 1/2, 1 for 4
+	//count must be even, so that the set is symmetric
+	static double[] symmetricSteps(int count) {
+		if(count < 2 || count % 2 != 0)
+			throw new IllegalArgumentException("The count must be even and at least 2");
+		double[] steps = new double[count];
+		final int half = count / 2;
+		for(int i = 0; i < half; i ++) {
+			steps[half + i] = (double) (i + 1) / half;
+			steps[half - 1 - i] = -steps[half + i];
+		}
+		return steps;
+	}
 }
@@ -0,0 +1,197 @@
+package mnist;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Expands a memory-mapped dataset into IDX files with a number of worker threads and a writer, without holding the whole
+ * expanded dataset in memory (see DatabaseExpander.expand()).
+ * The source is divided into chunks of consecutive images. Each worker claims the next chunk, copies it out of the mapped file
+ * and applies every transform to every image of it, into one slot of a ring of buffers. The calling thread writes the slots
+ * to the output files in the order of the chunks, so the output is the same whatever the number of threads. A worker only
+ * claims a chunk once its slot has been written, so the memory used is a few chunks per thread, whatever the size of the data.
+ * Transformed copies are written in the same order as DatabaseExpander.expandByTranslation(): all the copies of the first
+ * image, then all the copies of the second, and so on. The copies are split evenly between the output files, in order.
+ */
+final class ExpansionPipeline {
+	//The number of source images in each chunk
+	static final int CHUNK_SIZE = 512;
+
+	final MappedMNISTDataset source;
+	final ImageTransform[] transforms;
+	final int chunks;
+	//The source images and the transformed copies in each slot of the ring
+	final MNISTDataset[] in;
+	final MNISTDataset[] out;
+	//The number of the chunk each slot was last filled with, or -1
+	final int[] ready;
+	//The next chunk to be claimed by a worker, and the number of chunks written
+	int claimed, written;
+	boolean stopped;
+	Throwable error;
+
+	ExpansionPipeline(MappedMNISTDataset source, ImageTransform[] transforms, int threads) {
+		this.source = source;
+		this.transforms = transforms.clone();
+		chunks = (source.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		//Enough slots for every worker to be filling one while the writer writes another and the next one waits
+		final int slots = threads + 2;
+		in = new MNISTDataset[slots];
+		out = new MNISTDataset[slots];
+		ready = new int[slots];
+		for(int s = 0; s < slots; s ++) {
+			in[s] = new MNISTDataset(CHUNK_SIZE);
+			out[s] = new MNISTDataset(CHUNK_SIZE * transforms.length);
+			ready[s] = -1;
+		}
+	}
+
+	//Runs the workers and writes every chunk to the files, returning once they are all written
+	void run(File[] imageFiles, File[] labelFiles, int threads) throws IOException {
+		final long total = (long) source.size() * transforms.length;
+		if(total > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many images");
+		final int files = imageFiles.length;
+		//The index in the output of the first image of each file
+		final int[] fileStarts = new int[files + 1];
+		for(int f = 0; f <= files; f ++)
+			fileStarts[f] = (int) (total * f / files);
+
+		Thread[] workers = new Thread[threads];
+		FileChannel[] images = new FileChannel[files];
+		FileChannel[] labels = new FileChannel[files];
+		try {
+			for(int f = 0; f < files; f ++) {
+				images[f] = FileChannel.open(imageFiles[f].toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				labels[f] = FileChannel.open(labelFiles[f].toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				final int count = fileStarts[f + 1] - fileStarts[f];
+				ByteBuffer header = ByteBuffer.allocate(16);
+				header.putInt(MNISTLoader.IMAGES_MAGIC).putInt(count).putInt(MNISTImage.SIZE).putInt(MNISTImage.SIZE).flip();
+				writeFully(images[f], header);
+				header.clear();
+				header.putInt(MNISTLoader.LABELS_MAGIC).putInt(count).flip();
+				writeFully(labels[f], header);
+			}
+
+			for(int t = 0; t < threads; t ++) {
+				workers[t] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							work();
+						}
+						catch(Throwable e) {
+							synchronized(ExpansionPipeline.this) {
+								if(error == null)
+									error = e;
+								ExpansionPipeline.this.notifyAll();
+							}
+						}
+					}
+				}, "Expansion worker #" + t);
+				workers[t].setDaemon(true);
+				workers[t].start();
+			}
+
+			//Write the chunks in order, moving on to the next file whenever one is full
+			int f = 0;
+			int position = 0;
+			for(int c = 0; c < chunks; c ++) {
+				final int slot = c % ready.length;
+				synchronized(this) {
+					try {
+						while(ready[slot] != c && error == null)
+							wait();
+					}
+					catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted while expanding the dataset", e);
+					}
+					if(error != null)
+						throw new IOException("Failed to transform the images", error);
+				}
+				final int count = chunkLength(c) * transforms.length;
+				int i = 0;
+				while(i < count) {
+					while(position == fileStarts[f + 1])
+						f ++;
+					final int n = Math.min(count - i, fileStarts[f + 1] - position);
+					writeFully(images[f], ByteBuffer.wrap(out[slot].pixels, MNISTDataset.offsetOf(i), n * MNISTImage.PIXEL_COUNT));
+					writeFully(labels[f], ByteBuffer.wrap(out[slot].labels, i, n));
+					i += n;
+					position += n;
+				}
+				synchronized(this) {
+					written = c + 1;
+					notifyAll();
+				}
+			}
+		}
+		finally {
+			synchronized(this) {
+				stopped = true;
+				notifyAll();
+			}
+			boolean interrupted = false;
+			for(Thread worker : workers) {
+				while(worker != null) {
+					try {
+						worker.join();
+						break;
+					}
+					catch(InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if(interrupted)
+				Thread.currentThread().interrupt();
+			for(int f = 0; f < files; f ++) {
+				if(images[f] != null)
+					images[f].close();
+				if(labels[f] != null)
+					labels[f].close();
+			}
+		}
+	}
+	//The loop of a worker: claims the next chunk whose slot is free and transforms it, until every chunk is claimed
+	void work() throws InterruptedException {
+		final int factor = transforms.length;
+		while(true) {
+			int c;
+			synchronized(this) {
+				//The slot of chunk c is free once chunk c - slots has been written
+				while(!stopped && claimed < chunks && claimed - written >= ready.length)
+					wait();
+				if(stopped || claimed >= chunks)
+					return;
+				c = claimed ++;
+			}
+			final int slot = c % ready.length;
+			final int from = c * CHUNK_SIZE, count = chunkLength(c);
+			final MNISTDataset src = in[slot], dest = out[slot];
+			source.read(from, from + count, src, 0);
+			for(int i = 0; i < count; i ++) {
+				for(int t = 0; t < factor; t ++) {
+					transforms[t].apply(src.pixels, MNISTDataset.offsetOf(i), dest.pixels, MNISTDataset.offsetOf(i * factor + t));
+					dest.labels[i * factor + t] = src.labels[i];
+				}
+			}
+			synchronized(this) {
+				ready[slot] = c;
+				notifyAll();
+			}
+		}
+	}
+	//The number of source images in chunk c
+	int chunkLength(int c) {
+		return Math.min(CHUNK_SIZE, source.size() - c * CHUNK_SIZE);
+	}
+	static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
@@ -0,0 +1,125 @@
+package mnist;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * A memory-mapped IDX file of unsigned bytes, the format of the MNIST image and label files.
+ * The header is parsed once when the file is opened; after that, any item can be reached directly by its index,
+ * either as a read-only view of the mapped file (no copy is made and nothing is put on the heap)
+ * or by copying it into an array with a single bulk transfer.
+ *
+ * Layout (big-endian):
+ * 0      2 bytes  0
+ * 2      byte     data type, 0x08 for unsigned bytes
+ * 3      byte     number of dimensions (D)
+ * 4      D ints   size of each dimension, the first being the number of items
+ * 4+4D   the items, one after another, each the product of the other dimensions in bytes
+ *
+ * Files written by older versions of MNISTLoader.saveImages() have a magic number of 0 instead of the data type and
+ * number of dimensions; these are read with the number of dimensions given to open().
+ * The data of a file must fit in one mapping, i.e. be under 2 GB.
+ */
+public final class IdxFile {
+	public static final byte UNSIGNED_BYTE = 0x08;
+
+	final MappedByteBuffer buffer;
+	final int[] dimensions;
+	//The index in the buffer of the first item
+	final int dataOffset;
+	final int count;
+	final int itemSize;
+
+	private IdxFile(MappedByteBuffer buffer, int[] dimensions, int dataOffset) {
+		this.buffer = buffer;
+		this.dimensions = dimensions;
+		this.dataOffset = dataOffset;
+		this.count = dimensions[0];
+		int size = 1;
+		for(int i = 1; i < dimensions.length; i ++)
+			size *= dimensions[i];
+		this.itemSize = size;
+	}
+
+	//Maps a file and parses its header. The file is only opened once and can be closed (or deleted) right away,
+	//as the mapping stays valid until the IdxFile is garbage collected.
+	//legacyDimensions is the number of dimensions to assume for files with a magic number of 0, e.g. 3 for images, 1 for labels
+	public static IdxFile open(File f, int legacyDimensions) throws IOException {
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			final long fileSize = channel.size();
+			if(fileSize > Integer.MAX_VALUE)
+				throw new IOException("IDX file too large to map: " + f);
+			if(fileSize < 4)
+				throw new IOException("Not an IDX file: " + f);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+			final int magic = buffer.getInt(0);
+			int dims;
+			if(magic == 0)
+				dims = legacyDimensions;
+			else if((magic >>> 16) == 0 && (byte) (magic >>> 8) == UNSIGNED_BYTE)
+				dims = magic & 0xFF;
+			else
+				throw new IOException("Not an IDX file of unsigned bytes: " + f);
+			if(dims < 1 || 4 + 4L * dims > fileSize)
+				throw new IOException("Invalid number of dimensions in " + f);
+
+			int[] dimensions = new int[dims];
+			long size = 1;
+			for(int i = 0; i < dims; i ++) {
+				dimensions[i] = buffer.getInt(4 + 4 * i);
+				if(dimensions[i] < 0)
+					throw new IOException("Invalid dimension in " + f);
+				size *= dimensions[i];
+			}
+			final int dataOffset = 4 + 4 * dims;
+			if(dataOffset + size > fileSize)
+				throw new IOException("IDX file is shorter than its header says: " + f);
+			return new IdxFile(buffer, dimensions, dataOffset);
+		}
+	}
+
+	//The number of items, i.e. the first dimension
+	public int size() {
+		return count;
+	}
+	//The number of bytes in each item
+	public int itemSize() {
+		return itemSize;
+	}
+	//A copy of the size of each dimension
+	public int[] getDimensions() {
+		return dimensions.clone();
+	}
+	//The index in buffer() of the first byte of item i
+	public int offsetOf(int i) {
+		return dataOffset + i * itemSize;
+	}
+	//The whole mapped file, read-only; item i starts at offsetOf(i). Use absolute get()s, or duplicate() it before changing its position.
+	public ByteBuffer buffer() {
+		return buffer.asReadOnlyBuffer();
+	}
+	//Returns a read-only view of item i, without copying it
+	public ByteBuffer item(int i) {
+		if(i < 0 || i >= count)
+			throw new IndexOutOfBoundsException("Item " + i + " of " + count);
+		ByteBuffer view = buffer.asReadOnlyBuffer();
+		view.position(offsetOf(i)).limit(offsetOf(i) + itemSize);
+		return view.slice();
+	}
+	//The first byte of item i, unsigned; for label files
+	public int get(int i) {
+		return buffer.get(offsetOf(i)) & 0xFF;
+	}
+	//Copies items from (inclusive) to to (exclusive) into an array, starting at dest[destOffset], in one bulk transfer
+	public void read(int from, int to, byte[] dest, int destOffset) {
+		if(from < 0 || to > count || from > to)
+			throw new IndexOutOfBoundsException("Items " + from + " to " + to + " of " + count);
+		ByteBuffer view = buffer.duplicate();
+		view.position(offsetOf(from));
+		view.get(dest, destOffset, (to - from) * itemSize);
+	}
+}
@@ -0,0 +1,120 @@
+package mnist;
+
+import neuralnet.core.XorShiftRandom;
+
+/*
+ * Applies a random distortion to images, so the network can be trained on a fresh variation of every image each epoch
+ * instead of on a fixed set of expanded copies.
+ * Each image is translated by a random whole number of pixels, rotated by a random angle around its center and,
+ * if enabled, distorted elastically: a random displacement is drawn for each point of a coarse grid over the image
+ * and interpolated smoothly in between, which bends the strokes the way differences in handwriting do.
+ * When only translation is enabled, DatabaseExpander.translateImage() is used; otherwise the whole distortion is done in
+ * one pass by DatabaseExpander.warpImage(). Either way, nothing is allocated per image.
+ * An augmenter keeps its random number generator and scratch memory between images, so it must only be used by one
+ * thread at a time; copies for other threads can be made with the copy constructor.
+ */
+public final class ImageAugmenter {
+	//The number of cells along each side of the grid of random displacements used for elastic distortions
+	public static final int ELASTIC_GRID = 4;
+	//The cell of the grid each row or column of pixels is in, and how far across the cell it is
+	static final int[] GRID_CELL = new int[MNISTImage.SIZE];
+	static final double[] GRID_FRACTION = new double[MNISTImage.SIZE];
+	static {
+		for(int i = 0; i < MNISTImage.SIZE; i ++) {
+			final double g = (double) i * ELASTIC_GRID / (MNISTImage.SIZE - 1);
+			GRID_CELL[i] = Math.min((int) g, ELASTIC_GRID - 1);
+			GRID_FRACTION[i] = g - GRID_CELL[i];
+		}
+	}
+
+	final int maxTranslation;
+	final double maxRotation;
+	final double elasticAmount;
+	final XorShiftRandom random;
+	//The inverse transform of the current image, and the displacements of the points of the grid, of the row of pixels
+	//being worked on and of every pixel
+	final double[] matrix = new double[6];
+	final double[] gridX = new double[(ELASTIC_GRID + 1) * (ELASTIC_GRID + 1)];
+	final double[] gridY = new double[(ELASTIC_GRID + 1) * (ELASTIC_GRID + 1)];
+	final double[] rowX = new double[ELASTIC_GRID + 1];
+	final double[] rowY = new double[ELASTIC_GRID + 1];
+	final double[] dx = new double[MNISTImage.PIXEL_COUNT];
+	final double[] dy = new double[MNISTImage.PIXEL_COUNT];
+
+	//maxTranslation is the largest shift in pixels along each axis, maxRotation the largest angle in degrees either way,
+	//and elasticAmount the largest displacement in pixels of each point of the grid along each axis (0 for none)
+	public ImageAugmenter(int maxTranslation, double maxRotation, double elasticAmount, long seed) {
+		if(maxTranslation < 0 || maxRotation < 0 || elasticAmount < 0)
+			throw new IllegalArgumentException("The amounts of distortion cannot be negative");
+		this.maxTranslation = maxTranslation;
+		this.maxRotation = Math.toRadians(maxRotation);
+		this.elasticAmount = elasticAmount;
+		random = new XorShiftRandom(seed);
+	}
+	//An augmenter with the same settings as another and its own random numbers, e.g. for another thread
+	public ImageAugmenter(ImageAugmenter other, long seed) {
+		this.maxTranslation = other.maxTranslation;
+		this.maxRotation = other.maxRotation;
+		this.elasticAmount = other.elasticAmount;
+		random = new XorShiftRandom(seed);
+	}
+
+	//A random double from -1 to 1
+	double nextSigned() {
+		return random.nextDouble() * 2 - 1;
+	}
+	//A random int from -bound to bound, inclusive
+	int nextInt(int bound) {
+		return random.nextInt(2 * bound + 1) - bound;
+	}
+
+	//Writes a randomly distorted copy of the image at src[srcOffset] to the image at dest[destOffset]
+	//The two must not overlap
+	public void augment(byte[] src, int srcOffset, byte[] dest, int destOffset) {
+		final int xa = nextInt(maxTranslation), ya = nextInt(maxTranslation);
+		if(maxRotation == 0 && elasticAmount == 0) {
+			DatabaseExpander.translateImage(src, srcOffset, dest, destOffset, xa, ya);
+			return;
+		}
+		//Rotate the position of each pixel of dest back by the angle and undo the shift to find it in src
+		final double angle = maxRotation * nextSigned();
+		final double cos = Math.cos(angle), sin = Math.sin(angle);
+		matrix[0] = cos;
+		matrix[1] = sin;
+		matrix[2] = -xa;
+		matrix[3] = -sin;
+		matrix[4] = cos;
+		matrix[5] = -ya;
+		if(elasticAmount == 0) {
+			DatabaseExpander.warpImage(src, srcOffset, dest, destOffset, matrix, null, null);
+			return;
+		}
+		for(int k = 0; k < gridX.length; k ++) {
+			gridX[k] = elasticAmount * nextSigned();
+			gridY[k] = elasticAmount * nextSigned();
+		}
+		//Interpolate between the four points of the grid around each pixel:
+		//first down the columns of the grid to the row of pixels, then along the row
+		for(int y = 0; y < MNISTImage.SIZE; y ++) {
+			final int k = GRID_CELL[y] * (ELASTIC_GRID + 1);
+			final double fy = GRID_FRACTION[y];
+			for(int c = 0; c <= ELASTIC_GRID; c ++) {
+				rowX[c] = gridX[k + c] + (gridX[k + ELASTIC_GRID + 1 + c] - gridX[k + c]) * fy;
+				rowY[c] = gridY[k + c] + (gridY[k + ELASTIC_GRID + 1 + c] - gridY[k + c]) * fy;
+			}
+			for(int x = 0; x < MNISTImage.SIZE; x ++) {
+				final int c = GRID_CELL[x];
+				final double fx = GRID_FRACTION[x];
+				dx[y * MNISTImage.SIZE + x] = rowX[c] + (rowX[c + 1] - rowX[c]) * fx;
+				dy[y * MNISTImage.SIZE + x] = rowY[c] + (rowY[c + 1] - rowY[c]) * fx;
+			}
+		}
+		DatabaseExpander.warpImage(src, srcOffset, dest, destOffset, matrix, dx, dy);
+	}
+	//Returns a new randomly distorted copy of an image
+	public MNISTImage augment(MNISTImage src) {
+		MNISTImage img = new MNISTImage(src.classification);
+		augment(src.data, src.offset, img.data, 0);
+		return img;
+	}
+}
@@ -0,0 +1,11 @@
+package mnist;
+
+/*
+ * A fixed transformation of an image, e.g. a translation or a rotation, used to expand a dataset with transformed copies of its images.
+ * DatabaseExpander has methods to make the common ones.
+ * The same transform is used by several threads at once when expanding in parallel, so it must not change any state of its own.
+ */
+public interface ImageTransform {
+	//Writes the transformed image at src[srcOffset] to the image at dest[destOffset]; the two must not overlap
+	public void apply(byte[] src, int srcOffset, byte[] dest, int destOffset);
+}
@@ -0,0 +1,81 @@
+package mnist;
+
+/*
+ * A set of MNIST images stored in packed, columnar form:
+ * the pixels of every image are in one contiguous byte[] (image i starts at i * PIXEL_COUNT)
+ * and the labels are in one byte[].
+ * This avoids having a separate pixel array for every image, which for large (e.g. expanded) datasets
+ * means hundreds of thousands of small objects scattered across the heap.
+ * The MNISTImages returned by get() and images() are lightweight views into the packed arrays;
+ * they do not have pixel arrays of their own, so writing to a view writes to the dataset.
+ */
+public final class MNISTDataset {
+	final byte[] pixels;
+	final byte[] labels;
+	final int size;
+	//The views returned by images(), created on the first call
+	MNISTImage[] views;
+
+	//Creates a new dataset of blank images with label 0
+	public MNISTDataset(int size) {
+		this(new byte[size * MNISTImage.PIXEL_COUNT], new byte[size]);
+	}
+	//Creates a dataset backed by existing arrays. The arrays are not copied.
+	public MNISTDataset(byte[] pixels, byte[] labels) {
+		if(pixels.length != labels.length * MNISTImage.PIXEL_COUNT)
+			throw new IllegalArgumentException("The number of pixels does not match the number of labels");
+		this.pixels = pixels;
+		this.labels = labels;
+		this.size = labels.length;
+	}
+	//Packs existing images into a new dataset, copying their data
+	public MNISTDataset(MNISTImage[] images) {
+		this(images.length);
+		for(int i = 0; i < size; i ++) {
+			System.arraycopy(images[i].data, images[i].offset, pixels, i * MNISTImage.PIXEL_COUNT, MNISTImage.PIXEL_COUNT);
+			labels[i] = (byte) images[i].classification;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+	//The packed pixels; image i occupies indices i * PIXEL_COUNT to (i + 1) * PIXEL_COUNT - 1
+	public byte[] getPixels() {
+		return pixels;
+	}
+	public byte[] getLabels() {
+		return labels;
+	}
+	public int getLabel(int i) {
+		return labels[i];
+	}
+	//The index in getPixels() of the first pixel of image i
+	public static int offsetOf(int i) {
+		return i * MNISTImage.PIXEL_COUNT;
+	}
+
+	//Returns a new view of image i
+	public MNISTImage get(int i) {
+		return new MNISTImage(pixels, offsetOf(i), labels[i]);
+	}
+	//Returns views of all the images, for use with the neural network's training and evaluation methods.
+	//The same array is returned every time, so it is only made once.
+	public MNISTImage[] images() {
+		if(views == null) {
+			MNISTImage[] arr = new MNISTImage[size];
+			for(int i = 0; i < size; i ++)
+				arr[i] = get(i);
+			views = arr;
+		}
+		return views;
+	}
+	//Returns a new dataset with a copy of images from (inclusive) to to (exclusive)
+	public MNISTDataset copyOfRange(int from, int to) {
+		byte[] p = new byte[(to - from) * MNISTImage.PIXEL_COUNT];
+		byte[] l = new byte[to - from];
+		System.arraycopy(pixels, offsetOf(from), p, 0, p.length);
+		System.arraycopy(labels, from, l, 0, l.length);
+		return new MNISTDataset(p, l);
+	}
+}
@@ -1,15 +1,17 @@
 package mnist;
 
-import neuralnet.core.Classifiable;
+import neuralnet.core.ByteClassifiable;
 
 /*
  * A training/evaluation image
  */
-public class MNISTImage implements Classifiable {
+public class MNISTImage implements ByteClassifiable {
 	public static final int SIZE = 28;
 	public static final int PIXEL_COUNT = SIZE * SIZE;
 	//Data is stored in a byte array
+	//If this image is a view into an MNISTDataset, data is the dataset's packed pixel array and the image starts at offset
 	public byte[] data;
+	public int offset;
 	int classification;
 	
 	public MNISTImage(byte[] dat, int classification) {
@@ -22,13 +24,21 @@ public class MNISTImage implements Classifiable {
 		data = new byte[PIXEL_COUNT];
 		this.classification = classification;
 	}
+	//Creates a view of the pixels from data[offset] to data[offset + PIXEL_COUNT - 1]; the data is not copied
+	public MNISTImage(byte[] data, int offset, int classification) {
+		if(offset < 0 || offset + PIXEL_COUNT > data.length)
+			throw new IllegalArgumentException("Data array provided is of wrong size");
+		this.data = data;
+		this.offset = offset;
+		this.classification = classification;
+	}
 	
 	//Returns a double[] that has the same length as the number of pixels in an image.
 	//Each value (previously 0 ~ 255) is scaled down to between 0 and 1
 	public double[] asNeuralNetworkInput() {
 		double[] output = new double[PIXEL_COUNT];
 		for(int i = 0; i < PIXEL_COUNT; i ++) {
-			output[i] = ((double) (((int) data[i]) & 0xFF)) / 255;
+			output[i] = ((double) (((int) data[offset + i]) & 0xFF)) / 255;
 			//System.out.println(output[i]);
 		}
 		return output;
@@ -41,13 +51,56 @@ public class MNISTImage implements Classifiable {
 		output[classification] = 1.0;
 		return output;
 	}
+	//Same as asNeuralNetworkInput(), but writes into an existing array instead of making a new one
+	@Override
+	public void writeNeuralNetworkInput(double[] dest, int offset) {
+		for(int i = 0; i < PIXEL_COUNT; i ++) {
+			dest[offset + i] = ((double) (((int) data[this.offset + i]) & 0xFF)) / 255;
+		}
+	}
+	//Same as generateExpectedOutput(), but writes into an existing array instead of making a new one
+	@Override
+	public void writeExpectedOutput(double[] dest, int offset) {
+		for(int i = 0; i < 10; i ++) {
+			dest[offset + i] = 0.0;
+		}
+		dest[offset + classification] = 1.0;
+	}
+	//Single-precision versions of the above
+	@Override
+	public void writeNeuralNetworkInput(float[] dest, int offset) {
+		for(int i = 0; i < PIXEL_COUNT; i ++) {
+			dest[offset + i] = ((float) (((int) data[this.offset + i]) & 0xFF)) / 255;
+		}
+	}
+	@Override
+	public void writeExpectedOutput(float[] dest, int offset) {
+		for(int i = 0; i < 10; i ++) {
+			dest[offset + i] = 0.0f;
+		}
+		dest[offset + classification] = 1.0f;
+	}
+	
+	//The pixels are read by the network directly, scaled from 0 ~ 255 to 0 ~ 1
+	@Override
+	public byte[] getInputBytes() {
+		return data;
+	}
+	@Override
+	public int getInputOffset() {
+		return offset;
+	}
+	@Override
+	public double getInputScale() {
+		return 1.0 / 255;
+	}
 	
 	//Prints out ASCII art to show the digit. For debugging only.
 	public void draw() {
 		for(int i = 0; i < PIXEL_COUNT; i ++) {
 			if(i % SIZE == 0) System.out.println();
 			
-			if(((int) data[i] & 0xFF) > 127)
+			if(((int) data[offset + i] & 0xFF) > 127)
 				System.out.print(1);
 			else 
 				System.out.print(0);
@@ -56,10 +109,10 @@ public class MNISTImage implements Classifiable {
 	}
 	
 	public byte get(int x, int y) {
-		return data[y * SIZE + x];
+		return data[offset + y * SIZE + x];
 	}
 	public void set(int x, int y, byte val) {
-		data[y * SIZE + x] = val;
+		data[offset + y * SIZE + x] = val;
 	}
 	
 	@Override
@@ -1,10 +1,7 @@
 package mnist;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -17,50 +14,33 @@ public final class MNISTLoader {
 	public static final int TRAINING_IMG_COUNT = 50000;
 	public static final int TESTING_IMG_COUNT = 10000;
 	public static final int VALIDATION_IMG_COUNT = 10000;
+	//The magic numbers of IDX files of unsigned bytes with 3 dimensions (images) and 1 dimension (labels)
+	static final int IMAGES_MAGIC = (IdxFile.UNSIGNED_BYTE << 8) | 3;
+	static final int LABELS_MAGIC = (IdxFile.UNSIGNED_BYTE << 8) | 1;
 	
 	public static MNISTImage[] loadImagesBasic(int imgCount, File imagesFile, File labelsFile, int offset) throws FileNotFoundException, IOException {
-		MNISTImage[] mnistImages = new MNISTImage[imgCount];
-		BufferedInputStream images = new BufferedInputStream(new FileInputStream(imagesFile));
-		BufferedInputStream labels = new BufferedInputStream(new FileInputStream(labelsFile));
-		//Discard first bytes
-		//According to MNIST website the first 8 bytes of labels and first 16 bytes of images are not actual data
-		byte[] buf = new byte[8];
-		labels.read(buf);
-		images.read(buf);
-		images.read(buf);
-		//Data buffer
-		byte[] data = new byte[MNISTImage.PIXEL_COUNT];
-		
-		for(int i = 0; i < offset; i ++) {
-			images.read(data);
-			labels.read();
-		}
-		for(int i = 0; i < imgCount; i ++) {
-			//"Pixels are organized row-wise. Pixel values are 0 to 255. 0 means background (white), 255 means foreground (black)."
-			//(From MNIST website)
-			images.read(data);
-			
-			//clone the data because otherwise keeping the same copy would make every loaded image the same
-			mnistImages[i] = new MNISTImage(data.clone(), (byte) labels.read());
-		}
-		
-		labels.close();
-		images.close();
-		return mnistImages;
+		//The images are views into one packed dataset instead of each having its own array
+		return loadDataset(imgCount, imagesFile, labelsFile, offset).images();
+	}
+	//Loads imgCount images, starting from image #offset, into a packed MNISTDataset
+	//The files are memory-mapped, so the images before #offset are skipped over instead of being read
+	public static MNISTDataset loadDataset(int imgCount, File imagesFile, File labelsFile, int offset) throws FileNotFoundException, IOException {
+		MappedMNISTDataset mapped = new MappedMNISTDataset(imagesFile, labelsFile);
+		if(offset < 0 || imgCount < 0 || offset + imgCount > mapped.size())
+			throw new IllegalArgumentException("The files only have " + mapped.size() + " items");
+		//"Pixels are organized row-wise. Pixel values are 0 to 255. 0 means background (white), 255 means foreground (black)."
+		//(From MNIST website)
+		//Since the images are stored back to back in the file just like in the dataset, they are copied all at once
+		return mapped.load(offset, offset + imgCount);
 	}
 	//Loads MNIST images from files. This version determines the number items by reading from the file.
 	public static MNISTImage[] loadImagesFromFile(File imagesFile, File labelsFile) throws IOException {
-		DataInputStream images = new DataInputStream(new FileInputStream(imagesFile));
-		DataInputStream labels = new DataInputStream(new FileInputStream(labelsFile));
-		images.readInt();
-		labels.readInt();
-		int count1 = images.readInt();
-		int count2 = labels.readInt();
-		images.close();
-		labels.close();
-		if(count1 != count2) 
-			throw new IllegalArgumentException("The number of items in the files do not equal");
-		return loadImagesBasic(count1, imagesFile, labelsFile, 0);
+		return loadDatasetFromFile(imagesFile, labelsFile).images();
+	}
+	//Same as loadImagesFromFile(), but returns a packed MNISTDataset
+	public static MNISTDataset loadDatasetFromFile(File imagesFile, File labelsFile) throws IOException {
+		//The count comes from the headers parsed when the files are mapped, so each file is only opened once
+		return new MappedMNISTDataset(imagesFile, labelsFile).load();
 	}
 	
 	public static MNISTImage[] loadTrainingImages() throws IOException, FileNotFoundException {
@@ -72,6 +52,26 @@ public final class MNISTLoader {
 	public static MNISTImage[] loadValidationImages() throws IOException, FileNotFoundException {
 		return loadImagesBasic(VALIDATION_IMG_COUNT, new File("data\\training_images"), new File("data\\training_labels"), TRAINING_IMG_COUNT);
 	}
+	//Same as the above, but return packed MNISTDatasets
+	public static MNISTDataset loadTrainingDataset() throws IOException, FileNotFoundException {
+		return loadDataset(TRAINING_IMG_COUNT, new File("data\\training_images"), new File("data\\training_labels"), 0);
+	}
+	public static MNISTDataset loadTestingDataset() throws IOException, FileNotFoundException {
+		return loadDataset(TESTING_IMG_COUNT, new File("data\\testing_images"), new File("data\\testing_labels"), 0);
+	}
+	public static MNISTDataset loadValidationDataset() throws IOException, FileNotFoundException {
+		return loadDataset(VALIDATION_IMG_COUNT, new File("data\\training_images"), new File("data\\training_labels"), TRAINING_IMG_COUNT);
+	}
+	//Same as the above, but return views of the memory-mapped files, which take no heap memory for the pixels
+	public static MappedMNISTImage[] mapTrainingImages() throws IOException {
+		return new MappedMNISTDataset(new File("data\\training_images"), new File("data\\training_labels")).images(0, TRAINING_IMG_COUNT);
+	}
+	public static MappedMNISTImage[] mapTestingImages() throws IOException {
+		return new MappedMNISTDataset(new File("data\\testing_images"), new File("data\\testing_labels")).images(0, TESTING_IMG_COUNT);
+	}
+	public static MappedMNISTImage[] mapValidationImages() throws IOException {
+		return new MappedMNISTDataset(new File("data\\training_images"), new File("data\\training_labels")).images(TRAINING_IMG_COUNT, TRAINING_IMG_COUNT + VALIDATION_IMG_COUNT);
+	}
 	
 	static final byte[] intToByteArray(int a) {
 		return new byte[] {
@@ -89,19 +89,43 @@ public final class MNISTLoader {
 		BufferedOutputStream imgData = new BufferedOutputStream(new FileOutputStream(imgFile));
 		BufferedOutputStream labelData = new BufferedOutputStream(new FileOutputStream(labelFile));
 		
-		imgData.write(new byte[4]);
-		labelData.write(new byte[4]);
+		imgData.write(intToByteArray(IMAGES_MAGIC));
+		labelData.write(intToByteArray(LABELS_MAGIC));
 		imgData.write(intToByteArray(images.length));
 		labelData.write(intToByteArray(images.length));
 		imgData.write(intToByteArray(MNISTImage.SIZE));
 		imgData.write(intToByteArray(MNISTImage.SIZE));
 		
 		for(MNISTImage img : images) {
-			imgData.write(img.data);
+			imgData.write(img.data, img.offset, MNISTImage.PIXEL_COUNT);
 			labelData.write((int) img.getClassification());
 		}
 		
 		imgData.close();
 		labelData.close();
 	}
+	//Saves images from (inclusive) to to (exclusive) of a dataset, in the same format as above
+	public static void saveImages(MNISTDataset images, int from, int to, File imgFile, File labelFile) throws IOException {
+		BufferedOutputStream imgData = new BufferedOutputStream(new FileOutputStream(imgFile));
+		BufferedOutputStream labelData = new BufferedOutputStream(new FileOutputStream(labelFile));
+		try {
+			imgData.write(intToByteArray(IMAGES_MAGIC));
+			labelData.write(intToByteArray(LABELS_MAGIC));
+			imgData.write(intToByteArray(to - from));
+			labelData.write(intToByteArray(to - from));
+			imgData.write(intToByteArray(MNISTImage.SIZE));
+			imgData.write(intToByteArray(MNISTImage.SIZE));
+			
+			//The images and labels are already packed the same way as in the file
+			imgData.write(images.pixels, MNISTDataset.offsetOf(from), (to - from) * MNISTImage.PIXEL_COUNT);
+			labelData.write(images.labels, from, to - from);
+		}
+		finally {
+			imgData.close();
+			labelData.close();
+		}
+	}
+	public static void saveImages(MNISTDataset images, File imgFile, File labelFile) throws IOException {
+		saveImages(images, 0, images.size(), imgFile, labelFile);
+	}
 }
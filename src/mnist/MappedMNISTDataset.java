@@ -0,0 +1,104 @@
+package mnist;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * A set of MNIST images read straight from memory-mapped image and label files, without loading them onto the heap.
+ * Opening a dataset only maps the two files and parses their headers, so it takes about the same time whatever its size;
+ * the pages of the files are read by the operating system as they are first used, and stay in its page cache,
+ * shared between every dataset and process that maps the same files.
+ * The images returned by get() and images() are views of the mapped pixels (see MappedMNISTImage);
+ * load() copies a range into a regular MNISTDataset for when MNISTImages are needed.
+ */
+public final class MappedMNISTDataset {
+	final IdxFile imageFile;
+	final IdxFile labelFile;
+	//The mapped files, shared read-only by every view
+	final ByteBuffer pixels;
+	final ByteBuffer labels;
+	//The index in the files of the first image of this dataset, and the number of images in it
+	final int start;
+	final int size;
+	//The views returned by images(), created on the first call
+	MappedMNISTImage[] views;
+
+	//Maps an image file and a label file
+	public MappedMNISTDataset(File imagesFile, File labelsFile) throws IOException {
+		imageFile = IdxFile.open(imagesFile, 3);
+		labelFile = IdxFile.open(labelsFile, 1);
+		if(imageFile.size() != labelFile.size())
+			throw new IllegalArgumentException("The number of items in the files do not equal");
+		if(imageFile.itemSize() != MNISTImage.PIXEL_COUNT || labelFile.itemSize() != 1)
+			throw new IllegalArgumentException("The files are not MNIST images and labels");
+		pixels = imageFile.buffer();
+		labels = labelFile.buffer();
+		start = 0;
+		size = imageFile.size();
+	}
+	//A range of another dataset, sharing its mappings
+	private MappedMNISTDataset(MappedMNISTDataset other, int from, int to) {
+		imageFile = other.imageFile;
+		labelFile = other.labelFile;
+		pixels = other.pixels;
+		labels = other.labels;
+		start = other.start + from;
+		size = to - from;
+	}
+
+	public int size() {
+		return size;
+	}
+	public int getLabel(int i) {
+		return labelFile.get(start + i);
+	}
+	//Returns a new view of image i
+	public MappedMNISTImage get(int i) {
+		if(i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Image " + i + " of " + size);
+		return new MappedMNISTImage(pixels, imageFile.offsetOf(start + i), labelFile.get(start + i));
+	}
+	//Returns views of all the images, for use with the neural network's training and evaluation methods.
+	//The same array is returned every time, so it is only made once.
+	public MappedMNISTImage[] images() {
+		if(views == null) {
+			MappedMNISTImage[] arr = new MappedMNISTImage[size];
+			for(int i = 0; i < size; i ++)
+				arr[i] = get(i);
+			views = arr;
+		}
+		return views;
+	}
+	//Returns new views of images from (inclusive) to to (exclusive)
+	public MappedMNISTImage[] images(int from, int to) {
+		MappedMNISTImage[] arr = new MappedMNISTImage[to - from];
+		for(int i = from; i < to; i ++)
+			arr[i - from] = get(i);
+		return arr;
+	}
+	//Copies images from (inclusive) to to (exclusive) into a new packed MNISTDataset
+	//The pixels and labels are each copied with one bulk transfer, starting right at image #from
+	public MNISTDataset load(int from, int to) {
+		MNISTDataset dataset = new MNISTDataset(to - from);
+		read(from, to, dataset, 0);
+		return dataset;
+	}
+	public MNISTDataset load() {
+		return load(0, size);
+	}
+	//Copies images from (inclusive) to to (exclusive) into an existing dataset, starting at image #destIndex
+	public void read(int from, int to, MNISTDataset dest, int destIndex) {
+		if(from < 0 || to > size || from > to)
+			throw new IndexOutOfBoundsException("Images " + from + " to " + to + " of " + size);
+		imageFile.read(start + from, start + to, dest.pixels, MNISTDataset.offsetOf(destIndex));
+		labelFile.read(start + from, start + to, dest.labels, destIndex);
+	}
+	//Returns a dataset of images from (inclusive) to to (exclusive) of this one, sharing the same mapped files
+	//e.g. range(0, 50000) of the MNIST training file is the training set and range(50000, 60000) the validation set
+	public MappedMNISTDataset range(int from, int to) {
+		if(from < 0 || to > size || from > to)
+			throw new IndexOutOfBoundsException("Images " + from + " to " + to + " of " + size);
+		return new MappedMNISTDataset(this, from, to);
+	}
+}
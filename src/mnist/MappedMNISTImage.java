@@ -0,0 +1,89 @@
+package mnist;
+
+import java.nio.ByteBuffer;
+
+import neuralnet.core.Classifiable;
+
+/*
+ * An MNIST image whose pixels are in a memory-mapped file (see MappedMNISTDataset) instead of a byte[].
+ * It is read-only, and takes no memory for its pixels. The network reads its input through writeNeuralNetworkInput(),
+ * which converts the pixels straight from the mapping, so using it does not allocate either.
+ */
+public class MappedMNISTImage implements Classifiable {
+	//The mapped file and the index of the first pixel in it; only absolute get()s are used, so the buffer can be shared
+	final ByteBuffer buffer;
+	final int offset;
+	final int classification;
+
+	MappedMNISTImage(ByteBuffer buffer, int offset, int classification) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.classification = classification;
+	}
+
+	//Each value (previously 0 ~ 255) is scaled down to between 0 and 1, as in MNISTImage
+	@Override
+	public double[] asNeuralNetworkInput() {
+		double[] output = new double[MNISTImage.PIXEL_COUNT];
+		writeNeuralNetworkInput(output, 0);
+		return output;
+	}
+	@Override
+	public double[] generateExpectedOutput() {
+		double[] output = new double[10];
+		output[classification] = 1.0;
+		return output;
+	}
+	@Override
+	public void writeNeuralNetworkInput(double[] dest, int offset) {
+		for(int i = 0; i < MNISTImage.PIXEL_COUNT; i ++) {
+			dest[offset + i] = ((double) (buffer.get(this.offset + i) & 0xFF)) / 255;
+		}
+	}
+	@Override
+	public void writeExpectedOutput(double[] dest, int offset) {
+		for(int i = 0; i < 10; i ++) {
+			dest[offset + i] = 0.0;
+		}
+		dest[offset + classification] = 1.0;
+	}
+	@Override
+	public void writeNeuralNetworkInput(float[] dest, int offset) {
+		for(int i = 0; i < MNISTImage.PIXEL_COUNT; i ++) {
+			dest[offset + i] = ((float) (buffer.get(this.offset + i) & 0xFF)) / 255;
+		}
+	}
+	@Override
+	public void writeExpectedOutput(float[] dest, int offset) {
+		for(int i = 0; i < 10; i ++) {
+			dest[offset + i] = 0.0f;
+		}
+		dest[offset + classification] = 1.0f;
+	}
+
+	public byte get(int x, int y) {
+		return buffer.get(offset + y * MNISTImage.SIZE + x);
+	}
+	//Copies the pixels into a new MNISTImage with its own array
+	public MNISTImage toImage() {
+		MNISTImage img = new MNISTImage(classification);
+		for(int i = 0; i < MNISTImage.PIXEL_COUNT; i ++)
+			img.data[i] = buffer.get(offset + i);
+		return img;
+	}
+
+	@Override
+	public Object getClassification() {
+		return this.classification;
+	}
+	@Override
+	public Object toClassification(double[] networkOutput) {
+		int maxIndex = 0;
+		for(int i = 0; i < 10; i ++) {
+			if(networkOutput[i] > networkOutput[maxIndex]) {
+				maxIndex = i;
+			}
+		}
+		return maxIndex;
+	}
+}
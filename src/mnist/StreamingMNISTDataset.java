@@ -0,0 +1,114 @@
+package mnist;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import neuralnet.core.Permutation;
+import neuralnet.core.TrainingDataSource;
+
+/*
+ * A TrainingDataSource that streams MNIST images from any number of memory-mapped IDX files,
+ * so the network can train on more images than fit in the heap (e.g. tens of millions of expanded images).
+ * The images are divided into blocks of consecutive images. Each epoch, the blocks of all the files are shuffled,
+ * and each chunk is made of the next few blocks in that order, copied into one packed MNISTDataset that is reused
+ * for every chunk. The network then shuffles the images within the chunk.
+ * Since every chunk mixes blocks from all over the data, the order is close to a full shuffle as long as the blocks
+ * are small compared to the chunks, while each block is still read as one contiguous run of the file.
+ * The heap used is one chunk of pixels and its views, plus 8 bytes per block, whatever the total size of the data.
+ * Each file must be under 2 GB (about 2.7 million images); larger data sets can be split into several files.
+ */
+public final class StreamingMNISTDataset implements TrainingDataSource<MNISTImage> {
+	public static final int DEFAULT_BLOCK_SIZE = 256;
+	public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+	final MappedMNISTDataset[] sets;
+	final int size;
+	final int blockSize;
+	//The set and the first image of each block, in the order of the blocks in the files
+	final int[] blockSets;
+	final int[] blockStarts;
+	//The order of the blocks in the current epoch
+	final Permutation blockOrder;
+	//The position in blockOrder of the next block to read
+	int nextBlock;
+	//The chunk that is filled and returned by nextChunk(), and views of all its images
+	final MNISTDataset chunk;
+	final MNISTImage[] views;
+
+	//Streams the images of several datasets
+	//chunkSize is the number of images in each chunk and is rounded down to a multiple of blockSize
+	public StreamingMNISTDataset(int chunkSize, int blockSize, MappedMNISTDataset... sets) {
+		if(blockSize <= 0 || chunkSize < blockSize)
+			throw new IllegalArgumentException("The chunk size must be at least the block size");
+		this.sets = sets.clone();
+		this.blockSize = blockSize;
+		long total = 0;
+		int blocks = 0;
+		for(MappedMNISTDataset set : sets) {
+			total += set.size();
+			blocks += (set.size() + blockSize - 1) / blockSize;
+		}
+		if(total > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many images");
+		size = (int) total;
+		blockSets = new int[blocks];
+		blockStarts = new int[blocks];
+		int b = 0;
+		for(int s = 0; s < sets.length; s ++) {
+			for(int start = 0; start < sets[s].size(); start += blockSize) {
+				blockSets[b] = s;
+				blockStarts[b ++] = start;
+			}
+		}
+		blockOrder = new Permutation(blocks);
+		nextBlock = blocks;
+
+		//No chunk needs to be larger than the whole data set
+		final int capacity = (int) Math.min(chunkSize / blockSize * blockSize, (long) blocks * blockSize);
+		chunk = new MNISTDataset(capacity);
+		views = chunk.images();
+	}
+	//Streams the images of several pairs of image and label files, with the default chunk and block sizes
+	public StreamingMNISTDataset(File[] imageFiles, File[] labelFiles) throws IOException {
+		this(DEFAULT_CHUNK_SIZE, DEFAULT_BLOCK_SIZE, map(imageFiles, labelFiles));
+	}
+	static MappedMNISTDataset[] map(File[] imageFiles, File[] labelFiles) throws IOException {
+		if(imageFiles.length != labelFiles.length)
+			throw new IllegalArgumentException("Every image file needs a label file");
+		MappedMNISTDataset[] sets = new MappedMNISTDataset[imageFiles.length];
+		for(int i = 0; i < sets.length; i ++)
+			sets[i] = new MappedMNISTDataset(imageFiles[i], labelFiles[i]);
+		return sets;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+	//Shuffles the blocks for a new epoch
+	@Override
+	public void startEpoch() {
+		blockOrder.shuffle();
+		nextBlock = 0;
+	}
+	//Copies the next blocks into the chunk and returns views of its images
+	//The same views are returned every time, except for the last chunk of an epoch if it is not full
+	@Override
+	public MNISTImage[] nextChunk() {
+		int count = 0;
+		while(nextBlock < blockOrder.size() && count + blockSize <= views.length) {
+			final int b = blockOrder.get(nextBlock ++);
+			final MappedMNISTDataset set = sets[blockSets[b]];
+			final int start = blockStarts[b], end = Math.min(start + blockSize, set.size());
+			set.read(start, end, chunk, count);
+			count += end - start;
+		}
+		if(count == 0)
+			return null;
+		//The views read the pixels and labels of the chunk, but have their labels copied when made, so update them
+		for(int i = 0; i < count; i ++)
+			views[i].classification = chunk.labels[i];
+		return count == views.length ? views : Arrays.copyOf(views, count);
+	}
+}
@@ -17,6 +17,61 @@ public interface ActivationFunction {
 	 * @return The derivative of this activation function at z
 	 */
 	public double activationDerivative(double z);
+	/**
+	 * Puts a range of weighted sums through the activation function. This is what the neural network calls in training
+	 * and classification, once for each layer, instead of calling activation(double) for every neuron.<br>
+	 * The default implementation calls activation(double) for each element; the pre-defined functions override it
+	 * with a loop that can be inlined and vectorized.
+	 * @param z - The weighted sums
+	 * @param a - The array to store the activations in; may be the same array as z
+	 * @param from - The index of the first element (inclusive)
+	 * @param to - The index of the last element (exclusive)
+	 */
+	public default void activation(double[] z, double[] a, int from, int to) {
+		for(int i = from; i < to; i ++)
+			a[i] = activation(z[i]);
+	}
+	/**
+	 * Multiplies a range of values by the derivative of the activation function, as done to the errors in backpropagation.
+	 * Both the weighted sums and the activations computed from them are passed in, so that functions whose derivative
+	 * is cheaper to get from the activation (e.g. sigmoid, a(1 - a)) do not need to compute the function again.<br>
+	 * The default implementation calls activationDerivative(double) for each element.
+	 * @param z - The weighted sums
+	 * @param a - The activations of z, as computed by activation()
+	 * @param e - The values to multiply by the derivative at z, in place
+	 * @param from - The index of the first element (inclusive)
+	 * @param to - The index of the last element (exclusive)
+	 */
+	public default void multiplyByDerivative(double[] z, double[] a, double[] e, int from, int to) {
+		for(int i = from; i < to; i ++)
+			e[i] *= activationDerivative(z[i]);
+	}
+	/**
+	 * Single-precision version of activation(double[], double[], int, int), used by FloatClassificationNeuralNetwork.<br>
+	 * The default implementation calls activation(double) for each element.
+	 * @param z - The weighted sums
+	 * @param a - The array to store the activations in; may be the same array as z
+	 * @param from - The index of the first element (inclusive)
+	 * @param to - The index of the last element (exclusive)
+	 */
+	public default void activation(float[] z, float[] a, int from, int to) {
+		for(int i = from; i < to; i ++)
+			a[i] = (float) activation(z[i]);
+	}
+	/**
+	 * Single-precision version of multiplyByDerivative(double[], double[], double[], int, int),
+	 * used by FloatClassificationNeuralNetwork.<br>
+	 * The default implementation calls activationDerivative(double) for each element.
+	 * @param z - The weighted sums
+	 * @param a - The activations of z, as computed by activation()
+	 * @param e - The values to multiply by the derivative at z, in place
+	 * @param from - The index of the first element (inclusive)
+	 * @param to - The index of the last element (exclusive)
+	 */
+	public default void multiplyByDerivative(float[] z, float[] a, float[] e, int from, int to) {
+		for(int i = from; i < to; i ++)
+			e[i] *= activationDerivative(z[i]);
+	}
 	/**
 	 * The code of this activation function.<br>
 	 * Each activation function has a unique code for it to be identified.
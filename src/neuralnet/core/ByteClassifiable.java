@@ -0,0 +1,27 @@
+package neuralnet.core;
+
+/**
+ * A Classifiable whose neural network input is a run of unsigned bytes multiplied by a constant, such as the pixels of an image.<br>
+ * ClassificationNeuralNetwork reads the bytes of these objects directly: in training, the first layer's matrix products
+ * convert and scale the bytes one cache-sized block at a time as they go, so the inputs of a batch are never stored as doubles
+ * in full, and classify() reads them without asNeuralNetworkInput() having to make a new array.
+ * The input must still be available through asNeuralNetworkInput() and writeNeuralNetworkInput() for everything else.
+ */
+public interface ByteClassifiable extends Classifiable {
+	/**
+	 * The array containing the input bytes. The input to neuron i of the input layer is
+	 * (getInputBytes()[getInputOffset() + i] &amp; 0xFF) * getInputScale().
+	 * @return The array containing the input bytes
+	 */
+	public byte[] getInputBytes();
+	/**
+	 * The index of the first input byte in getInputBytes().
+	 * @return The index of the first input byte
+	 */
+	public int getInputOffset();
+	/**
+	 * The factor that each unsigned input byte is multiplied by to get the input of the network, e.g. 1/255 to map 0-255 to 0-1.
+	 * @return The scale of the input
+	 */
+	public double getInputScale();
+}
@@ -19,6 +19,46 @@ public interface Classifiable {
 	 * @return A double[], the expected output of a neural network if this object was given as input.
 	 */
 	public double[] generateExpectedOutput();
+	/**
+	 * Writes the neural network input form of this object into an existing array, so that no new array has to be made.
+	 * The default implementation copies the result of asNeuralNetworkInput(); override it to avoid the allocation.
+	 * @param dest - The array to write into
+	 * @param offset - The index in dest to start writing at
+	 */
+	public default void writeNeuralNetworkInput(double[] dest, int offset) {
+		double[] input = asNeuralNetworkInput();
+		System.arraycopy(input, 0, dest, offset, input.length);
+	}
+	/**
+	 * Writes the expected output of a neural network for this object into an existing array, so that no new array has to be made.
+	 * The default implementation copies the result of generateExpectedOutput(); override it to avoid the allocation.
+	 * @param dest - The array to write into
+	 * @param offset - The index in dest to start writing at
+	 */
+	public default void writeExpectedOutput(double[] dest, int offset) {
+		double[] output = generateExpectedOutput();
+		System.arraycopy(output, 0, dest, offset, output.length);
+	}
+	/**
+	 * Single-precision version of writeNeuralNetworkInput(), used by FloatClassificationNeuralNetwork.
+	 * @param dest - The array to write into
+	 * @param offset - The index in dest to start writing at
+	 */
+	public default void writeNeuralNetworkInput(float[] dest, int offset) {
+		double[] input = asNeuralNetworkInput();
+		for(int i = 0; i < input.length; i ++)
+			dest[offset + i] = (float) input[i];
+	}
+	/**
+	 * Single-precision version of writeExpectedOutput(), used by FloatClassificationNeuralNetwork.
+	 * @param dest - The array to write into
+	 * @param offset - The index in dest to start writing at
+	 */
+	public default void writeExpectedOutput(float[] dest, int offset) {
+		double[] output = generateExpectedOutput();
+		for(int i = 0; i < output.length; i ++)
+			dest[offset + i] = (float) output[i];
+	}
 	/**
 	 * Maps the output from a neural network to a "classification".
 	 * For example, an activation of [0.0, 0.0, 1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0] could represent a "2".
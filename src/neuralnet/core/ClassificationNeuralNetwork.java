@@ -3,18 +3,20 @@ package neuralnet.core;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.util.ArrayList;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
@@ -39,6 +41,27 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			return activation(z) * (1 - activation(z));
 		}
 		@Override
+		public void activation(double[] z, double[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = 1.0 / (1.0 + Math.exp(-z[i]));
+		}
+		@Override
+		public void multiplyByDerivative(double[] z, double[] a, double[] e, int from, int to) {
+			//sigmoid'(z) = sigmoid(z) * (1 - sigmoid(z))
+			for(int i = from; i < to; i ++)
+				e[i] *= a[i] * (1 - a[i]);
+		}
+		@Override
+		public void activation(float[] z, float[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = (float) (1.0 / (1.0 + Math.exp(-z[i])));
+		}
+		@Override
+		public void multiplyByDerivative(float[] z, float[] a, float[] e, int from, int to) {
+			for(int i = from; i < to; i ++)
+				e[i] *= a[i] * (1 - a[i]);
+		}
+		@Override
 		public byte getCode() {
 			return 0;
 		}
@@ -53,6 +76,27 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			return 1 - Math.pow(Math.tanh(z), 2);
 		}
 		@Override
+		public void activation(double[] z, double[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = Math.tanh(z[i]);
+		}
+		@Override
+		public void multiplyByDerivative(double[] z, double[] a, double[] e, int from, int to) {
+			//tanh'(z) = 1 - tanh(z)^2
+			for(int i = from; i < to; i ++)
+				e[i] *= 1 - a[i] * a[i];
+		}
+		@Override
+		public void activation(float[] z, float[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = (float) Math.tanh(z[i]);
+		}
+		@Override
+		public void multiplyByDerivative(float[] z, float[] a, float[] e, int from, int to) {
+			for(int i = from; i < to; i ++)
+				e[i] *= 1 - a[i] * a[i];
+		}
+		@Override
 		public byte getCode() {
 			return 1;
 		}
@@ -67,6 +111,27 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			return z >= 0 ? 1 : 0;
 		}
 		@Override
+		public void activation(double[] z, double[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = Math.max(0, z[i]);
+		}
+		@Override
+		public void multiplyByDerivative(double[] z, double[] a, double[] e, int from, int to) {
+			//The activation is 0 at both z = 0 and z < 0, so the derivative has to come from z
+			for(int i = from; i < to; i ++)
+				e[i] *= z[i] >= 0 ? 1 : 0;
+		}
+		@Override
+		public void activation(float[] z, float[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = Math.max(0, z[i]);
+		}
+		@Override
+		public void multiplyByDerivative(float[] z, float[] a, float[] e, int from, int to) {
+			for(int i = from; i < to; i ++)
+				e[i] *= z[i] >= 0 ? 1 : 0;
+		}
+		@Override
 		public byte getCode() {
 			return 2;
 		}
@@ -81,11 +146,77 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			return z >= 0 ? 1 : 0.01;
 		}
 		@Override
+		public void activation(double[] z, double[] a, int from, int to) {
+			//max(z, 0.01z) is z for positive z and 0.01z otherwise, without a branch
+			for(int i = from; i < to; i ++)
+				a[i] = Math.max(z[i], 0.01 * z[i]);
+		}
+		@Override
+		public void multiplyByDerivative(double[] z, double[] a, double[] e, int from, int to) {
+			for(int i = from; i < to; i ++)
+				e[i] *= z[i] >= 0 ? 1 : 0.01;
+		}
+		@Override
+		public void activation(float[] z, float[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = Math.max(z[i], 0.01f * z[i]);
+		}
+		@Override
+		public void multiplyByDerivative(float[] z, float[] a, float[] e, int from, int to) {
+			for(int i = from; i < to; i ++)
+				e[i] *= z[i] >= 0 ? 1 : 0.01f;
+		}
+		@Override
 		public byte getCode() {
 			return 3;
 		}
 		
 	}
+	//Approximate sigmoid and tanh, which replace Math.exp() and Math.tanh() with table lookups.
+	//They have the same codes as the exact functions, so networks trained with either can be loaded and used with either.
+	protected static class FastSigmoidActivation extends SigmoidActivation {
+		//Points 1/64 apart from -16 to 16; outside that range sigmoid is within 1.2e-7 of 0 or 1, and the exact function is used
+		protected static final InterpolationTable TABLE = new InterpolationTable(new SigmoidActivation(), -16, 16, 2048);
+		
+		@Override
+		public double activation(double z) {
+			return TABLE.contains(z) ? TABLE.get(z) : super.activation(z);
+		}
+		@Override
+		public void activation(double[] z, double[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = TABLE.contains(z[i]) ? TABLE.get(z[i]) : super.activation(z[i]);
+		}
+		@Override
+		public void activation(float[] z, float[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = (float) (TABLE.contains(z[i]) ? TABLE.get(z[i]) : super.activation(z[i]));
+		}
+	}
+	protected static class FastTanhActivation extends TanhActivation {
+		//Points 1/128 apart from -8 to 8; outside that range tanh is within 2.3e-7 of -1 or 1, and the exact function is used
+		protected static final InterpolationTable TABLE = new InterpolationTable(new TanhActivation(), -8, 8, 2048);
+		
+		@Override
+		public double activation(double z) {
+			return TABLE.contains(z) ? TABLE.get(z) : super.activation(z);
+		}
+		@Override
+		public double activationDerivative(double z) {
+			final double a = activation(z);
+			return 1 - a * a;
+		}
+		@Override
+		public void activation(double[] z, double[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = TABLE.contains(z[i]) ? TABLE.get(z[i]) : super.activation(z[i]);
+		}
+		@Override
+		public void activation(float[] z, float[] a, int from, int to) {
+			for(int i = from; i < to; i ++)
+				a[i] = (float) (TABLE.contains(z[i]) ? TABLE.get(z[i]) : super.activation(z[i]));
+		}
+	}
 	protected static class QuadraticCost implements CostFunction {
 		@Override
 		public double costDerivative(double y, double a) {
@@ -123,6 +254,19 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * Leaky rectified linear activation function.
 	 */
 	public static final ActivationFunction LEAKY_RECTIFIED_LINEAR_ACTIVATION = new LeakyRectifiedLinearActivation();
+	/**
+	 * Approximate sigmoid activation function, using linear interpolation in a table instead of Math.exp().
+	 * The maximum absolute error is 2.9e-6 (and that of the derivative 1.9e-6); main.ApproximateActivationReport measures
+	 * the effect on accuracy and speed. It has the same code as SIGMOID_ACTIVATION, so networks saved with it load with
+	 * SIGMOID_ACTIVATION, and this function has to be set again with setActivationFunction() after loading.
+	 */
+	public static final ActivationFunction FAST_SIGMOID_ACTIVATION = new FastSigmoidActivation();
+	/**
+	 * Approximate tanh activation function, using linear interpolation in a table instead of Math.tanh().
+	 * The maximum absolute error is 5.9e-6 (and that of the derivative 7.6e-6). It has the same code as TANH_ACTIVATION;
+	 * see FAST_SIGMOID_ACTIVATION.
+	 */
+	public static final ActivationFunction FAST_TANH_ACTIVATION = new FastTanhActivation();
 	/**
 	 * Simple quadratic cost function.
 	 */
@@ -133,6 +277,15 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	public static final CostFunction CROSSENTROPY_SIGMOID_COST = new CrossEntropySigmoidCost();
 	
 	public static final byte SAVE_FORMAT_VER = 0x01;
+	/**
+	 * The number of samples classifyBatch() and evaluate() feed forward together in each thread.
+	 */
+	public static final int CLASSIFY_BATCH_SIZE = 64;
+	/**
+	 * The default fraction of non-zero inputs below which the sparse first layer is used. See setSparseInputThreshold().
+	 * It depends on whether the vectorized kernels are in use, since they make the dense path faster.
+	 */
+	public static final double DEFAULT_SPARSE_INPUT_THRESHOLD = Kernels.INSTANCE.sparseInputThreshold();
 	protected static final ActivationFunction[] ACTIVATION_LIST = new ActivationFunction[] {
 			SIGMOID_ACTIVATION,
 			TANH_ACTIVATION,
@@ -155,13 +308,40 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	//bias of each neuron, from layer and number
 	//e.g. biases[1][1] is the bias of the 2nd neuron in the 1st hidden layer
 	protected double[][] biases;
-	//weight of each connection, from layer, number and number
-	//e.g. weights[1][1][2] is the weight of the connection between
+	//weight of each connection, stored as one contiguous row-major matrix per layer
+	//the weights of neuron j in layer i start at weights[i][j * neuronCounts[i - 1]]
+	//e.g. weights[1][1 * neuronCounts[0] + 2] is the weight of the connection between
 	//the 2nd neuron in the 1st hidden layer and the 3rd neuron in the layer before it
-	protected double[][][] weights;
+	protected double[][] weights;
 	//The activation and cost functions
 	protected ActivationFunction activationFunction;
 	protected CostFunction costFunction;
+	//The pool mini-batches are split across when training; if null, training is done on the calling thread
+	protected ForkJoinPool trainingPool;
+	//Whether the training pool was made by setTrainingParallelism(), and so is shut down by the network when replaced
+	protected boolean ownsTrainingPool;
+	//The pool classifyBatch() and evaluation are split across; if null, the training pool is used
+	protected ForkJoinPool evaluationPool;
+	//Whether the evaluation pool was made by setEvaluationParallelism()
+	protected boolean ownsEvaluationPool;
+	//Scratch memory for training, one for each thread, and the task tree that uses them
+	//These are reused between mini-batches and made again when the structure of the network changes
+	protected TrainingWorkspace[] workspaces;
+	protected GradientTask gradientTask;
+	//Scratch memory for classifyBatch() and evaluation, one for each thread that uses them, separate from training
+	protected final ThreadLocal<TrainingWorkspace> classifyWorkspaces = new ThreadLocal<TrainingWorkspace>();
+	//The compact sub-network for dropout training, reused between mini-batches
+	protected DropoutSubnetwork dropoutSubnetwork;
+	//The number of threads preparing mini-batches ahead of training, 0 if they are prepared by the training thread,
+	//and the pipeline that uses them, reused between epochs
+	protected int inputPrefetchThreads;
+	InputPipeline<T> inputPipeline;
+	//The fraction of non-zero inputs below which the first layer only visits the non-zero inputs
+	protected double sparseInputThreshold = DEFAULT_SPARSE_INPUT_THRESHOLD;
+	//The indices of the non-zero inputs found by classify(), one array for each thread so classify() stays thread-safe
+	protected final ThreadLocal<int[]> nonZeroInputs = new ThreadLocal<int[]>();
+	//The indices of the weights of each layer removed by prune(), which are kept at 0 in training; null if none are
+	protected int[][] prunedWeights;
 	
 	protected static int getMax(int[] arr) {
 		int max = 0;
@@ -172,19 +352,16 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		}
 		return max;
 	}
+	//The dot products are done by Kernels, so they are vectorized when possible
 	protected static double dotProduct(double[] a, double[] b) {
-		double result = 0;
-		for(int i = 0; i < a.length; i ++) {
-			result += a[i] * b[i];
-		}
-		return result;
+		return Kernels.INSTANCE.dot(a, 0, b, 0, a.length);
 	}
 	protected static double dotProduct(final double[] a, final double[] b, final int len) {
-		double result = 0;
-		for(int i = 0; i < len; i ++) {
-			result += a[i] * b[i];
-		}
-		return result;
+		return Kernels.INSTANCE.dot(a, 0, b, 0, len);
+	}
+	//Dot product of a[0..len) with b[bOffset..bOffset + len), used with a row of a flattened weights matrix
+	protected static double dotProduct(final double[] a, final double[] b, final int bOffset, final int len) {
+		return Kernels.INSTANCE.dot(a, 0, b, bOffset, len);
 	}
 	
 	//Creates a non-rectangular array
@@ -194,29 +371,33 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			arr[i] = new double[lengths[i]];
 		return arr;
 	}
-	//Used to create a jagged array of rectangular arrays
-	protected static double[][][] createJaggedArray3d(int[] widths, int[] heights) {
-		if(widths.length != heights.length)
-			throw new IllegalArgumentException("Dimension arrays provided are not of the same length");
-		double[][][] arr = new double[widths.length][][];
+	//Creates a non-rectangular float array
+	protected static float[][] createJaggedFloatArray(int[] lengths) {
+		float[][] arr = new float[lengths.length][];
 		for(int i = 0; i < arr.length; i ++)
-			arr[i] = new double[widths[i]][heights[i]];
+			arr[i] = new float[lengths[i]];
 		return arr;
 	}
+	//Creates a deep copy of a jagged array
+	protected static double[][] copyJaggedArray(double[][] arr) {
+		double[][] copy = new double[arr.length][];
+		for(int i = 0; i < arr.length; i ++)
+			copy[i] = arr[i].clone();
+		return copy;
+	}
 	
 	/**
-	 * Creates a 3-dimensional array in the shape of the weights matrix.
+	 * Creates a 2-dimensional array in the shape of the weights matrix, with one flat row-major array per layer.
 	 * This comes in useful not just for storing weights, but also other related things,
 	 * such as the gradient for the weights.
-	 * @return A 3-dimensional array in the shape of the weights matrix.
+	 * @return A 2-dimensional array in the shape of the weights matrix.
 	 */
-	protected double[][][] createWeightsArray() {
-		int[] sizes2 = new int[layers];
-		for(int i = 0; i < layers - 1; i ++)
-			sizes2[i + 1] = neuronCounts[i];
+	protected double[][] createWeightsArray() {
+		int[] sizes = new int[layers];
 		//First layer contains no weights, so each neuron is connected to 0 others
-		sizes2[0] = 0;
-		return createJaggedArray3d(neuronCounts, sizes2);
+		for(int i = 1; i < layers; i ++)
+			sizes[i] = neuronCounts[i] * neuronCounts[i - 1];
+		return createJaggedArray(sizes);
 	}
 	/**
 	 * Creates a 2-dimensional boolean array used to store if a neuron is dropped out.
@@ -260,13 +441,12 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		this.weights = createWeightsArray();
 		//No need to initialize the first layer's weights and biases
 		for(int i = 1; i < layers; i ++) {
-			for(int j = 0; j < neuronCounts[i]; j ++) {
+			for(int j = 0; j < neuronCounts[i]; j ++)
 				biases[i][j] = r.nextGaussian();
-				for(int k = 0; k < neuronCounts[i - 1]; k ++)
-					//Initialize each weight to a gaussian with mean 0 and standard deviation 1/sqrt(Nin)
-					//Where Nin the number of weights the neuron has
-					weights[i][j][k] = r.nextGaussian() / Math.sqrt(neuronCounts[i - 1]);
-			}
+			for(int k = 0; k < weights[i].length; k ++)
+				//Initialize each weight to a gaussian with mean 0 and standard deviation 1/sqrt(Nin)
+				//Where Nin the number of weights the neuron has
+				weights[i][k] = r.nextGaussian() / Math.sqrt(neuronCounts[i - 1]);
 		}
 	}
 	/**
@@ -275,72 +455,52 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * This code is saved with the file and used to find the correct function when loading the network.
 	 * However, in the case with custom activation and cost functions returning codes that cannot be matched,
 	 * the activation and cost functions of the network will be set to <em>null</em>, and thus <b>must</b> be
-	 * set later <b>manually</b> with setActivationFunction() and/or setCostFunction().
+	 * set later <b>manually</b> with setActivationFunction() and/or setCostFunction().<br>
+	 * Single-precision files (version 0x02) saved by FloatClassificationNeuralNetwork can also be loaded, and so can
+	 * memory-mapped files (version 0x03) saved by saveMappedData(), which load much faster since their parameters are
+	 * copied in blocks instead of being parsed one at a time.
 	 * @param f - The file to load from
 	 * @throws IOException If reading the file was not successful
 	 * @throws NeuralNetworkException If the format of the file is not supported
 	 */
 	public ClassificationNeuralNetwork(File f) throws IOException, NeuralNetworkException {
-		DataInputStream in = new DataInputStream(new FileInputStream(f));
-		byte version = in.readByte();
-		switch(version) {
-		case 0x01:
-		{
-			ArrayList<Integer> countsList = new ArrayList<Integer>();
-			int count;
-			while((count = in.readInt()) != 0) {
-				countsList.add(count);
-			}
-			this.neuronCounts = new int[countsList.size()];
-			for(int i = 0; i < neuronCounts.length; i ++)
-				neuronCounts[i] = countsList.get(i);
-			this.neuronMax = getMax(neuronCounts);
-			this.layers = neuronCounts.length;
-			byte activationType = in.readByte();
-			byte costType = in.readByte();
-			
-			boolean found = false;
-			for(int i = 0; i < ACTIVATION_LIST.length; i ++) {
-				if(ACTIVATION_LIST[i].getCode() == activationType) {
-					this.activationFunction = ACTIVATION_LIST[i];
-					found = true;
-					break;
-				}
-			}
-			if(!found) {
-				this.activationFunction = null;
-			}
-			found = false;
-			for(int i = 0; i < COST_LIST.length; i ++) {
-				if(COST_LIST[i].getCode() == costType) {
-					this.costFunction = COST_LIST[i];
-					found = true;
-					break;
-				}
-			}
-			if(!found) {
-				this.costFunction = null;
-			}
-			
-			weights = createWeightsArray();
-			biases = createBiasesArray();
-			for(int i = 1; i < layers; i ++) {
-				for(int j = 0; j < neuronCounts[i]; j ++) {
-					for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-						weights[i][j][k] = in.readDouble();
-					}
-				}
-			}
-			for(int i = 1; i < layers; i ++) {
-				for(int j = 0; j < neuronCounts[i]; j ++) {
-					biases[i][j] = in.readDouble();
-				}
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer version = ByteBuffer.allocate(1);
+			if(channel.read(version) != 1)
+				throw new EOFException();
+			switch(version.get(0)) {
+			case 0x01:
+			case FloatClassificationNeuralNetwork.SAVE_FORMAT_VER:
+				SequentialNetworkFormat.read(channel, this, version.get(0));
+				break;
+			case MappedNetworkFormat.VERSION:
+				MappedNetworkFormat.read(channel, this);
+				break;
+			default: throw new NeuralNetworkException("Unsupported format");
 			}
 		}
-			break;
-		default: in.close(); throw new NeuralNetworkException("Unsupported format");
-		}
-		in.close();
+	}
+	/**
+	 * Finds the pre-defined activation function with a code.
+	 * @param code - The code of the activation function
+	 * @return The activation function, or null if none of the pre-defined ones has that code
+	 */
+	protected static ActivationFunction findActivationFunction(byte code) {
+		for(int i = 0; i < ACTIVATION_LIST.length; i ++)
+			if(ACTIVATION_LIST[i].getCode() == code)
+				return ACTIVATION_LIST[i];
+		return null;
+	}
+	/**
+	 * Finds the pre-defined cost function with a code.
+	 * @param code - The code of the cost function
+	 * @return The cost function, or null if none of the pre-defined ones has that code
+	 */
+	protected static CostFunction findCostFunction(byte code) {
+		for(int i = 0; i < COST_LIST.length; i ++)
+			if(COST_LIST[i].getCode() == code)
+				return COST_LIST[i];
+		return null;
 	}
 	/**
 	 * Constructs a neural network by copying an existing one.
@@ -378,8 +538,9 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		this.activationFunction = otherNet.activationFunction;
 		this.costFunction = otherNet.costFunction;
 		
-		this.weights = otherNet.weights.clone();
-		this.biases = otherNet.biases.clone();
+		this.weights = copyJaggedArray(otherNet.weights);
+		this.biases = copyJaggedArray(otherNet.biases);
+		this.prunedWeights = null;
 	}
 	/**
 	 * Sets the activation function of this neural network.
@@ -395,6 +556,176 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	public void setCostFunction(CostFunction c) {
 		this.costFunction = c;
 	}
+	/**
+	 * Gets the activation function of this neural network.
+	 * @return The activation function, or null if it was not recognized when loading
+	 */
+	public ActivationFunction getActivationFunction() {
+		return activationFunction;
+	}
+	/**
+	 * Gets the cost function of this neural network.
+	 * @return The cost function, or null if it was not recognized when loading
+	 */
+	public CostFunction getCostFunction() {
+		return costFunction;
+	}
+	/**
+	 * Gets the structure of this neural network.
+	 * @return A copy of the number of neurons in each layer
+	 */
+	public int[] getNeuronCounts() {
+		return neuronCounts.clone();
+	}
+	
+	/**
+	 * Sets the pool used for data-parallel training.<br>
+	 * When set, each mini-batch is split across the threads of the pool. Every thread sums the gradients of its
+	 * part of the mini-batch separately, and the sums are added together before the weights and biases are updated.
+	 * The result is the same as training on a single thread, up to floating-point rounding.
+	 * The pool still belongs to the caller; the network never shuts it down.
+	 * @param pool - The pool to train with, or null to train on the calling thread
+	 */
+	public void setTrainingPool(ForkJoinPool pool) {
+		if(ownsTrainingPool && trainingPool != pool)
+			trainingPool.shutdown();
+		this.trainingPool = pool;
+		ownsTrainingPool = false;
+	}
+	/**
+	 * Sets the number of threads used for data-parallel training. For details, see setTrainingPool().
+	 * @param threads - The number of threads. A value of 1 or less means training is done on the calling thread.
+	 */
+	public void setTrainingParallelism(int threads) {
+		//Pools set with setTrainingPool() belong to the caller, and may still be used elsewhere
+		if(ownsTrainingPool)
+			trainingPool.shutdown();
+		trainingPool = threads > 1 ? new ForkJoinPool(threads) : null;
+		ownsTrainingPool = trainingPool != null;
+	}
+	/**
+	 * Sets the pool used by classifyBatch(), evaluate() and evaluateDetailed().<br>
+	 * When set, the data is split into one part for each thread of the pool, and each thread feeds its part forward
+	 * with its own workspace. If no evaluation pool is set, the training pool is used, if there is one.
+	 * The pool still belongs to the caller; the network never shuts it down.
+	 * @param pool - The pool to classify with, or null to use the training pool
+	 */
+	public void setEvaluationPool(ForkJoinPool pool) {
+		if(ownsEvaluationPool && evaluationPool != pool)
+			evaluationPool.shutdown();
+		this.evaluationPool = pool;
+		ownsEvaluationPool = false;
+	}
+	/**
+	 * Sets the number of threads used by classifyBatch(), evaluate() and evaluateDetailed(). For details, see setEvaluationPool().
+	 * @param threads - The number of threads. A value of 1 or less removes the evaluation pool, so the training pool is used if there is one.
+	 */
+	public void setEvaluationParallelism(int threads) {
+		//Pools set with setEvaluationPool() belong to the caller
+		if(ownsEvaluationPool)
+			evaluationPool.shutdown();
+		evaluationPool = threads > 1 ? new ForkJoinPool(threads) : null;
+		ownsEvaluationPool = evaluationPool != null;
+	}
+	
+	/**
+	 * Sets the input density below which the first layer uses the sparse path.<br>
+	 * The inputs of each mini-batch (or of each object classified) are scanned for non-zero values first. If the fraction of
+	 * non-zero inputs is below the threshold, the first layer's weighted sums and weight gradients are computed from the
+	 * non-zero inputs only, skipping the rest; e.g. about 80% of the pixels of an MNIST digit are 0. Otherwise every input
+	 * is used as usual. Both paths give the same results, up to floating-point rounding.
+	 * @param threshold - The threshold, from 0 to 1. 0 disables the sparse path; 1 uses it for everything but completely dense inputs.
+	 */
+	public void setSparseInputThreshold(double threshold) {
+		this.sparseInputThreshold = threshold;
+	}
+	/**
+	 * Sets the number of threads that prepare mini-batches in the background during training.<br>
+	 * When set, the inputs and expected outputs of the next few mini-batches are gathered from the training data and stacked
+	 * into matrices by these threads while the current mini-batch is trained on, so the training threads only do the
+	 * forward and backward passes. This helps most when getting the inputs is slow, e.g. when the samples are not
+	 * ByteClassifiables or are read from memory-mapped files. It applies to every training method that takes an array
+	 * of training data or a TrainingDataSource, except hogwildSGD(). The results are exactly the same either way.
+	 * @param threads - The number of threads. 0 prepares each mini-batch on the training thread when it is needed.
+	 */
+	public void setInputPrefetching(int threads) {
+		this.inputPrefetchThreads = Math.max(threads, 0);
+	}
+	
+	/**
+	 * Prunes every layer to the same sparsity. See prune(double[]).
+	 * @param sparsity - The fraction of the weights of each layer to remove, from 0 to 1
+	 */
+	public void prune(double sparsity) {
+		double[] sparsities = new double[layers];
+		Arrays.fill(sparsities, sparsity);
+		prune(sparsities);
+	}
+	/**
+	 * Removes the weights with the smallest magnitudes from each layer by setting them to 0 ("magnitude pruning").<br>
+	 * The removed weights are remembered, and kept at 0 by every training method afterwards, so the network can be
+	 * fine-tuned with SGD to recover the accuracy lost. Pruning again replaces the remembered weights, counting the weights
+	 * that are already 0 as the smallest. The remembered weights are not saved to files or copied to other networks;
+	 * call clearPruning() to forget them and let training change them again.<br>
+	 * A pruned network can be compiled into a PrunedModel, which stores only the remaining weights.
+	 * @param sparsities - The fraction of the weights to remove from each layer, from 0 to 1. Element 0 (the input layer) is ignored.
+	 */
+	public void prune(double[] sparsities) {
+		prunedWeights = new int[layers][];
+		for(int i = 1; i < layers; i ++) {
+			final double[] w = weights[i];
+			final int remove = (int) Math.round(Math.min(Math.max(sparsities[i], 0), 1) * w.length);
+			prunedWeights[i] = new int[remove];
+			if(remove == 0)
+				continue;
+			//Every weight with a magnitude below the threshold is removed, and as many of those equal to it as needed
+			double[] magnitudes = new double[w.length];
+			for(int k = 0; k < w.length; k ++)
+				magnitudes[k] = Math.abs(w[k]);
+			Arrays.sort(magnitudes);
+			final double threshold = magnitudes[remove - 1];
+			int below = 0;
+			while(magnitudes[below] < threshold)
+				below ++;
+			int removed = 0, ties = remove - below;
+			for(int k = 0; k < w.length; k ++) {
+				final double m = Math.abs(w[k]);
+				if(m < threshold || (m == threshold && ties -- > 0)) {
+					w[k] = 0;
+					prunedWeights[i][removed ++] = k;
+				}
+			}
+		}
+	}
+	/**
+	 * Forgets the weights removed by prune(), so that training can change them again. Their values are not changed.
+	 */
+	public void clearPruning() {
+		prunedWeights = null;
+	}
+	/**
+	 * Sets the weights removed by prune() and their velocities back to 0 after an update.
+	 * @param velocity - The velocity of each weight, or null if momentum is not applied
+	 */
+	protected void applyPruning(double[][] velocity) {
+		if(prunedWeights == null)
+			return;
+		for(int i = 1; i < layers; i ++) {
+			for(int k : prunedWeights[i]) {
+				weights[i][k] = 0;
+				if(velocity != null)
+					velocity[i][k] = 0;
+			}
+		}
+	}
+	/**
+	 * Makes a frozen, thread-safe copy of this network that stores only its non-zero weights. See PrunedModel.
+	 * @return The model
+	 * @throws NeuralNetworkException If this network has no activation function
+	 */
+	public PrunedModel<T> compilePruned() throws NeuralNetworkException {
+		return new PrunedModel<T>(this);
+	}
 	
 	/**
 	 * Feedforwards the network with a specified input and returns the "classification" of that input.
@@ -404,33 +735,215 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 */
 	public Object classify(T obj) {
 		double[] lastActivations = new double[neuronMax];
-		double[] input = obj.asNeuralNetworkInput();
-		for(int i = 0; i < input.length; i ++) {
-			lastActivations[i] = input[i];
-		}
 		double[] activations = new double[neuronMax];
+		if(obj instanceof ByteClassifiable) {
+			//Read the input bytes directly instead of having a new array made
+			ByteClassifiable byteObj = (ByteClassifiable) obj;
+			final byte[] input = byteObj.getInputBytes();
+			final int offset = byteObj.getInputOffset();
+			final double scale = byteObj.getInputScale();
+			for(int i = 0; i < neuronCounts[0]; i ++) {
+				lastActivations[i] = (input[offset + i] & 0xFF) * scale;
+			}
+		}
+		else {
+			double[] input = obj.asNeuralNetworkInput();
+			for(int i = 0; i < input.length; i ++) {
+				lastActivations[i] = input[i];
+			}
+		}
+		int first = 1;
+		if(sparseInputThreshold > 0 && layers > 1) {
+			//Find the non-zero inputs; if there are few enough, compute the first layer from them only
+			int[] nonZero = nonZeroInputs.get();
+			if(nonZero == null || nonZero.length < neuronCounts[0]) {
+				nonZero = new int[neuronCounts[0]];
+				nonZeroInputs.set(nonZero);
+			}
+			int count = 0;
+			for(int k = 0; k < neuronCounts[0]; k ++)
+				if(lastActivations[k] != 0)
+					nonZero[count ++] = k;
+			if(count < sparseInputThreshold * neuronCounts[0]) {
+				for(int j = 0; j < neuronCounts[1]; j ++) {
+					final int row = j * neuronCounts[0];
+					double sum = 0;
+					for(int q = 0; q < count; q ++)
+						sum += lastActivations[nonZero[q]] * weights[1][row + nonZero[q]];
+					activations[j] = sum + biases[1][j];
+				}
+				activationFunction.activation(activations, activations, 0, neuronCounts[1]);
+				//Swap the buffers instead of copying
+				double[] tmp = lastActivations;
+				lastActivations = activations;
+				activations = tmp;
+				first = 2;
+			}
+		}
 		
-		for(int i = 1; i < layers; i ++) {
+		for(int i = first; i < layers; i ++) {
 			for(int j = 0; j < neuronCounts[i]; j ++) {
-				activations[j] = activationFunction.activation(
-						dotProduct(lastActivations, weights[i][j], neuronCounts[i - 1])
-						+ biases[i][j]);
+				activations[j] = dotProduct(lastActivations, weights[i], j * neuronCounts[i - 1], neuronCounts[i - 1])
+						+ biases[i][j];
 			}
-			lastActivations = activations.clone();
+			activationFunction.activation(activations, activations, 0, neuronCounts[i]);
+			double[] tmp = lastActivations;
+			lastActivations = activations;
+			activations = tmp;
 		}
 		return obj.toClassification(lastActivations);
 	}
 	/**
-	 * Classifies each element of the input array with classify() and returns the number of items correctly classified.
+	 * Makes a frozen, thread-safe copy of this network for classification. See InferenceModel.
+	 * @return The model
+	 * @throws NeuralNetworkException If this network has no activation function
+	 */
+	public InferenceModel<T> compile() throws NeuralNetworkException {
+		return new InferenceModel<T>(this);
+	}
+	/**
+	 * Classifies every element of an array. The inputs are fed forward CLASSIFY_BATCH_SIZE at a time as matrix products,
+	 * split across the evaluation pool if there is one (see setEvaluationPool()). The results are the same as classify(),
+	 * up to floating-point rounding.<br>
+	 * Each thread that does the work keeps its own scratch memory, so this can be called by several threads at once,
+	 * but not while the network is being trained. The output passed to toClassification() is a reused buffer,
+	 * so toClassification() must not keep it.
+	 * @param data - The objects to classify
+	 * @return The classification of each object, or null for null elements
+	 */
+	public Object[] classifyBatch(T[] data) {
+		Object[] results = new Object[data.length];
+		classifyBatch(data, 0, data.length, results);
+		return results;
+	}
+	/**
+	 * Classifies part of an array. See classifyBatch(T[]).
+	 * @param data - The objects to classify
+	 * @param from - The index of the first object, inclusive
+	 * @param to - The index of the last object, exclusive
+	 * @param results - The array to store the classification of data[i] in, at index i
+	 */
+	public void classifyBatch(T[] data, int from, int to, Object[] results) {
+		classifyAll(data, from, to, results);
+	}
+	/**
+	 * Classifies each element of the input array and returns the number of items correctly classified.
+	 * The elements are classified as in classifyBatch(), so this can be called by several threads at once. See evaluateDetailed().
 	 * @param data - An array containing objects to be classified
 	 * @return The number of objects correctly classified
 	 */
 	public int evaluate(T[] data) {
-		int total = 0;
-		for(T obj : data)
-			if(this.classify(obj).equals(obj.getClassification()))
-				total ++;
-		return total;
+		return evaluateDetailed(data).getCorrect();
+	}
+	/**
+	 * Classifies each element of the input array and returns the number of items correctly classified,
+	 * together with a confusion matrix, in one pass. The elements are classified as in classifyBatch(),
+	 * so they are split across the evaluation pool, if there is one. Null elements are skipped.
+	 * @param data - An array containing objects to be classified
+	 * @return The evaluation
+	 */
+	public Evaluation evaluateDetailed(T[] data) {
+		return classifyAll(data, 0, data.length, null);
+	}
+	/**
+	 * Classifies data[from] to data[to - 1], splitting them across the evaluation pool if there is one,
+	 * and evaluates the results.
+	 * @param data - The objects to classify
+	 * @param from - The index of the first object, inclusive
+	 * @param to - The index of the last object, exclusive
+	 * @param results - The array to store the classifications in, or null if they are not needed
+	 * @return The evaluation of the classifications
+	 */
+	protected Evaluation classifyAll(final T[] data, int from, int to, final Object[] results) {
+		final int outputs = neuronCounts[layers - 1];
+		final ForkJoinPool pool = evaluationPool != null ? evaluationPool : trainingPool;
+		final int workers = pool == null ? 1 : Math.min(pool.getParallelism(), (to - from + CLASSIFY_BATCH_SIZE - 1) / CLASSIFY_BATCH_SIZE);
+		if(workers <= 1) {
+			Evaluation evaluation = new Evaluation(outputs);
+			classifyRange(data, from, to, getClassifyWorkspace(), results, evaluation);
+			return evaluation;
+		}
+		//Give each worker an equal part of the data and its own evaluation, and add up the evaluations at the end
+		//Each worker uses the workspace of the thread it runs on
+		final Evaluation[] parts = new Evaluation[workers];
+		RecursiveAction[] tasks = new RecursiveAction[workers];
+		for(int w = 0; w < workers; w ++) {
+			final int worker = w;
+			final int start = from + (int) ((long) (to - from) * w / workers);
+			final int end = from + (int) ((long) (to - from) * (w + 1) / workers);
+			parts[w] = new Evaluation(outputs);
+			tasks[w] = new RecursiveAction() {
+				private static final long serialVersionUID = -3914471523390786221L;
+				
+				@Override
+				protected void compute() {
+					classifyRange(data, start, end, getClassifyWorkspace(), results, parts[worker]);
+				}
+			};
+			pool.execute(tasks[w]);
+		}
+		for(int w = 0; w < workers; w ++) {
+			tasks[w].join();
+			if(w != 0)
+				parts[0].add(parts[w]);
+		}
+		return parts[0];
+	}
+	/**
+	 * Gets the calling thread's workspace for classifyBatch() and evaluation, making a new one if it does not fit
+	 * the current structure of the network. These only hold what is needed to feed forward and are never used for training.
+	 * @return The workspace
+	 */
+	protected TrainingWorkspace getClassifyWorkspace() {
+		TrainingWorkspace ws = classifyWorkspaces.get();
+		if(ws == null || !ws.fits(neuronCounts, CLASSIFY_BATCH_SIZE)) {
+			ws = new TrainingWorkspace(neuronCounts, CLASSIFY_BATCH_SIZE, false);
+			classifyWorkspaces.set(ws);
+		}
+		return ws;
+	}
+	/**
+	 * Classifies data[from] to data[to - 1] on the calling thread, a workspace-full at a time.
+	 * @param data - The objects to classify
+	 * @param from - The index of the first object, inclusive
+	 * @param to - The index of the last object, exclusive
+	 * @param ws - The workspace to use
+	 * @param results - The array to store the classifications in, or null if they are not needed
+	 * @param evaluation - The evaluation to add the results to
+	 */
+	protected void classifyRange(T[] data, int from, int to, TrainingWorkspace ws, Object[] results, Evaluation evaluation) {
+		final int outputs = neuronCounts[layers - 1];
+		final InputBatch input = ws.input;
+		final double[] y = input.y;
+		final double[] row = ws.output;
+		int n = from;
+		while(n < to) {
+			n = stackInputs(data, null, n, to, input, neuronCounts[0], outputs);
+			if(input.rows == 0)
+				break;
+			feedforward(ws, neuronCounts, weights, biases);
+			final double[] output = ws.a[layers - 1];
+			for(int r = 0; r < input.rows; r ++) {
+				final int offset = r * outputs;
+				final T obj = data[input.samples[r]];
+				System.arraycopy(output, offset, row, 0, outputs);
+				final Object classification = obj.toClassification(row);
+				if(results != null)
+					results[input.samples[r]] = classification;
+				if(classification.equals(obj.getClassification()))
+					evaluation.correct ++;
+				evaluation.total ++;
+				//The neurons with the highest expected and actual outputs
+				int expected = 0, actual = 0;
+				for(int j = 1; j < outputs; j ++) {
+					if(y[offset + j] > y[offset + expected])
+						expected = j;
+					if(output[offset + j] > output[offset + actual])
+						actual = j;
+				}
+				evaluation.confusionMatrix[expected][actual] ++;
+			}
+		}
 	}
 	
 	/**
@@ -463,9 +976,9 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
 			System.out.println(percentage + "% correctly classified.");
 		}
+		Permutation order = new Permutation(trainingData.length);
 		for(int epoch = 1; epoch <= epochs; epoch ++) {
-			List<T> l = Arrays.asList(trainingData);
-			Collections.shuffle(l);
+			order.shuffle();
 			
 			if(evalData != null) {
 				System.out.println("Epoch #" + epoch);
@@ -473,13 +986,7 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			}
 			
 			//Separate the shuffled training samples into mini-batches and train with each mini-batch
-			for(int i = 0; i < trainingData.length; i += batchSize) {
-				List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-				@SuppressWarnings("unchecked")
-				T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-				miniBatchList.toArray(miniBatch);
-				learnFromMiniBatch(miniBatch, learningRate, regularizationConstant, trainingData.length);
-			}
+			learnEpoch(trainingData, order.indices, batchSize, learningRate, regularizationConstant, trainingData.length, null, 0);
 			
 			if(evalData != null) {
 				System.out.println("Evaluating...");
@@ -517,9 +1024,9 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
 			System.out.println(percentage + "% correctly classified.");
 		}
+		Permutation order = new Permutation(trainingData.length);
 		for(int epoch = 1; epoch <= epochs; epoch ++) {
-			List<T> l = Arrays.asList(trainingData);
-			Collections.shuffle(l);
+			order.shuffle();
 			
 			if(evalData != null) {
 				System.out.println("Epoch #" + epoch);
@@ -527,13 +1034,7 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			}
 			
 			//Separate the shuffled training samples into mini-batches and train with each mini-batch
-			for(int i = 0; i < trainingData.length; i += batchSize) {
-				List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-				@SuppressWarnings("unchecked")
-				T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-				miniBatchList.toArray(miniBatch);
-				learnFromMiniBatch(miniBatch, learningRate, regularizationConstant, trainingData.length);
-			}
+			learnEpoch(trainingData, order.indices, batchSize, learningRate, regularizationConstant, trainingData.length, null, 0);
 			
 			if(evalData != null) {
 				System.out.println("Evaluating...");
@@ -590,7 +1091,7 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * @param evalData - The data to evaluate the network's performance with
 	 */
 	public void SGD(T[] trainingData, int batchSize, double learningRate, double regularizationConstant, double momentumCoefficient, int epochs, T[] evalData) {
-		double[][][] velocity = createWeightsArray();
+		double[][] velocity = createWeightsArray();
 		double maxPercentage = 0.0;
 		int maxEpoch = -1;
 		double[] percentages = null;
@@ -600,9 +1101,9 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
 			System.out.println(percentage + "% correctly classified.");
 		}
+		Permutation order = new Permutation(trainingData.length);
 		for(int epoch = 1; epoch <= epochs; epoch ++) {
-			List<T> l = Arrays.asList(trainingData);
-			Collections.shuffle(l);
+			order.shuffle();
 			
 			if(evalData != null) {
 				System.out.println("Epoch #" + epoch);
@@ -610,13 +1111,7 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			}
 			
 			//Separate the shuffled training samples into mini-batches and train with each mini-batch
-			for(int i = 0; i < trainingData.length; i += batchSize) {
-				List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-				@SuppressWarnings("unchecked")
-				T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-				miniBatchList.toArray(miniBatch);
-				learnFromMiniBatch(miniBatch, learningRate, regularizationConstant, trainingData.length, velocity, momentumCoefficient);
-			}
+			learnEpoch(trainingData, order.indices, batchSize, learningRate, regularizationConstant, trainingData.length, velocity, momentumCoefficient);
 			
 			if(evalData != null) {
 				System.out.println("Evaluating...");
@@ -633,67 +1128,53 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 			System.out.printf("Max classification rate: %f%%, reached at Epoch #%d", maxPercentage, maxEpoch);
 	}
 	/**
-	 * Performs stochastic gradient descent with momentum and dropout.<br>
-	 * Same as calling dropoutSGD(trainingData, batchSize, learningRate, dropoutRate, momentumCoefficient, epochs, null)
-	 * @param trainingData - The training data
+	 * Performs stochastic gradient descent with L2 regularization and momentum on data streamed from a TrainingDataSource.<br>
+	 * Equivalent to calling SGD(source, batchSize, learningRate, regularizationConstant, momentumCoefficient, epochs, null)
+	 * @param source - The source of the training data
 	 * @param batchSize - The size of each mini-batch
 	 * @param learningRate - The learning rate (eta)
-	 * @param dropoutRate - A real number between 0 and 1, the probability that a neuron will be dropped out
-	 * @param momentumCoefficient - The momentum coefficient (mu); a value of 0 indicates no momentum
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param momentumCoefficient - The momentum coefficient (mu). If 0, momentum is not applied.
 	 * @param epochs - The number of epochs to train for
+	 * @throws IOException If the source could not read the data
 	 */
-	public void dropoutSGD(T[] trainingData, int batchSize, double learningRate, double dropoutRate, double momentumCoefficient, int epochs) {
-		dropoutSGD(trainingData, batchSize, learningRate, dropoutRate, momentumCoefficient, epochs, null);
+	public void SGD(TrainingDataSource<T> source, int batchSize, double learningRate, double regularizationConstant, double momentumCoefficient, int epochs) throws IOException {
+		SGD(source, batchSize, learningRate, regularizationConstant, momentumCoefficient, epochs, null);
 	}
 	/**
-	 * Performs stochastic gradient descent with momentum and dropout.
-	 * The performance of the network is also evaluated and printed to stdout after each epoch if evalData is not null. <br>
-	 * <br>
-	 * Since neurons trained with dropout are accustomed to having only a part of the hidden neurons as input,
-	 * the activations of hidden neurons or their outgoing weights need to be scaled down so the network can 
-	 * properly function. However this is done automatically at the end of the training procedure, so a network
-	 * trained this way can still use the normal methods.
-	 * @param trainingData - The training data
+	 * Performs stochastic gradient descent with L2 regularization and momentum on data streamed from a TrainingDataSource,
+	 * so that the training data does not have to fit in memory.<br>
+	 * Each epoch, the chunks given by the source are each shuffled and split into mini-batches, the same way as the whole
+	 * array is in SGD(T[], ...). A mini-batch never spans two chunks, so chunk sizes should be multiples of the batch size.
+	 * The performance after each epoch is evaluated and printed to stdout if evalData is not null.
+	 * @param source - The source of the training data
 	 * @param batchSize - The size of each mini-batch
 	 * @param learningRate - The learning rate (eta)
-	 * @param dropoutRate - A real number from 0 to 1, the probability that a neuron will be dropped out
-	 * @param momentumCoefficient - The momentum coefficient (mu); a value of 0 indicates no momentum
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param momentumCoefficient - The momentum coefficient (mu). If 0, momentum is not applied.
 	 * @param epochs - The number of epochs to train for
-	 * @param evalData - The data to evaluate the network's performance with. Can be null.
+	 * @param evalData - The data to evaluate the network's performance with
+	 * @throws IOException If the source could not read the data
 	 */
-	public void dropoutSGD(T[] trainingData, int batchSize, double learningRate, double dropoutRate, double momentumCoefficient, int epochs, T[] evalData) {
-		//First scale the weights back up since we're only going to have partial neurons
-		scaleDropoutWeights(dropoutRate);
-		
-		double[][][] velocity = createWeightsArray();
+	public void SGD(TrainingDataSource<T> source, int batchSize, double learningRate, double regularizationConstant, double momentumCoefficient, int epochs, T[] evalData) throws IOException {
+		double[][] velocity = momentumCoefficient != 0 ? createWeightsArray() : null;
 		double maxPercentage = 0.0;
 		int maxEpoch = -1;
-		double[] percentages = new double[epochs];
-		
+		if(evalData != null) {
+			System.out.println("No Training:\nEvaluating...");
+			double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
+			System.out.println(percentage + "% correctly classified.");
+		}
+		Permutation order = null;
 		for(int epoch = 1; epoch <= epochs; epoch ++) {
-			List<T> l = Arrays.asList(trainingData);
-			Collections.shuffle(l);
-			
 			if(evalData != null) {
 				System.out.println("Epoch #" + epoch);
 				System.out.println("Learning...");
 			}
 			
-			//Separate the shuffled training samples into mini-batches and train with each mini-batch
-			for(int i = 0; i < trainingData.length; i += batchSize) {
-				List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-				@SuppressWarnings("unchecked")
-				T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-				miniBatchList.toArray(miniBatch);
-				if(momentumCoefficient != 0)
-					learnFromMiniBatchDropout(miniBatch, learningRate, velocity, momentumCoefficient, dropoutRate);
-				else
-					learnFromMiniBatchDropout(miniBatch, learningRate, null, momentumCoefficient, dropoutRate);
-			}
+			order = learnEpoch(source, order, batchSize, learningRate, regularizationConstant, velocity, momentumCoefficient);
 			
 			if(evalData != null) {
-				//Reduce each weight before testing
-				reduceDropoutWeights(dropoutRate);
 				System.out.println("Evaluating...");
 				double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
 				System.out.println(percentage + "% correctly classified.");
@@ -701,55 +1182,219 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 					maxPercentage = percentage;
 					maxEpoch = epoch;
 				}
-				percentages[epoch - 1] = percentage;
-				//Scale the weights back up
-				scaleDropoutWeights(dropoutRate);
 			}
 		}
 		if(evalData != null)
 			System.out.printf("Max classification rate: %f%%, reached at Epoch #%d", maxPercentage, maxEpoch);
-		//Reduce the weights so we have a normal neural network
-		reduceDropoutWeights(dropoutRate);
 	}
 	/**
-	 * Performs stochastic gradient descent with L2 regularization and saves the best network.<br>
-	 * After each training epoch, the data of the network is stored as a temporary file that is deleted when the VM exits.
-	 * When the training is finished, the network will load and make permanent the temporary file that stores the network with the best
-	 * performance compared to all other epochs, even if it might not be the network from the last epoch.
+	 * Trains for one epoch on the data of a TrainingDataSource, shuffling each chunk and splitting it into mini-batches.
+	 * @param source - The source of the training data
+	 * @param order - The permutation used for the last chunk, or null
+	 * @param batchSize - The size of each mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param velocity - The velocity of each weight, or null if momentum is not applied
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 * @return The permutation used for the last chunk, to be passed to the next call
+	 * @throws IOException If the source could not read the data
+	 */
+	protected Permutation learnEpoch(TrainingDataSource<T> source, Permutation order, int batchSize, double learningRate, double regularizationConstant, double[][] velocity, double momentumCoefficient) throws IOException {
+		final int dataSize = source.size();
+		source.startEpoch();
+		T[] chunk;
+		while((chunk = source.nextChunk()) != null) {
+			//The chunks are usually all the same size, so the permutation only has to be made again for the last one
+			if(order == null || order.size() != chunk.length)
+				order = new Permutation(chunk.length);
+			order.shuffle();
+			learnEpoch(chunk, order.indices, batchSize, learningRate, regularizationConstant, dataSize, velocity, momentumCoefficient);
+		}
+		return order;
+	}
+	/**
+	 * Performs asynchronous, lock-free stochastic gradient descent with L2 regularization ("Hogwild!").<br>
+	 * Each epoch, the training data is shuffled and a number of threads take mini-batches from it in turn.
+	 * Every thread computes the gradient of its mini-batch with the weights as they are at that moment, and then
+	 * applies it to the shared weights and biases directly, without any locking or waiting for the other threads.
+	 * Updates from different threads can therefore overlap and occasionally overwrite each other, but since each update
+	 * only changes the weights a little, the network still converges, and there is no synchronization cost.<br>
+	 * The threads are those of the training pool if it has at least as many, otherwise a pool is made for the call.<br>
+	 * The performance after each epoch is evaluated and printed to stdout if evalData is not null.
 	 * @param trainingData - The training data
 	 * @param batchSize - The size of each mini-batch
 	 * @param learningRate - The learning rate (eta)
 	 * @param regularizationConstant - The regularization constant (lambda)
 	 * @param epochs - The number of epochs to train for
-	 * @param evalData - The data to evaluate the network's performance with. Unlike SGD(), it cannot be null.
-	 * @param outFile - The file to save the final network as. Can be null.
-	 * @throws IOException If saving the temporary files or the final file is unsuccessful
+	 * @param threads - The number of threads to train with; must be at least 1
+	 * @param evalData - The data to evaluate the network's performance with. Can be null.
 	 */
-	public void SGDAndSave(T[] trainingData, int batchSize, double learningRate, double regularizationConstant, int epochs, T[] evalData, File outFile) throws IOException {
+	public void hogwildSGD(final T[] trainingData, final int batchSize, final double learningRate, final double regularizationConstant, int epochs, int threads, T[] evalData) {
+		if(threads < 1)
+			throw new IllegalArgumentException("The number of threads must be at least 1");
 		double maxPercentage = 0.0;
 		int maxEpoch = -1;
-		
-		File[] netData = new File[epochs];
-		
-		System.out.println("No Training:\nEvaluating...");
-		double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
-		System.out.println(percentage + "% correctly classified.");
-		
-		for(int epoch = 1; epoch <= epochs; epoch ++) {
-			List<T> l = Arrays.asList(trainingData);
-			Collections.shuffle(l);
+		final TrainingWorkspace[] ws = getWorkspaces(threads, batchSize);
+		final Permutation order = new Permutation(trainingData.length);
+		//The start of the next mini-batch to be taken
+		final AtomicInteger next = new AtomicInteger();
+		//Run on the training pool if it has enough threads, otherwise on a pool made for this call
+		final ForkJoinPool pool = trainingPool != null && trainingPool.getParallelism() >= threads ? trainingPool : new ForkJoinPool(threads);
+		RecursiveAction[] workers = new RecursiveAction[threads];
+		for(int t = 0; t < threads; t ++) {
+			final TrainingWorkspace workspace = ws[t];
+			workers[t] = new RecursiveAction() {
+				private static final long serialVersionUID = -3104816593270514741L;
 
-			System.out.println("Epoch #" + epoch);
-			System.out.println("Learning...");
+				@Override
+				protected void compute() {
+					int i;
+					while((i = next.getAndAdd(batchSize)) < trainingData.length) {
+						workspace.clearGradient();
+						accumulateGradient(trainingData, order.indices, i, Math.min(i + batchSize, trainingData.length), workspace);
+						applyGradient(workspace, learningRate, regularizationConstant, trainingData.length, null, 0);
+					}
+				}
+			};
+		}
+		try {
+			for(int epoch = 1; epoch <= epochs; epoch ++) {
+				order.shuffle();
+				
+				if(evalData != null) {
+					System.out.println("Epoch #" + epoch);
+					System.out.println("Learning...");
+				}
+				
+				next.set(0);
+				for(RecursiveAction worker : workers) {
+					worker.reinitialize();
+					pool.execute(worker);
+				}
+				for(RecursiveAction worker : workers)
+					worker.join();
+				
+				if(evalData != null) {
+					System.out.println("Evaluating...");
+					double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
+					System.out.println(percentage + "% correctly classified.");
+					if(percentage > maxPercentage) {
+						maxPercentage = percentage;
+						maxEpoch = epoch;
+					}
+				}
+			}
+		}
+		finally {
+			if(pool != trainingPool)
+				pool.shutdown();
+		}
+		if(evalData != null)
+			System.out.printf("Max classification rate: %f%%, reached at Epoch #%d", maxPercentage, maxEpoch);
+	}
+	/**
+	 * Performs stochastic gradient descent with momentum and dropout.<br>
+	 * Same as calling dropoutSGD(trainingData, batchSize, learningRate, dropoutRate, momentumCoefficient, epochs, null)
+	 * @param trainingData - The training data
+	 * @param batchSize - The size of each mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param dropoutRate - A real number between 0 and 1, the probability that a neuron will be dropped out
+	 * @param momentumCoefficient - The momentum coefficient (mu); a value of 0 indicates no momentum
+	 * @param epochs - The number of epochs to train for
+	 */
+	public void dropoutSGD(T[] trainingData, int batchSize, double learningRate, double dropoutRate, double momentumCoefficient, int epochs) {
+		dropoutSGD(trainingData, batchSize, learningRate, dropoutRate, momentumCoefficient, epochs, null);
+	}
+	/**
+	 * Performs stochastic gradient descent with momentum and dropout.
+	 * The performance of the network is also evaluated and printed to stdout after each epoch if evalData is not null. <br>
+	 * <br>
+	 * Since neurons trained with dropout are accustomed to having only a part of the hidden neurons as input,
+	 * the activations of hidden neurons or their outgoing weights need to be scaled down so the network can 
+	 * properly function. However this is done automatically at the end of the training procedure, so a network
+	 * trained this way can still use the normal methods.
+	 * @param trainingData - The training data
+	 * @param batchSize - The size of each mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param dropoutRate - A real number from 0 to 1, the probability that a neuron will be dropped out
+	 * @param momentumCoefficient - The momentum coefficient (mu); a value of 0 indicates no momentum
+	 * @param epochs - The number of epochs to train for
+	 * @param evalData - The data to evaluate the network's performance with. Can be null.
+	 */
+	public void dropoutSGD(T[] trainingData, int batchSize, double learningRate, double dropoutRate, double momentumCoefficient, int epochs, T[] evalData) {
+		//First scale the weights back up since we're only going to have partial neurons
+		scaleDropoutWeights(dropoutRate);
+		
+		double[][] velocity = createWeightsArray();
+		double maxPercentage = 0.0;
+		int maxEpoch = -1;
+		double[] percentages = new double[epochs];
+		
+		Permutation order = new Permutation(trainingData.length);
+		for(int epoch = 1; epoch <= epochs; epoch ++) {
+			order.shuffle();
+			
+			if(evalData != null) {
+				System.out.println("Epoch #" + epoch);
+				System.out.println("Learning...");
+			}
 			
 			//Separate the shuffled training samples into mini-batches and train with each mini-batch
-			for(int i = 0; i < trainingData.length; i += batchSize) {
-				List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-				@SuppressWarnings("unchecked")
-				T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-				miniBatchList.toArray(miniBatch);
-				learnFromMiniBatch(miniBatch, learningRate, regularizationConstant, trainingData.length);
+			learnEpochDropout(trainingData, order.indices, batchSize, learningRate, momentumCoefficient != 0 ? velocity : null, momentumCoefficient, dropoutRate);
+			
+			if(evalData != null) {
+				//Reduce each weight before testing
+				reduceDropoutWeights(dropoutRate);
+				System.out.println("Evaluating...");
+				double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
+				System.out.println(percentage + "% correctly classified.");
+				if(percentage > maxPercentage) {
+					maxPercentage = percentage;
+					maxEpoch = epoch;
+				}
+				percentages[epoch - 1] = percentage;
+				//Scale the weights back up
+				scaleDropoutWeights(dropoutRate);
 			}
+		}
+		if(evalData != null)
+			System.out.printf("Max classification rate: %f%%, reached at Epoch #%d", maxPercentage, maxEpoch);
+		//Reduce the weights so we have a normal neural network
+		reduceDropoutWeights(dropoutRate);
+	}
+	/**
+	 * Performs stochastic gradient descent with L2 regularization and saves the best network.<br>
+	 * After each training epoch, the data of the network is stored as a temporary file that is deleted when the VM exits.
+	 * When the training is finished, the network will load and make permanent the temporary file that stores the network with the best
+	 * performance compared to all other epochs, even if it might not be the network from the last epoch.
+	 * @param trainingData - The training data
+	 * @param batchSize - The size of each mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param epochs - The number of epochs to train for
+	 * @param evalData - The data to evaluate the network's performance with. Unlike SGD(), it cannot be null.
+	 * @param outFile - The file to save the final network as. Can be null.
+	 * @throws IOException If saving the temporary files or the final file is unsuccessful
+	 */
+	public void SGDAndSave(T[] trainingData, int batchSize, double learningRate, double regularizationConstant, int epochs, T[] evalData, File outFile) throws IOException {
+		double maxPercentage = 0.0;
+		int maxEpoch = -1;
+		
+		File[] netData = new File[epochs];
+		
+		System.out.println("No Training:\nEvaluating...");
+		double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
+		System.out.println(percentage + "% correctly classified.");
+		
+		Permutation order = new Permutation(trainingData.length);
+		for(int epoch = 1; epoch <= epochs; epoch ++) {
+			order.shuffle();
+
+			System.out.println("Epoch #" + epoch);
+			System.out.println("Learning...");
+			
+			//Separate the shuffled training samples into mini-batches and train with each mini-batch
+			learnEpoch(trainingData, order.indices, batchSize, learningRate, regularizationConstant, trainingData.length, null, 0);
 			
 			System.out.println("Evaluating...");
 			percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
@@ -793,7 +1438,7 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * @throws IOException If saving the temporary files or the final file is unsuccessful
 	 */
 	public void SGDAndSave(T[] trainingData, int batchSize, double learningRate, double regularizationConstant, double momentumCoefficient, int epochs, T[] evalData, File outFile) throws IOException {
-		double[][][] velocity = createWeightsArray();
+		double[][] velocity = createWeightsArray();
 		
 		double maxPercentage = 0.0;
 		int maxEpoch = -1;
@@ -804,21 +1449,15 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
 		System.out.println(percentage + "% correctly classified.");
 		
+		Permutation order = new Permutation(trainingData.length);
 		for(int epoch = 1; epoch <= epochs; epoch ++) {
-			List<T> l = Arrays.asList(trainingData);
-			Collections.shuffle(l);
+			order.shuffle();
 
 			System.out.println("Epoch #" + epoch);
 			System.out.println("Learning...");
 			
 			//Separate the shuffled training samples into mini-batches and train with each mini-batch
-			for(int i = 0; i < trainingData.length; i += batchSize) {
-				List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-				@SuppressWarnings("unchecked")
-				T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-				miniBatchList.toArray(miniBatch);
-				learnFromMiniBatch(miniBatch, learningRate, regularizationConstant, trainingData.length, velocity, momentumCoefficient);
-			}
+			learnEpoch(trainingData, order.indices, batchSize, learningRate, regularizationConstant, trainingData.length, velocity, momentumCoefficient);
 			
 			System.out.println("Evaluating...");
 			percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
@@ -862,7 +1501,7 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * @throws IOException If saving the temporary files or the final file is unsuccessful
 	 */
 	public void dropoutSGDAndSave(T[] trainingData, int batchSize, double learningRate, double dropoutRate, double momentumCoefficient, int epochs, T[] evalData, File outFile) throws IOException {
-		double[][][] velocity = createWeightsArray();
+		double[][] velocity = createWeightsArray();
 		
 		double maxPercentage = 0.0;
 		int maxEpoch = -1;
@@ -874,24 +1513,15 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		System.out.println(percentage + "% correctly classified.");
 		scaleDropoutWeights(dropoutRate);
 		
+		Permutation order = new Permutation(trainingData.length);
 		for(int epoch = 1; epoch <= epochs; epoch ++) {
-			List<T> l = Arrays.asList(trainingData);
-			Collections.shuffle(l);
+			order.shuffle();
 
 			System.out.println("Epoch #" + epoch);
 			System.out.println("Learning...");
 			
 			//Separate the shuffled training samples into mini-batches and train with each mini-batch
-			for(int i = 0; i < trainingData.length; i += batchSize) {
-				List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-				@SuppressWarnings("unchecked")
-				T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-				miniBatchList.toArray(miniBatch);
-				if(momentumCoefficient != 0)
-					learnFromMiniBatchDropout(miniBatch, learningRate, velocity, momentumCoefficient, dropoutRate);
-				else
-					learnFromMiniBatchDropout(miniBatch, learningRate, null, 0, dropoutRate);
-			}
+			learnEpochDropout(trainingData, order.indices, batchSize, learningRate, momentumCoefficient != 0 ? velocity : null, momentumCoefficient, dropoutRate);
 			
 			System.out.println("Evaluating...");
 			//Save the reduced copy
@@ -945,20 +1575,14 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		int bestCycle = -1;
 		int bestEpoch = -1;
 		
+		Permutation order = new Permutation(trainingData.length);
 		for(int cycle = 1; cycle <= cycles; cycle ++) {
 			System.out.printf("Cycle #%d (eta = %f):\n", cycle, eta);
 			while(true) {
-				List<T> l = Arrays.asList(trainingData);
-				Collections.shuffle(l);
+				order.shuffle();
 				System.out.printf("Cycle #%d, Epoch #%d:\nLearning...\n", cycle, epoch);
 				
-				for(int i = 0; i < trainingData.length; i += batchSize) {
-					List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-					@SuppressWarnings("unchecked")
-					T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-					miniBatchList.toArray(miniBatch);
-					learnFromMiniBatch(miniBatch, eta, regularizationConstant, trainingData.length);
-				}
+				learnEpoch(trainingData, order.indices, batchSize, eta, regularizationConstant, trainingData.length, null, 0);
 				
 				double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
 				System.out.printf("%f%% correctly classified.\n", percentage);
@@ -1001,7 +1625,7 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * @param cycles - The number of cycles to continue for
 	 */
 	public void scheduledSGD(T[] trainingData, int batchSize, double initLearningRate, double regularizationConstant, double momentumCoefficient, T[] evalData, int schedule, double newRateFactor, int cycles) {
-		double[][][] velocity = createWeightsArray();
+		double[][] velocity = createWeightsArray();
 		
 		int epoch = 1;
 		double eta = initLearningRate;
@@ -1012,20 +1636,74 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		int bestCycle = -1;
 		int bestEpoch = -1;
 		
+		Permutation order = new Permutation(trainingData.length);
 		for(int cycle = 1; cycle <= cycles; cycle ++) {
 			System.out.printf("Cycle #%d (eta = %f):\n", cycle, eta);
 			while(true) {
-				List<T> l = Arrays.asList(trainingData);
-				Collections.shuffle(l);
+				order.shuffle();
 				System.out.printf("Cycle #%d, Epoch #%d:\nLearning...\n", cycle, epoch);
 				
-				for(int i = 0; i < trainingData.length; i += batchSize) {
-					List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-					@SuppressWarnings("unchecked")
-					T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-					miniBatchList.toArray(miniBatch);
-					learnFromMiniBatch(miniBatch, eta, regularizationConstant, trainingData.length, velocity, momentumCoefficient);
+				learnEpoch(trainingData, order.indices, batchSize, eta, regularizationConstant, trainingData.length, velocity, momentumCoefficient);
+				
+				double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
+				System.out.printf("%f%% correctly classified.\n", percentage);
+				if(percentage > allTimeBest) {
+					allTimeBest = percentage;
+					bestCycle = cycle;
+					bestEpoch = epoch;
+				}
+				if(percentage > lastMaxRate) {
+					lastMaxRate = percentage;
+					lastMaxEpoch = epoch;
+				}
+				else {
+					if(epoch - lastMaxEpoch >= schedule) {
+						lastMaxEpoch = 1;
+						lastMaxRate = 0.0;
+						epoch = 1;
+						break;
+					}
 				}
+				epoch ++;
+			}
+			
+			eta *= newRateFactor;
+		}
+		System.out.printf("Training finished.\nAll-time best was %f%% at Cycle #%d, Epoch #%d.\n", allTimeBest, bestCycle, bestEpoch);
+	}
+	/**
+	 * Performs stochastic gradient descent with L2 regularization and momentum, with a changing/scheduled learning rate,
+	 * on data streamed from a TrainingDataSource. See scheduledSGD(T[], ...) and SGD(TrainingDataSource, ...).
+	 * @param source - The source of the training data
+	 * @param batchSize - The size of each mini-batch
+	 * @param initLearningRate - The initial learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 * @param evalData - The data to evaluate the network's performance with. Cannot be null.
+	 * @param schedule - The number of epochs with no performance increase before moving to the next cycle
+	 * @param newRateFactor - The scalar the learning rate is multiplied by for each cycle
+	 * @param cycles - The number of cycles to continue for
+	 * @throws IOException If the source could not read the data
+	 */
+	public void scheduledSGD(TrainingDataSource<T> source, int batchSize, double initLearningRate, double regularizationConstant, double momentumCoefficient, T[] evalData, int schedule, double newRateFactor, int cycles) throws IOException {
+		double[][] velocity = createWeightsArray();
+		
+		int epoch = 1;
+		double eta = initLearningRate;
+		int lastMaxEpoch = 1;
+		double lastMaxRate = 0.0;
+		
+		double allTimeBest = 0.0;
+		int bestCycle = -1;
+		int bestEpoch = -1;
+		
+		Permutation order = null;
+		for(int cycle = 1; cycle <= cycles; cycle ++) {
+			System.out.printf("Cycle #%d (eta = %f):\n", cycle, eta);
+			while(true) {
+				System.out.printf("Cycle #%d, Epoch #%d:\nLearning...\n", cycle, epoch);
+				
+				order = learnEpoch(source, order, batchSize, eta, regularizationConstant, velocity, momentumCoefficient);
 				
 				double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
 				System.out.printf("%f%% correctly classified.\n", percentage);
@@ -1087,7 +1765,7 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 */
 	public void scheduledDropoutSGD(T[] trainingData, int batchSize, double initLearningRate, double dropoutRate, double momentumCoefficient, T[] evalData, int schedule, double newRateFactor, int cycles) {
 		scaleDropoutWeights(dropoutRate);
-		double[][][] velocity = createWeightsArray();
+		double[][] velocity = createWeightsArray();
 		
 		int epoch = 1;
 		double eta = initLearningRate;
@@ -1098,23 +1776,14 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		int bestCycle = -1;
 		int bestEpoch = -1;
 		
+		Permutation order = new Permutation(trainingData.length);
 		for(int cycle = 1; cycle <= cycles; cycle ++) {
 			System.out.printf("Cycle #%d (eta = %f):\n", cycle, eta);
 			while(true) {
-				List<T> l = Arrays.asList(trainingData);
-				Collections.shuffle(l);
+				order.shuffle();
 				System.out.printf("Cycle #%d, Epoch #%d:\nLearning...\n", cycle, epoch);
 				
-				for(int i = 0; i < trainingData.length; i += batchSize) {
-					List<T> miniBatchList = l.subList(i, Math.min(i + batchSize, l.size()));
-					@SuppressWarnings("unchecked")
-					T[] miniBatch = (T[]) new Classifiable[miniBatchList.size()];
-					miniBatchList.toArray(miniBatch);
-					if(momentumCoefficient != 0)
-						learnFromMiniBatchDropout(miniBatch, eta, velocity, momentumCoefficient, dropoutRate);
-					else
-						learnFromMiniBatchDropout(miniBatch, eta, null, momentumCoefficient, dropoutRate);
-				}
+				learnEpochDropout(trainingData, order.indices, batchSize, eta, momentumCoefficient != 0 ? velocity : null, momentumCoefficient, dropoutRate);
 				
 				reduceDropoutWeights(dropoutRate);
 				double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
@@ -1146,6 +1815,82 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		System.out.printf("Training finished.\nAll-time best was %f%% at Cycle #%d, Epoch #%d.\n", allTimeBest, bestCycle, bestEpoch);
 	}
 	
+	/**
+	 * Trains on every mini-batch of a permutation of the data once: data[order[0]] to data[order[batchSize - 1]],
+	 * then the next batchSize samples, and so on. If input prefetching is on (see setInputPrefetching()), the mini-batches
+	 * are prepared by an InputPipeline.
+	 * @param data - The training data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order.
+	 * @param batchSize - The size of each mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param dataSize - The total size of the training data, for L2 regularization.
+	 * @param velocity - The velocity of each weight, or null if momentum is not applied
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 */
+	protected void learnEpoch(T[] data, int[] order, int batchSize, double learningRate, double regularizationConstant, int dataSize, double[][] velocity, double momentumCoefficient) {
+		if(inputPrefetchThreads == 0) {
+			for(int i = 0; i < data.length; i += batchSize) {
+				int end = Math.min(i + batchSize, data.length);
+				learnFromMiniBatch(data, order, i, end, learningRate, regularizationConstant, dataSize, velocity, momentumCoefficient);
+			}
+			return;
+		}
+		//Split each mini-batch the same way learnFromMiniBatch() would
+		final int parts = trainingPool != null ? trainingPool.getParallelism() : 1;
+		final InputPipeline<T> pipeline = getInputPipeline(parts, (batchSize + parts - 1) / parts, batchSize);
+		pipeline.start(data, order, batchSize);
+		try {
+			for(int i = 0; i < data.length; i += batchSize)
+				learnFromMiniBatch(pipeline.next(), Math.min(batchSize, data.length - i), learningRate, regularizationConstant, dataSize, velocity, momentumCoefficient);
+		}
+		finally {
+			pipeline.stop();
+		}
+	}
+	/**
+	 * Same as learnEpoch(), but with dropout; see learnFromMiniBatchDropout().
+	 * @param data - The training data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order.
+	 * @param batchSize - The size of each mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param velocity - The velocity of each weight, or null if momentum is not applied
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 * @param dropoutRate - A real number between 0 and 1, the chance of a neuron being dropped out
+	 */
+	protected void learnEpochDropout(T[] data, int[] order, int batchSize, double learningRate, double[][] velocity, double momentumCoefficient, double dropoutRate) {
+		if(inputPrefetchThreads == 0) {
+			for(int i = 0; i < data.length; i += batchSize) {
+				int end = Math.min(i + batchSize, data.length);
+				learnFromMiniBatchDropout(data, order, i, end, learningRate, velocity, momentumCoefficient, dropoutRate);
+			}
+			return;
+		}
+		//Dropout training is done on one thread, so the mini-batches are not split
+		final InputPipeline<T> pipeline = getInputPipeline(1, batchSize, batchSize);
+		pipeline.start(data, order, batchSize);
+		try {
+			for(int i = 0; i < data.length; i += batchSize)
+				learnFromMiniBatchDropout(pipeline.next(), learningRate, velocity, momentumCoefficient, dropoutRate);
+		}
+		finally {
+			pipeline.stop();
+		}
+	}
+	/**
+	 * Gets the pipeline that prepares mini-batches for the workspaces, making a new one if the last one does not fit.
+	 * @param parts - The number of workspaces each mini-batch is split across
+	 * @param capacity - The number of samples each workspace has to hold
+	 * @param batchSize - The size of each mini-batch
+	 * @return The pipeline
+	 */
+	InputPipeline<T> getInputPipeline(int parts, int capacity, int batchSize) {
+		TrainingWorkspace[] ws = getWorkspaces(parts, capacity);
+		if(inputPipeline == null || !inputPipeline.fits(ws, parts, batchSize, inputPrefetchThreads))
+			inputPipeline = new InputPipeline<>(this, ws, parts, batchSize, inputPrefetchThreads);
+		return inputPipeline;
+	}
+	
 	/**
 	 * Applies a single step of gradient descent with L2 regularization. <br>
 	 * Equivalent to calling learnFromMiniBatch(miniBatch, learningRate, regularizationConstant, dataSize, null, 0)
@@ -1163,107 +1908,453 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * @param learningRate - The learning rate (eta)
 	 * @param regularizationConstant - The regularization constant (lambda)
 	 * @param dataSize - The total size of the training data, for L2 regularization.
-	 * @param velocity - A 3-dimensional array in the shape of the weights matrix. Each element represent the "velocity"
+	 * @param velocity - A 2-dimensional array in the shape of the weights matrix. Each element represent the "velocity"
+	 * of that weight. This array is updated in the process. If null, momentum is not applied.
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 */
+	protected void learnFromMiniBatch(T[] miniBatch, double learningRate, double regularizationConstant, int dataSize, double[][] velocity, double momentumCoefficient) {
+		learnFromMiniBatch(miniBatch, null, 0, miniBatch.length, learningRate, regularizationConstant, dataSize, velocity, momentumCoefficient);
+	}
+	/**
+	 * Applies a single step of gradient descent with L2 regularization and momentum, using a range of a permutation of the data
+	 * as the mini-batch, so the mini-batch does not have to be copied out into its own array. <br>
+	 * The samples learned from are data[order[from]] to data[order[to - 1]].
+	 * @param data - The training data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order, i.e. data[from] to data[to - 1].
+	 * @param from - The start of the mini-batch in order, inclusive
+	 * @param to - The end of the mini-batch in order, exclusive
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param dataSize - The total size of the training data, for L2 regularization.
+	 * @param velocity - A 2-dimensional array in the shape of the weights matrix. Each element represent the "velocity"
+	 * of that weight. This array is updated in the process. If null, momentum is not applied.
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 */
+	protected void learnFromMiniBatch(T[] data, int[] order, int from, int to, double learningRate, double regularizationConstant, int dataSize, double[][] velocity, double momentumCoefficient) {
+		TrainingWorkspace ws;
+		if(trainingPool != null && to - from > 1) {
+			//Split the mini-batch across the pool; each worker sums into its own workspace and the workspaces are then reduced
+			int workers = trainingPool.getParallelism();
+			GradientTask task = getGradientTask(workers, (to - from + workers - 1) / workers);
+			task.reset(data, order, from, to);
+			trainingPool.invoke(task);
+			ws = workspaces[0];
+		}
+		else {
+			ws = getWorkspaces(1, to - from)[0];
+			ws.clearGradient();
+			accumulateGradient(data, order, from, to, ws);
+		}
+		applyGradient(ws, learningRate, regularizationConstant, dataSize, velocity, momentumCoefficient);
+	}
+	/**
+	 * Same as learnFromMiniBatch(), but with a mini-batch whose inputs were already stacked by an InputPipeline.
+	 * Each part is swapped into the workspace that works on it, and the workspace's old batch takes its place in the array.
+	 * @param parts - The parts of the mini-batch, one for each worker of the training pool, or one if there is no pool
+	 * @param size - The number of samples in the mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param dataSize - The total size of the training data, for L2 regularization.
+	 * @param velocity - The velocity of each weight, or null if momentum is not applied
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 */
+	void learnFromMiniBatch(InputBatch[] parts, int size, double learningRate, double regularizationConstant, int dataSize, double[][] velocity, double momentumCoefficient) {
+		TrainingWorkspace ws;
+		if(trainingPool != null && size > 1) {
+			int workers = trainingPool.getParallelism();
+			GradientTask task = getGradientTask(workers, (size + workers - 1) / workers);
+			task.reset(parts);
+			trainingPool.invoke(task);
+			ws = workspaces[0];
+		}
+		else {
+			ws = getWorkspaces(1, size)[0];
+			parts[0] = ws.setInput(parts[0]);
+			ws.clearGradient();
+			accumulateStacked(ws, neuronCounts, weights, biases);
+		}
+		applyGradient(ws, learningRate, regularizationConstant, dataSize, velocity, momentumCoefficient);
+	}
+	/**
+	 * Updates the weights and biases using the summed gradients in a workspace.
+	 * @param ws - The workspace holding the summed dC/db and dC/dw, and the number of samples they were summed over.
+	 * The gradients are divided by the count in the process.
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param dataSize - The total size of the training data, for L2 regularization.
+	 * @param velocity - A 2-dimensional array in the shape of the weights matrix. Each element represent the "velocity"
 	 * of that weight. This array is updated in the process. If null, momentum is not applied.
 	 * @param momentumCoefficient - The momentum coefficient (mu)
 	 */
-	protected void learnFromMiniBatch(T[] miniBatch, double learningRate, double regularizationConstant, int dataSize, double[][][] velocity, double momentumCoefficient) {
+	protected void applyGradient(TrainingWorkspace ws, double learningRate, double regularizationConstant, int dataSize, double[][] velocity, double momentumCoefficient) {
 		//The size of the batch
-		//Only incremented for values that are non-null
-		int batchSize = 0;
+		//Only counts values that are non-null
+		int batchSize = ws.count;
+		if(batchSize == 0)
+			return;
 		//Summed dC/db and dC/dw
-		double[][] biasDerivativesTotal = createBiasesArray();
-		double[][][] weightDerivativesTotal = createWeightsArray();
-		
-		for(T trainingSample : miniBatch) {
-			if(trainingSample != null) {
-				batchSize ++;
-				//Expected output
-				double[] y = trainingSample.generateExpectedOutput();
-				//Activations
-				double[][] a = createBiasesArray();
-				//Weighted sums
-				double[][] z = createBiasesArray();
-				//Errors
-				double[][] e = createBiasesArray();
-				
-				//Feedforward
-				a[0] = trainingSample.asNeuralNetworkInput();
-				for(int i = 1; i < layers; i ++) {
-					for(int j = 0; j < neuronCounts[i]; j ++) {
-						//Dot product of last layer's activations with this layer's weights added to the bias 
-						z[i][j] = dotProduct(a[i - 1], weights[i][j]) + biases[i][j];
-						//Put through the activation function
-						a[i][j] = activationFunction.activation(z[i][j]);
-					}
-				}
-				//Calculate error for output layer
-				for(int j = 0; j < neuronCounts[layers - 1]; j ++) {
-					//The error for a neuron in the output layer =
-					//activation'(z) * dC/da
-					e[layers - 1][j] = activationFunction.activationDerivative(z[layers - 1][j])
-							* costFunction.costDerivative(y[j], a[layers - 1][j]);
-				}
-				//Backpropagate
-				for(int i = layers - 2; i >= 0; i --) {
-					for(int j = 0; j < neuronCounts[i]; j ++) {
-						//Perform the sigma
-						double err = 0.0;
-						for(int k = 0; k < neuronCounts[i + 1]; k ++) {
-							//The error of a neuron in the next layer * the weight connecting them
-							err += e[i + 1][k] * weights[i + 1][k][j];
-						}
-						//dC/da * da/dz = dC/dz
-						err *= activationFunction.activationDerivative(z[i][j]);
-						e[i][j] = err;
-					}
-				}
-				//Calculate the weight and bias derivatives and add to total
-				//Skip input layer
-				for(int i = 1; i < layers; i ++) {
-					for(int j = 0; j < neuronCounts[i]; j ++) {
-						//dC/db_ij = err_ij * 1
-						biasDerivativesTotal[i][j] += e[i][j];
-						for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-							//dC/dw_ijk = err_ij * a_(i-1)k
-							weightDerivativesTotal[i][j][k] = e[i][j] * a[i - 1][k];
-						}
-					}
-				}
-			}
-		}
+		double[][] biasDerivativesTotal = ws.biasDerivatives;
+		double[][] weightDerivativesTotal = ws.weightDerivatives;
 		
 		//Divide to take the average
 		for(int i = 1; i < layers; i ++) {
-			for(int j = 0; j < neuronCounts[i]; j ++) {
+			for(int j = 0; j < neuronCounts[i]; j ++)
 				biasDerivativesTotal[i][j] /= batchSize;
-				for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-					weightDerivativesTotal[i][j][k] /= batchSize;
-				}
-			}
+			for(int k = 0; k < weightDerivativesTotal[i].length; k ++)
+				weightDerivativesTotal[i][k] /= batchSize;
 		}
 		//Update the new weights and biases
+		double decay = 1 - learningRate * regularizationConstant / dataSize;
 		for(int i = 1; i < layers; i ++) {
 			for(int j = 0; j < neuronCounts[i]; j ++) {
 				//b -> b' = b - eta * gradient
 				biases[i][j] = biases[i][j] - learningRate * biasDerivativesTotal[i][j];
-				for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-					//Calculate momentum if the velocity matrix is not null
-					if(velocity != null) {
-						//v -> v' = mu * v - eta * gradient
-						velocity[i][j][k] = momentumCoefficient * velocity[i][j][k]
-								- learningRate * weightDerivativesTotal[i][j][k];
-						//w -> w' = w * (1 - (eta * lambda / n)) + v
-						weights[i][j][k] = weights[i][j][k] * (1 - learningRate * regularizationConstant / dataSize)
-								+ velocity[i][j][k];
-					}
-					else {
-						//w -> w' = w * (1 - (eta * lambda / n)) - eta * gradient
-						weights[i][j][k] = weights[i][j][k] * (1 - learningRate * regularizationConstant / dataSize)
-								- learningRate * weightDerivativesTotal[i][j][k];
+			}
+			//Calculate momentum if the velocity matrix is not null
+			//v -> v' = mu * v - eta * gradient
+			//w -> w' = w * (1 - (eta * lambda / n)) + v
+			//Or without momentum,
+			//w -> w' = w * (1 - (eta * lambda / n)) - eta * gradient
+			Kernels.INSTANCE.update(weights[i], weightDerivativesTotal[i], velocity != null ? velocity[i] : null,
+					weights[i].length, decay, learningRate, momentumCoefficient);
+		}
+		applyPruning(velocity);
+	}
+	/**
+	 * Gets workspaces for training with the current structure of the network, creating new ones if the ones
+	 * from the last call do not fit. Once made, the workspaces are reused so that training does not allocate.
+	 * @param count - The number of workspaces needed, one for each thread
+	 * @param capacity - The number of samples each workspace has to hold
+	 * @return The workspaces
+	 */
+	protected TrainingWorkspace[] getWorkspaces(int count, int capacity) {
+		//Always keep at least one, since the other methods that use them expect workspaces[0] to exist
+		count = Math.max(count, 1);
+		if(workspaces == null || workspaces.length < count || !workspaces[0].fits(neuronCounts, capacity)) {
+			//Keep the old capacity if it's bigger, so alternating between batch sizes does not reallocate every time
+			if(workspaces != null && Arrays.equals(workspaces[0].neuronCounts, neuronCounts)) {
+				capacity = Math.max(capacity, workspaces[0].capacity);
+				count = Math.max(count, workspaces.length);
+			}
+			workspaces = new TrainingWorkspace[count];
+			for(int i = 0; i < count; i ++)
+				workspaces[i] = new TrainingWorkspace(neuronCounts, capacity);
+			gradientTask = null;
+		}
+		return workspaces;
+	}
+	/**
+	 * Gets a tree of tasks that splits a mini-batch across a number of workspaces. The tree is kept and reused.
+	 * @param workers - The number of leaves of the tree
+	 * @param capacity - The number of samples each leaf has to hold
+	 * @return The root of the tree
+	 */
+	protected GradientTask getGradientTask(int workers, int capacity) {
+		TrainingWorkspace[] ws = getWorkspaces(workers, capacity);
+		if(gradientTask == null || gradientTask.ws != ws || gradientTask.last - gradientTask.first != workers) {
+			gradientTask = new GradientTask(ws, 0, workers);
+		}
+		return gradientTask;
+	}
+	/**
+	 * Backpropagates each non-null sample in data[order[from]] to data[order[to - 1]] and adds the gradients
+	 * to the totals in a workspace. The network's weights and biases are only read, so this can be called concurrently
+	 * as long as each caller has its own workspace.<br>
+	 * The samples are processed together as a batch: their inputs are stacked into the rows of an activation matrix,
+	 * so each layer's forward pass, error backpropagation and weight gradient is a single matrix multiplication.
+	 * Batches larger than the workspace are processed in several parts.
+	 * @param data - The training data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order.
+	 * @param from - The position of the first sample in order, inclusive
+	 * @param to - The position of the last sample in order, exclusive
+	 * @param ws - The workspace. The summed dC/db and dC/dw and the count of samples are added to it.
+	 */
+	protected void accumulateGradient(T[] data, int[] order, int from, int to, TrainingWorkspace ws) {
+		accumulateGradient(data, order, from, to, ws, neuronCounts, weights, biases);
+	}
+	/**
+	 * Same as accumulateGradient(), but for a network with the same number of layers and inputs and outputs as this one,
+	 * and the specified number of hidden neurons, weights and biases. Used to train the sub-network left after dropout.
+	 * The workspace must have been made for this network, and counts must be no larger than this network's neuron counts.
+	 * @param data - The training data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order.
+	 * @param from - The position of the first sample in order, inclusive
+	 * @param to - The position of the last sample in order, exclusive
+	 * @param ws - The workspace. The summed dC/db and dC/dw and the count of samples are added to it.
+	 * @param counts - The number of neurons in each layer
+	 * @param layerWeights - The weights of each layer, in the same layout as weights
+	 * @param layerBiases - The biases of each layer
+	 */
+	protected void accumulateGradient(T[] data, int[] order, int from, int to, TrainingWorkspace ws, int[] counts, double[][] layerWeights, double[][] layerBiases) {
+		int n = from;
+		while(n < to) {
+			n = stackInputs(data, order, n, to, ws.input, counts[0], counts[layers - 1]);
+			if(ws.input.rows == 0)
+				break;
+			accumulateStacked(ws, counts, layerWeights, layerBiases);
+		}
+	}
+	/**
+	 * Backpropagates the samples stacked into a workspace's input batch and adds their gradients to the totals in the workspace.
+	 * @param ws - The workspace. The summed dC/db and dC/dw and the count of samples are added to it.
+	 * @param counts - The number of neurons in each layer
+	 * @param layerWeights - The weights of each layer, in the same layout as weights
+	 * @param layerBiases - The biases of each layer
+	 */
+	protected void accumulateStacked(TrainingWorkspace ws, int[] counts, double[][] layerWeights, double[][] layerBiases) {
+		final int outputs = counts[layers - 1];
+		//Activations
+		final double[][] a = ws.a;
+		//Weighted sums
+		final double[][] z = ws.z;
+		//Errors
+		final double[][] e = ws.e;
+		final InputBatch input = ws.input;
+		//Expected outputs
+		final double[] y = input.y;
+		final int rows = input.rows;
+		if(rows == 0)
+			return;
+		ws.count += rows;
+		feedforward(ws, counts, layerWeights, layerBiases);
+		//Calculate error for output layer
+		//The error for a neuron in the output layer =
+		//activation'(z) * dC/da
+		for(int index = 0; index < rows * outputs; index ++)
+			e[layers - 1][index] = costFunction.costDerivative(y[index], a[layers - 1][index]);
+		activationFunction.multiplyByDerivative(z[layers - 1], a[layers - 1], e[layers - 1], 0, rows * outputs);
+		//Backpropagate
+		//The input layer has no error, so stop at the first hidden layer
+		for(int i = layers - 2; i >= 1; i --) {
+			//The errors of the next layer multiplied by the weights connecting them
+			LinearAlgebra.multiply(rows, counts[i], counts[i + 1], e[i + 1], layerWeights[i + 1], e[i]);
+			//dC/da * da/dz = dC/dz
+			activationFunction.multiplyByDerivative(z[i], a[i], e[i], 0, rows * counts[i]);
+		}
+		//Calculate the weight and bias derivatives and add to total
+		//Skip input layer
+		for(int i = 1; i < layers; i ++) {
+			final int count = counts[i];
+			final double[] biasDerivatives = ws.biasDerivatives[i];
+			for(int r = 0; r < rows; r ++) {
+				for(int j = 0; j < count; j ++) {
+					//dC/db_ij = err_ij * 1
+					biasDerivatives[j] += e[i][r * count + j];
+				}
+			}
+			//dC/dw_ijk = err_ij * a_(i-1)k, summed over every sample
+			if(i == 1 && input.sparse)
+				LinearAlgebra.multiplyTransposedAdd(count, counts[0], rows, e[1], input.sparseInput, ws.weightDerivatives[1]);
+			else if(i == 1 && input.byteInput)
+				LinearAlgebra.multiplyTransposedAdd(count, counts[0], rows, e[1], input.inputBytes, input.inputScales, ws.weightDerivatives[1], ws.inputBlock);
+			else
+				LinearAlgebra.multiplyTransposedAdd(count, counts[i - 1], rows, e[i], a[i - 1], ws.weightDerivatives[i]);
+		}
+	}
+	/**
+	 * Stacks the inputs and expected outputs of the next non-null samples into the rows of a workspace's input batch,
+	 * until it is full or there are no more samples.
+	 * @param data - The data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order.
+	 * @param from - The position of the first sample in order, inclusive
+	 * @param to - The position of the last sample in order, exclusive
+	 * @param ws - The workspace
+	 * @param inputs - The number of inputs of each sample
+	 * @param outputs - The number of outputs of each sample
+	 * @return The position in order after the last sample stacked
+	 */
+	protected int stackInputs(T[] data, int[] order, int from, int to, TrainingWorkspace ws, int inputs, int outputs) {
+		return stackInputs(data, order, from, to, ws.input, inputs, outputs);
+	}
+	/**
+	 * Stacks the inputs and expected outputs of the next non-null samples into the rows of a batch,
+	 * until the batch is full or there are no more samples. Afterwards batch.rows is the number of samples stacked,
+	 * batch.samples their indices in data, batch.byteInput whether their inputs were put in batch.inputBytes instead of
+	 * batch.a0 (which is the case when every one of them is a ByteClassifiable), and batch.sparse whether the first layer
+	 * should use the non-zero inputs in batch.sparseInput.<br>
+	 * Only the batch is written to, so batches can be filled by other threads while the network trains.
+	 * @param data - The data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order.
+	 * @param from - The position of the first sample in order, inclusive
+	 * @param to - The position of the last sample in order, exclusive
+	 * @param batch - The batch
+	 * @param inputs - The number of inputs of each sample
+	 * @param outputs - The number of outputs of each sample
+	 * @return The position in order after the last sample stacked
+	 */
+	int stackInputs(T[] data, int[] order, int from, int to, InputBatch batch, int inputs, int outputs) {
+		final double[] a0 = batch.a0;
+		int n = from;
+		int rows = 0;
+		//If every sample has byte inputs, the first layer reads the bytes instead of a[0]
+		boolean byteInput = true;
+		for(; n < to && rows < batch.capacity; n ++) {
+			final int index = order != null ? order[n] : n;
+			T sample = data[index];
+			if(sample != null) {
+				if(byteInput && sample instanceof ByteClassifiable) {
+					ByteClassifiable byteSample = (ByteClassifiable) sample;
+					System.arraycopy(byteSample.getInputBytes(), byteSample.getInputOffset(), batch.inputBytes, rows * inputs, inputs);
+					batch.inputScales[rows] = byteSample.getInputScale();
+				}
+				else {
+					if(byteInput) {
+						//Fall back to double inputs for the whole part, converting the samples stacked so far
+						batch.convertInputBytes(rows);
+						byteInput = false;
 					}
+					sample.writeNeuralNetworkInput(a0, rows * inputs);
+				}
+				sample.writeExpectedOutput(batch.y, rows * outputs);
+				batch.samples[rows] = index;
+				rows ++;
+			}
+		}
+		batch.rows = rows;
+		batch.byteInput = byteInput;
+		//Find the non-zero inputs; if there are few enough, the first layer only uses them
+		batch.sparse = false;
+		if(sparseInputThreshold > 0 && rows > 0) {
+			final SparseRows sparse = batch.sparseInput;
+			sparse.clear();
+			for(int r = 0; r < rows; r ++) {
+				if(byteInput)
+					sparse.addRow(batch.inputBytes, r * inputs, inputs, batch.inputScales[r]);
+				else
+					sparse.addRow(a0, r * inputs, inputs);
+			}
+			batch.sparse = sparse.nonZeros() < sparseInputThreshold * rows * inputs;
+		}
+		return n;
+	}
+	/**
+	 * Feeds the samples stacked into a workspace by stackInputs() forward through the network,
+	 * leaving the weighted sums and activations of every layer in ws.z and ws.a.
+	 * @param ws - The workspace
+	 * @param counts - The number of neurons in each layer
+	 * @param layerWeights - The weights of each layer
+	 * @param layerBiases - The biases of each layer
+	 */
+	protected void feedforward(TrainingWorkspace ws, int[] counts, double[][] layerWeights, double[][] layerBiases) {
+		final double[][] a = ws.a, z = ws.z;
+		final InputBatch input = ws.input;
+		final int rows = input.rows;
+		for(int i = 1; i < layers; i ++) {
+			final int count = counts[i];
+			//Last layer's activations multiplied by this layer's weights
+			if(i == 1 && input.sparse)
+				LinearAlgebra.multiplyTransposed(rows, count, counts[0], input.sparseInput, layerWeights[1], z[1]);
+			else if(i == 1 && input.byteInput)
+				LinearAlgebra.multiplyTransposed(rows, count, counts[0], input.inputBytes, input.inputScales, layerWeights[1], z[1], ws.inputBlock);
+			else
+				LinearAlgebra.multiplyTransposed(rows, count, counts[i - 1], a[i - 1], layerWeights[i], z[i]);
+			//Add the bias
+			for(int r = 0; r < rows; r ++) {
+				final int row = r * count;
+				for(int j = 0; j < count; j ++)
+					z[i][row + j] += layerBiases[i][j];
+			}
+			//Put through the activation function
+			activationFunction.activation(z[i], a[i], 0, rows * count);
+		}
+	}
+	/**
+	 * Finds where a GradientTask splits its part of a mini-batch between its two halves.
+	 * @param from - The start of the part, inclusive
+	 * @param to - The end of the part, exclusive
+	 * @param leftLeaves - The number of leaves under the left half
+	 * @param leaves - The number of leaves under the task
+	 * @return The end of the left half's part and the start of the right half's
+	 */
+	static int splitBatch(int from, int to, int leftLeaves, int leaves) {
+		return from + (int) ((long) (to - from) * leftLeaves / leaves);
+	}
+	/**
+	 * A fork-join task that computes the summed gradient of part of a mini-batch.<br>
+	 * Each leaf of the tree owns one workspace. The part of the mini-batch a task is given is split between its two halves
+	 * in proportion to the number of leaves under them, and once both halves have finished the right half's gradient is added
+	 * to the left half's, so the total ends up in the workspace of the leftmost leaf.
+	 * The tree is built once and reset for every mini-batch.
+	 */
+	protected class GradientTask extends RecursiveAction {
+		private static final long serialVersionUID = 5172310950472113683L;
+		
+		//The workspaces of the leaves this task covers, from first inclusive to last exclusive
+		final TrainingWorkspace[] ws;
+		final int first, last;
+		final GradientTask left, right;
+		//The part of the mini-batch this task works on
+		T[] data;
+		int[] order;
+		int from, to;
+		//The parts of the mini-batch already stacked by an InputPipeline, one for each leaf, or null
+		InputBatch[] prepared;
+		
+		GradientTask(TrainingWorkspace[] ws, int first, int last) {
+			this.ws = ws;
+			this.first = first;
+			this.last = last;
+			if(last - first > 1) {
+				int mid = (first + last) >>> 1;
+				left = new GradientTask(ws, first, mid);
+				right = new GradientTask(ws, mid, last);
+			}
+			else {
+				left = right = null;
+			}
+		}
+		
+		/**
+		 * Prepares this task and the tasks under it to be run with a new part of a mini-batch.
+		 * @param data - The training data
+		 * @param order - The order to take samples from data in, or null
+		 * @param from - The position of the first sample, inclusive
+		 * @param to - The position of the last sample, exclusive
+		 */
+		void reset(T[] data, int[] order, int from, int to) {
+			reinitialize();
+			this.data = data;
+			this.order = order;
+			this.from = from;
+			this.to = to;
+			this.prepared = null;
+			if(left != null) {
+				int split = splitBatch(from, to, left.last - left.first, last - first);
+				left.reset(data, order, from, split);
+				right.reset(data, order, split, to);
+			}
+		}
+		/**
+		 * Prepares this task and the tasks under it to be run with a mini-batch stacked by an InputPipeline.
+		 * @param prepared - The parts of the mini-batch; part i goes to leaf i and is swapped with the batch of its workspace
+		 */
+		void reset(InputBatch[] prepared) {
+			reinitialize();
+			this.data = null;
+			this.order = null;
+			this.prepared = prepared;
+			if(left != null) {
+				left.reset(prepared);
+				right.reset(prepared);
+			}
+		}
+		
+		@Override
+		protected void compute() {
+			if(left == null) {
+				ws[first].clearGradient();
+				if(prepared != null) {
+					prepared[first] = ws[first].setInput(prepared[first]);
+					accumulateStacked(ws[first], neuronCounts, weights, biases);
+				}
+				else {
+					accumulateGradient(data, order, from, to, ws[first]);
 				}
+				return;
 			}
+			invokeAll(left, right);
+			//Reduce into the left half's workspace
+			ws[left.first].addGradient(ws[right.first]);
 		}
 	}
 	/**
@@ -1272,144 +2363,75 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * hidden neurons must be scaled down appropriately using reduceDropoutWeights().
 	 * @param miniBatch - The mini-batch to learn from
 	 * @param learningRate - The learning rate (eta)
-	 * @param velocity - A 3-dimensional array in the shape of the weights matrix. Each element represent the "velocity"
+	 * @param velocity - A 2-dimensional array in the shape of the weights matrix. Each element represent the "velocity"
 	 * of that weight. This array is updated in the process. If null, momentum is not applied.
 	 * @param momentumCoefficient - The momentum coefficient (mu)
 	 * @param dropoutRate - A real number between 0 and 1, the chance of a neuron being dropped out
 	 */
-	protected void learnFromMiniBatchDropout(T[] miniBatch, double learningRate, double[][][] velocity, double momentumCoefficient, double dropoutRate) {
-		//The size of the batch
-		//Only incremented for values that are non-null
-		int batchSize = 0;
-		//Summed dC/db and dC/dw
-		double[][] biasDerivativesTotal = createBiasesArray();
-		double[][][] weightDerivativesTotal = createWeightsArray();
+	protected void learnFromMiniBatchDropout(T[] miniBatch, double learningRate, double[][] velocity, double momentumCoefficient, double dropoutRate) {
+		learnFromMiniBatchDropout(miniBatch, null, 0, miniBatch.length, learningRate, velocity, momentumCoefficient, dropoutRate);
+	}
+	/**
+	 * Applies a single step of gradient descent with momentum and dropout regularization, using a range of a permutation
+	 * of the data as the mini-batch. See learnFromMiniBatch() and learnFromMiniBatchDropout() for details.
+	 * @param data - The training data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order, i.e. data[from] to data[to - 1].
+	 * @param from - The start of the mini-batch in order, inclusive
+	 * @param to - The end of the mini-batch in order, exclusive
+	 * @param learningRate - The learning rate (eta)
+	 * @param velocity - A 2-dimensional array in the shape of the weights matrix. Each element represent the "velocity"
+	 * of that weight. This array is updated in the process. If null, momentum is not applied.
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 * @param dropoutRate - A real number between 0 and 1, the chance of a neuron being dropped out
+	 */
+	protected void learnFromMiniBatchDropout(T[] data, int[] order, int from, int to, double learningRate, double[][] velocity, double momentumCoefficient, double dropoutRate) {
+		//Drop out each hidden neuron with a certain probability, and copy what is left into a compact sub-network
+		DropoutSubnetwork sub = getDropoutSubnetwork();
+		sub.drop(dropoutRate);
+		sub.gather(weights, biases);
 		
-		//Whether a neuron is dropped out
-		boolean[][] d = createDropoutsArray();
-		//Drop out each neuron with a certain probability
-		//Skip the input and output layers
-		for(int i = 1; i < layers - 1; i ++) {
-			for(int j = 0; j < neuronCounts[i]; j ++) {
-				if(Math.random() <= dropoutRate)
-					d[i][j] = true;
-			}
-		}
+		//Train the sub-network as a normal network; dropped neurons are simply not in it
+		TrainingWorkspace ws = getWorkspaces(1, to - from)[0];
+		ws.clearGradient();
+		accumulateGradient(data, order, from, to, ws, sub.counts, sub.weights, sub.biases);
+		if(ws.count == 0)
+			return;
 		
-		for(T trainingSample : miniBatch) {
-			if(trainingSample != null) {
-				batchSize ++;
-				//Expected output
-				double[] y = trainingSample.generateExpectedOutput();
-				//Activations
-				double[][] a = createBiasesArray();
-				//Weighted sums
-				double[][] z = createBiasesArray();
-				//Errors
-				double[][] e = createBiasesArray();
-				
-				//Feedforward
-				a[0] = trainingSample.asNeuralNetworkInput();
-				for(int i = 1; i < layers; i ++) {
-					for(int j = 0; j < neuronCounts[i]; j ++) {
-						//Only calculate for this neuron if it's not dropped out
-						//As doubles default to 0.0, when calculating the next layer's weighted sums these neurons will behave as if they aren't there
-						if(!d[i][j]) {
-							//Dot product of last layer's activations with this layer's weights added to the bias 
-							z[i][j] = dotProduct(a[i - 1], weights[i][j]) + biases[i][j];
-							//Put through the activation function
-							a[i][j] = activationFunction.activation(z[i][j]);
-						}
-					}
-				}
-				
-				//Calculate error for output layer
-				//This part is not affected by dropout and thus remains the same
-				for(int j = 0; j < neuronCounts[layers - 1]; j ++) {
-					//The error for a neuron in the output layer =
-					//activation'(z) * dC/da
-					e[layers - 1][j] = activationFunction.activationDerivative(z[layers - 1][j])
-							* costFunction.costDerivative(y[j], a[layers - 1][j]);
-				}
-				
-				//Backpropagate
-				for(int i = layers - 2; i >= 0; i --) {
-					for(int j = 0; j < neuronCounts[i]; j ++) {
-						//Skip dropped out neurons
-						if(!d[i][j]) {
-							//Perform the sigma
-							double err = 0.0;
-							for(int k = 0; k < neuronCounts[i + 1]; k ++) {
-								//Skip any dropped out neurons
-								if(!d[i + 1][k])
-									//The error of a neuron in the next layer * the weight connecting them
-									err += e[i + 1][k] * weights[i + 1][k][j];
-							}
-							//dC/da * da/dz = dC/dz
-							err *= activationFunction.activationDerivative(z[i][j]);
-							e[i][j] = err;
-						}
-					}
-				}
-				
-				//Calculate the weight and bias derivatives and add to total
-				//Skip input layer and dropped out layers
-				for(int i = 1; i < layers; i ++) {
-					for(int j = 0; j < neuronCounts[i]; j ++) {
-						if(!d[i][j]) {
-							//dC/db_ij = err_ij * 1
-							biasDerivativesTotal[i][j] += e[i][j];
-							for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-								if(!d[i - 1][k])
-									//dC/dw_ijk = err_ij * a_(i-1)k
-									weightDerivativesTotal[i][j][k] = e[i][j] * a[i - 1][k];
-							}
-						}
-					}
-				}
-			}
-			
-			//Divide to take the average, skip dropped out neurons
-			for(int i = 1; i < layers; i ++) {
-				for(int j = 0; j < neuronCounts[i]; j ++) {
-					if(!d[i][j]) {
-						biasDerivativesTotal[i][j] /= batchSize;
-						for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-							if(!d[i - 1][k])
-								weightDerivativesTotal[i][j][k] /= batchSize;
-						}
-					}
-				}
-			}
-			
-			//Update the new weights and biases, and once again skipping dropped out neurons and their connections
-			for(int i = 1; i < layers; i ++) {
-				for(int j = 0; j < neuronCounts[i]; j ++) {
-					if(!d[i][j]) {
-						//b -> b' = b - eta * gradient
-						biases[i][j] = biases[i][j] - learningRate * biasDerivativesTotal[i][j];
-						for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-							if(!d[i - 1][k]) {
-								//Calculate momentum if the velocity matrix is not null
-								if(velocity != null) {
-									//v -> v' = mu * v - eta * gradient
-									velocity[i][j][k] = momentumCoefficient * velocity[i][j][k]
-											- learningRate * weightDerivativesTotal[i][j][k];
-									//w -> w' = w * (1 - (eta * lambda / n)) + v
-									weights[i][j][k] = weights[i][j][k] 
-											+ velocity[i][j][k];
-								}
-								else {
-									//w -> w' = w * (1 - (eta * lambda / n)) - eta * gradient
-									weights[i][j][k] = weights[i][j][k]
-											- learningRate * weightDerivativesTotal[i][j][k];
-								}
-							}
-						}
-					}
-				}
-			}
-		}
+		//Update the kept neurons and their connections in the full network
+		sub.scatterUpdate(ws, weights, biases, learningRate, velocity, momentumCoefficient);
+		applyPruning(velocity);
+	}
+	/**
+	 * Same as learnFromMiniBatchDropout(), but with a mini-batch whose inputs were already stacked by an InputPipeline.
+	 * @param parts - The mini-batch, in one part, which is swapped with the batch of the workspace
+	 * @param learningRate - The learning rate (eta)
+	 * @param velocity - The velocity of each weight, or null if momentum is not applied
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 * @param dropoutRate - A real number between 0 and 1, the chance of a neuron being dropped out
+	 */
+	void learnFromMiniBatchDropout(InputBatch[] parts, double learningRate, double[][] velocity, double momentumCoefficient, double dropoutRate) {
+		DropoutSubnetwork sub = getDropoutSubnetwork();
+		sub.drop(dropoutRate);
+		sub.gather(weights, biases);
+		
+		TrainingWorkspace ws = getWorkspaces(1, parts[0].rows)[0];
+		parts[0] = ws.setInput(parts[0]);
+		ws.clearGradient();
+		accumulateStacked(ws, sub.counts, sub.weights, sub.biases);
+		if(ws.count == 0)
+			return;
+		
+		sub.scatterUpdate(ws, weights, biases, learningRate, velocity, momentumCoefficient);
+		applyPruning(velocity);
+	}
+	/**
+	 * Returns the compact sub-network used for dropout training, making a new one if the structure of the network has changed.
+	 * @return The sub-network
+	 */
+	protected DropoutSubnetwork getDropoutSubnetwork() {
+		if(dropoutSubnetwork == null || !Arrays.equals(dropoutSubnetwork.neuronCounts, neuronCounts))
+			dropoutSubnetwork = new DropoutSubnetwork(neuronCounts);
+		return dropoutSubnetwork;
 	}
 	/**
 	 * Reduces every weight that connects from a hidden neuron by a factor.
@@ -1421,10 +2443,8 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		double multiplier = 1 - factor;
 		//Start from the 2nd hidden layer and end at the output layer
 		for(int i = 2; i < layers; i ++) {
-			for(int j = 0; j < neuronCounts[i]; j ++) {
-				for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-					weights[i][j][k] *= multiplier;
-				}
+			for(int k = 0; k < weights[i].length; k ++) {
+				weights[i][k] *= multiplier;
 			}
 		}
 	}
@@ -1437,10 +2457,8 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 		double multiplier = 1 - factor;
 		//Start from the 2nd hidden layer and end at the output layer
 		for(int i = 2; i < layers; i ++) {
-			for(int j = 0; j < neuronCounts[i]; j ++) {
-				for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-					weights[i][j][k] /= multiplier;
-				}
+			for(int k = 0; k < weights[i].length; k ++) {
+				weights[i][k] /= multiplier;
 			}
 		}
 	}
@@ -1464,36 +2482,67 @@ public class ClassificationNeuralNetwork<T extends Classifiable> implements Clon
 	 * Bias[1][0] - 8 bytes<br>
 	 * Bias[1][1] - 8 bytes<br>
 	 * ...<br>
-	 * 
+	 * The data is first written to a temporary file in the same folder, which then replaces f, so f is never left half-written.
 	 * @param f - The file to save the data in. If it does not exist, a new file will be created. Existing files will be overwritten.
 	 * @throws IOException If writing to the file was unsuccessful
 	 */
 	public void saveData(File f) throws IOException {
-		if(!f.exists())
-			f.createNewFile();
-		DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
-		out.writeByte(SAVE_FORMAT_VER);
-		
-		for(int i = 0; i < layers; i ++)
-			out.writeInt(neuronCounts[i]);
-		out.writeInt(0);
-		
-		out.writeByte(activationFunction.getCode());
-		out.writeByte(costFunction.getCode());
-		
-		for(int i = 1; i < layers; i ++) {
-			for(int j = 0; j < neuronCounts[i]; j ++) {
-				for(int k = 0; k < neuronCounts[i - 1]; k ++) {
-					out.writeDouble(weights[i][j][k]);
-				}
-			}
+		SequentialNetworkFormat.write(f, neuronCounts, activationFunction.getCode(), costFunction.getCode(), weights, biases, SAVE_FORMAT_VER);
+	}
+	/**
+	 * Saves the data of this neural network in the memory-mapped format (version 0x03): a header with the structure of
+	 * the network and the offset of every parameter block, followed by the blocks as raw little-endian doubles, each aligned
+	 * to 64 bytes. The file can be loaded with ClassificationNeuralNetwork(File) like the other formats, but much faster.
+	 * @param f - The file to save the data in. If it does not exist, a new file will be created. Existing files will be overwritten.
+	 * @throws IOException If writing to the file was unsuccessful
+	 */
+	public void saveMappedData(File f) throws IOException {
+		MappedNetworkFormat.write(f, neuronCounts, activationFunction.getCode(), costFunction.getCode(), weights, biases, MappedNetworkFormat.FLOAT64);
+	}
+	/**
+	 * Converts a saved network file of any supported version to the memory-mapped format (version 0x03).
+	 * Single-precision files are converted to double precision.
+	 * @param src - The file to convert
+	 * @param dest - The file to save the converted network in
+	 * @throws IOException If reading or writing was not successful
+	 * @throws NeuralNetworkException If the format of the source file is not supported
+	 */
+	public static void convertToMappedFormat(File src, File dest) throws IOException, NeuralNetworkException {
+		new ClassificationNeuralNetwork<Classifiable>(src).saveMappedData(dest);
+	}
+	/**
+	 * Creates an empty temporary file in the same folder as a file, to write its new contents into before replaceFile().
+	 * @param f - The file that will be replaced
+	 * @return The temporary file
+	 * @throws IOException If the file could not be created
+	 */
+	static File temporaryFile(File f) throws IOException {
+		final File dir = f.getAbsoluteFile().getParentFile();
+		//Not File.createTempFile(), so that the file gets the same permissions as one made by FileOutputStream
+		for(int i = 0; ; i ++) {
+			File temp = new File(dir, "." + f.getName() + "." + Long.toHexString(System.nanoTime() + i) + ".tmp");
+			if(temp.createNewFile())
+				return temp;
 		}
-		for(int i = 1; i < layers; i ++) {
-			for(int j = 0; j < neuronCounts[i]; j ++) {
-				out.writeDouble(biases[i][j]);
+	}
+	/**
+	 * Replaces a file with a temporary file made by temporaryFile(), atomically if the file system supports it.
+	 * @param temp - The temporary file holding the new contents
+	 * @param f - The file to replace
+	 * @throws IOException If the file could not be replaced; the temporary file is deleted
+	 */
+	static void replaceFile(File temp, File f) throws IOException {
+		try {
+			try {
+				Files.move(temp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			}
 		}
-		
-		out.close();
+		catch(IOException e) {
+			temp.delete();
+			throw e;
+		}
 	}
 }
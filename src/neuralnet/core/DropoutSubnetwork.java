@@ -0,0 +1,116 @@
+package neuralnet.core;
+
+/**
+ * The sub-network that is left of a network after some of its hidden neurons are dropped out, stored compactly.<br>
+ * The weights and biases of the neurons that are kept are gathered into dense matrices that only have rows for the kept
+ * neurons and columns for the kept neurons of the layer before, so the sub-network can be trained with the same batched
+ * matrix code as a full network, without checking whether each neuron is dropped. With a dropout rate of p, the work for
+ * a layer between two hidden layers goes down by a factor of about (1 - p)<sup>2</sup>.
+ * The gradients of the sub-network are then scattered back to the kept neurons of the full network.<br>
+ * The arrays are sized for the full network and reused for every mini-batch.
+ */
+public final class DropoutSubnetwork {
+	//The structure of the full network
+	final int[] neuronCounts;
+	//The number of neurons kept in each layer
+	final int[] counts;
+	//The indices in the full network of the neurons kept in each layer, in increasing order
+	final int[][] kept;
+	//The weights and biases of the kept neurons, in the same layout as in the full network
+	final double[][] weights;
+	final double[][] biases;
+
+	/**
+	 * Creates a new sub-network, with every neuron kept.
+	 * @param neuronCounts - The structure of the full network
+	 */
+	DropoutSubnetwork(int[] neuronCounts) {
+		this.neuronCounts = neuronCounts.clone();
+		int layers = neuronCounts.length;
+		counts = neuronCounts.clone();
+		kept = new int[layers][];
+		weights = new double[layers][];
+		biases = new double[layers][];
+		for(int i = 0; i < layers; i ++) {
+			kept[i] = new int[neuronCounts[i]];
+			for(int j = 0; j < neuronCounts[i]; j ++)
+				kept[i][j] = j;
+			weights[i] = new double[i == 0 ? 0 : neuronCounts[i] * neuronCounts[i - 1]];
+			biases[i] = new double[neuronCounts[i]];
+		}
+	}
+
+	/**
+	 * Randomly drops out each hidden neuron with a certain probability. The input and output layers are always kept.
+	 * @param dropoutRate - The probability of a neuron being dropped out
+	 */
+	void drop(double dropoutRate) {
+		for(int i = 1; i < counts.length - 1; i ++) {
+			int count = 0;
+			for(int j = 0; j < neuronCounts[i]; j ++)
+				if(Math.random() > dropoutRate)
+					kept[i][count ++] = j;
+			counts[i] = count;
+		}
+	}
+	/**
+	 * Copies the weights and biases of the kept neurons from the full network.
+	 * @param fullWeights - The weights of the full network
+	 * @param fullBiases - The biases of the full network
+	 */
+	void gather(double[][] fullWeights, double[][] fullBiases) {
+		for(int i = 1; i < counts.length; i ++) {
+			final int[] rows = kept[i], cols = kept[i - 1];
+			final int stride = neuronCounts[i - 1], width = counts[i - 1];
+			final double[] w = weights[i], full = fullWeights[i];
+			for(int j = 0; j < counts[i]; j ++) {
+				final int fullRow = rows[j] * stride, row = j * width;
+				//A layer with nothing dropped before it is a straight copy of each row
+				if(width == stride)
+					System.arraycopy(full, fullRow, w, row, stride);
+				else
+					for(int k = 0; k < width; k ++)
+						w[row + k] = full[fullRow + cols[k]];
+				biases[i][j] = fullBiases[i][rows[j]];
+			}
+		}
+	}
+	/**
+	 * Applies a step of gradient descent with momentum to the kept neurons of the full network, using the summed gradient
+	 * of the sub-network. The weights and biases of dropped neurons, and the weights connecting to them, are not changed.
+	 * @param ws - The workspace the gradient of the sub-network was summed in
+	 * @param fullWeights - The weights of the full network
+	 * @param fullBiases - The biases of the full network
+	 * @param learningRate - The learning rate (eta)
+	 * @param velocity - The velocity of each weight of the full network, or null if momentum is not applied
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 */
+	void scatterUpdate(TrainingWorkspace ws, double[][] fullWeights, double[][] fullBiases, double learningRate, double[][] velocity, double momentumCoefficient) {
+		final int batchSize = ws.count;
+		for(int i = 1; i < counts.length; i ++) {
+			final int[] rows = kept[i], cols = kept[i - 1];
+			final int stride = neuronCounts[i - 1], width = counts[i - 1];
+			final double[] gradient = ws.weightDerivatives[i], w = fullWeights[i];
+			final double[] v = velocity != null ? velocity[i] : null;
+			for(int j = 0; j < counts[i]; j ++) {
+				final int fullRow = rows[j] * stride, row = j * width;
+				//b -> b' = b - eta * gradient
+				fullBiases[i][rows[j]] -= learningRate * (ws.biasDerivatives[i][j] / batchSize);
+				for(int k = 0; k < width; k ++) {
+					final int index = fullRow + cols[k];
+					final double g = gradient[row + k] / batchSize;
+					if(v != null) {
+						//v -> v' = mu * v - eta * gradient
+						v[index] = momentumCoefficient * v[index] - learningRate * g;
+						//w -> w' = w + v
+						w[index] += v[index];
+					}
+					else {
+						//w -> w' = w - eta * gradient
+						w[index] -= learningRate * g;
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package neuralnet.core;
+
+/**
+ * The result of evaluating a ClassificationNeuralNetwork on a data set: the number of samples classified correctly
+ * and a confusion matrix, made in a single pass by evaluateDetailed().<br>
+ * A sample is counted as correct when the network's classification of it equals its getClassification(), as in evaluate().
+ * The confusion matrix is indexed by output neuron instead: element [i][j] is the number of samples whose expected output
+ * is highest at neuron i and whose actual output is highest at neuron j. For a network with one output neuron per class,
+ * this is the usual matrix of actual class against predicted class, and the diagonal holds the correct classifications.
+ */
+public final class Evaluation {
+	final int[][] confusionMatrix;
+	int correct;
+	int total;
+
+	/**
+	 * Creates an empty evaluation.
+	 * @param outputs - The number of output neurons of the network
+	 */
+	Evaluation(int outputs) {
+		confusionMatrix = new int[outputs][outputs];
+	}
+
+	/**
+	 * Adds the counts of another evaluation to this one.
+	 * @param other - The evaluation to add
+	 */
+	void add(Evaluation other) {
+		correct += other.correct;
+		total += other.total;
+		for(int i = 0; i < confusionMatrix.length; i ++)
+			for(int j = 0; j < confusionMatrix.length; j ++)
+				confusionMatrix[i][j] += other.confusionMatrix[i][j];
+	}
+
+	/**
+	 * @return The number of samples classified correctly
+	 */
+	public int getCorrect() {
+		return correct;
+	}
+	/**
+	 * @return The number of samples evaluated. Null elements of the data are not counted.
+	 */
+	public int getTotal() {
+		return total;
+	}
+	/**
+	 * @return The fraction of samples classified correctly, from 0 to 1
+	 */
+	public double getAccuracy() {
+		return total == 0 ? 0 : (double) correct / total;
+	}
+	/**
+	 * Gets the confusion matrix. See the class description for how it is indexed.
+	 * @return The confusion matrix; this is not a copy
+	 */
+	public int[][] getConfusionMatrix() {
+		return confusionMatrix;
+	}
+	/**
+	 * Formats the confusion matrix as a table, with one row per expected output neuron and one column per actual output neuron.
+	 * @return The confusion matrix as a string
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%d/%d (%.2f%%) correctly classified%n", correct, total, getAccuracy() * 100));
+		sb.append(String.format("%6s", ""));
+		for(int j = 0; j < confusionMatrix.length; j ++)
+			sb.append(String.format("%7d", j));
+		sb.append(String.format("%n"));
+		for(int i = 0; i < confusionMatrix.length; i ++) {
+			sb.append(String.format("%6d", i));
+			for(int j = 0; j < confusionMatrix.length; j ++)
+				sb.append(String.format("%7d", confusionMatrix[i][j]));
+			sb.append(String.format("%n"));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,474 @@
+package neuralnet.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A single-precision (float32) version of ClassificationNeuralNetwork.<br>
+ * Weights, biases, activations and the saved file are all 32-bit floats, which halves the memory and disk footprint
+ * of the network and the memory traffic of training and classification, at the cost of precision.
+ * It supports stochastic gradient descent with L2 regularization and momentum; the other training methods
+ * are only available on ClassificationNeuralNetwork, and networks can be converted between the two at any time.
+ * @param <T> - The type of the objects to be classified by this network. Has to implement Classifiable.
+ */
+public class FloatClassificationNeuralNetwork<T extends Classifiable> {
+	/**
+	 * The format version of files saved by this class. It is the same as version 0x01,
+	 * except that every weight and bias is stored as a 4-byte float.
+	 */
+	public static final byte SAVE_FORMAT_VER = 0x02;
+
+	protected int layers;
+	//the number of neurons in each layer
+	protected int[] neuronCounts;
+	//most number of neurons in a layer
+	protected int neuronMax;
+	//Same layout as in ClassificationNeuralNetwork
+	protected float[][] biases;
+	protected float[][] weights;
+	protected ActivationFunction activationFunction;
+	protected CostFunction costFunction;
+	//The fraction of non-zero inputs below which the first layer only visits the non-zero inputs
+	protected double sparseInputThreshold = ClassificationNeuralNetwork.DEFAULT_SPARSE_INPUT_THRESHOLD;
+
+	//Scratch memory for training, reused between mini-batches
+	//Each row of these matrices belongs to one sample
+	private int capacity;
+	private float[][] a, z, e;
+	private float[] y;
+	private float[][] biasDerivatives, weightDerivatives;
+	private SparseRows sparseInput;
+	//Scratch memory for classify() and evaluate(), one for each thread that uses them
+	private final ThreadLocal<ClassifyWorkspace> classifyWorkspaces = new ThreadLocal<ClassifyWorkspace>();
+
+	/**
+	 * Creates a new neural network with the specified structure, activation function and cost function.
+	 * The parameters are initialized the same way as in ClassificationNeuralNetwork.
+	 * @param neuronCounts - The structure of the neural network. Each element represents the number of neurons in
+	 * that layer
+	 * @param activation - The activation function
+	 * @param cost - The cost function
+	 */
+	public FloatClassificationNeuralNetwork(int[] neuronCounts, ActivationFunction activation, CostFunction cost) {
+		Random r = new Random();
+		activationFunction = activation;
+		costFunction = cost;
+		this.layers = neuronCounts.length;
+		this.neuronCounts = neuronCounts.clone();
+		neuronMax = ClassificationNeuralNetwork.getMax(neuronCounts);
+		allocateParameters();
+		for(int i = 1; i < layers; i ++) {
+			for(int j = 0; j < neuronCounts[i]; j ++)
+				biases[i][j] = (float) r.nextGaussian();
+			for(int k = 0; k < weights[i].length; k ++)
+				weights[i][k] = (float) (r.nextGaussian() / Math.sqrt(neuronCounts[i - 1]));
+		}
+	}
+	/**
+	 * Converts a double-precision network to single precision. Every parameter is rounded to the nearest float.
+	 * @param otherNet - The network to convert
+	 */
+	public FloatClassificationNeuralNetwork(final ClassificationNeuralNetwork<?> otherNet) {
+		this.layers = otherNet.layers;
+		this.neuronCounts = otherNet.neuronCounts.clone();
+		this.neuronMax = otherNet.neuronMax;
+		this.activationFunction = otherNet.activationFunction;
+		this.costFunction = otherNet.costFunction;
+		this.sparseInputThreshold = otherNet.sparseInputThreshold;
+		allocateParameters();
+		for(int i = 1; i < layers; i ++) {
+			for(int j = 0; j < neuronCounts[i]; j ++)
+				biases[i][j] = (float) otherNet.biases[i][j];
+			for(int k = 0; k < weights[i].length; k ++)
+				weights[i][k] = (float) otherNet.weights[i][k];
+		}
+	}
+	/**
+	 * Loads a neural network from a file. Double-precision (version 0x01), single-precision (version 0x02)
+	 * and memory-mapped (version 0x03) files are supported; double-precision parameters are rounded to the nearest float.
+	 * For details on activation and cost functions, see ClassificationNeuralNetwork(File f).
+	 * @param f - The file to load from
+	 * @throws IOException If reading the file was not successful
+	 * @throws NeuralNetworkException If the format of the file is not supported
+	 */
+	public FloatClassificationNeuralNetwork(File f) throws IOException, NeuralNetworkException {
+		this(new ClassificationNeuralNetwork<T>(f));
+	}
+
+	private void allocateParameters() {
+		biases = ClassificationNeuralNetwork.createJaggedFloatArray(neuronCounts);
+		int[] sizes = new int[layers];
+		for(int i = 1; i < layers; i ++)
+			sizes[i] = neuronCounts[i] * neuronCounts[i - 1];
+		weights = ClassificationNeuralNetwork.createJaggedFloatArray(sizes);
+	}
+
+	/**
+	 * Converts this network to double precision.
+	 * @return A new ClassificationNeuralNetwork with the same structure, functions and parameters
+	 */
+	public ClassificationNeuralNetwork<T> toDoublePrecision() {
+		ClassificationNeuralNetwork<T> net = new ClassificationNeuralNetwork<T>();
+		net.layers = layers;
+		net.neuronCounts = neuronCounts.clone();
+		net.neuronMax = neuronMax;
+		net.activationFunction = activationFunction;
+		net.costFunction = costFunction;
+		net.sparseInputThreshold = sparseInputThreshold;
+		net.biases = net.createBiasesArray();
+		net.weights = net.createWeightsArray();
+		for(int i = 1; i < layers; i ++) {
+			for(int j = 0; j < neuronCounts[i]; j ++)
+				net.biases[i][j] = biases[i][j];
+			for(int k = 0; k < weights[i].length; k ++)
+				net.weights[i][k] = weights[i][k];
+		}
+		return net;
+	}
+	/**
+	 * Converts a saved double-precision network file to a single-precision one.
+	 * @param src - The file to convert
+	 * @param dest - The file to save the single-precision network in
+	 * @throws IOException If reading or writing was not successful
+	 * @throws NeuralNetworkException If the format of the source file is not supported
+	 */
+	public static void convertFile(File src, File dest) throws IOException, NeuralNetworkException {
+		new FloatClassificationNeuralNetwork<Classifiable>(src).saveData(dest);
+	}
+
+	/**
+	 * Sets the activation function of this neural network.
+	 * @param a - The new activation function
+	 */
+	public void setActivationFunction(ActivationFunction a) {
+		this.activationFunction = a;
+	}
+	/**
+	 * Sets the cost function of this neural network
+	 * @param c - The new cost function
+	 */
+	public void setCostFunction(CostFunction c) {
+		this.costFunction = c;
+	}
+	/**
+	 * Sets the input density below which the first layer uses the sparse path.
+	 * See ClassificationNeuralNetwork.setSparseInputThreshold().
+	 * @param threshold - The threshold, from 0 to 1. 0 disables the sparse path.
+	 */
+	public void setSparseInputThreshold(double threshold) {
+		this.sparseInputThreshold = threshold;
+	}
+
+	/**
+	 * Feedforwards the network with a specified input and returns the "classification" of that input.
+	 * The input is fed forward as a batch of one through the same kernels as evaluate(), using scratch memory kept by
+	 * the calling thread, so nothing is allocated as long as the input overrides writeNeuralNetworkInput(float[], int).
+	 * The output passed to toClassification() is a reused buffer, so toClassification() must not keep it.
+	 * @param obj - The input
+	 * @return The "classification" of the input
+	 */
+	public Object classify(T obj) {
+		final ClassifyWorkspace ws = getClassifyWorkspace();
+		obj.writeNeuralNetworkInput(ws.a[0], 0);
+		feedforward(ws, 1);
+		final float[] output = ws.a[layers - 1];
+		for(int j = 0; j < ws.output.length; j ++)
+			ws.output[j] = output[j];
+		return obj.toClassification(ws.output);
+	}
+	/**
+	 * Classifies each element of the input array and returns the number of items correctly classified.
+	 * The inputs are fed forward ClassificationNeuralNetwork.CLASSIFY_BATCH_SIZE at a time as matrix products,
+	 * with the same results as classify(). Null elements are skipped.
+	 * @param data - An array containing objects to be classified
+	 * @return The number of objects correctly classified
+	 */
+	public int evaluate(T[] data) {
+		final ClassifyWorkspace ws = getClassifyWorkspace();
+		final int inputs = neuronCounts[0];
+		final int outputs = neuronCounts[layers - 1];
+		int total = 0;
+		int n = 0;
+		while(n < data.length) {
+			//Stack the next non-null inputs into the rows of the input matrix
+			int rows = 0;
+			for(; n < data.length && rows < ws.capacity; n ++) {
+				if(data[n] != null) {
+					data[n].writeNeuralNetworkInput(ws.a[0], rows * inputs);
+					ws.samples[rows ++] = n;
+				}
+			}
+			if(rows == 0)
+				break;
+			feedforward(ws, rows);
+			final float[] output = ws.a[layers - 1];
+			for(int r = 0; r < rows; r ++) {
+				for(int j = 0; j < outputs; j ++)
+					ws.output[j] = output[r * outputs + j];
+				final T obj = data[ws.samples[r]];
+				if(obj.toClassification(ws.output).equals(obj.getClassification()))
+					total ++;
+			}
+		}
+		return total;
+	}
+	/**
+	 * Feeds the inputs stacked in the first rows of a classification workspace forward through the network.
+	 * @param ws - The workspace; the output is left in ws.a[layers - 1]
+	 * @param rows - The number of inputs
+	 */
+	private void feedforward(ClassifyWorkspace ws, int rows) {
+		final boolean sparse = stackSparse(rows, ws.a[0], ws.sparseInput);
+		for(int i = 1; i < layers; i ++) {
+			final int count = neuronCounts[i];
+			final float[] a = ws.a[i];
+			if(i == 1 && sparse)
+				LinearAlgebra.multiplyTransposed(rows, count, neuronCounts[0], ws.sparseInput, weights[1], a);
+			else
+				LinearAlgebra.multiplyTransposed(rows, count, neuronCounts[i - 1], ws.a[i - 1], weights[i], a);
+			for(int r = 0; r < rows; r ++)
+				for(int j = 0; j < count; j ++)
+					a[r * count + j] += biases[i][j];
+			activationFunction.activation(a, a, 0, rows * count);
+		}
+	}
+	/**
+	 * Collects the non-zero inputs of a batch, if the sparse path is enabled.
+	 * @param rows - The number of inputs
+	 * @param a0 - The inputs, one row each
+	 * @param sparse - The matrix to store the non-zero inputs in
+	 * @return Whether the fraction of non-zero inputs is below the threshold, so the first layer should use sparse
+	 */
+	private boolean stackSparse(int rows, float[] a0, SparseRows sparse) {
+		if(sparseInputThreshold <= 0)
+			return false;
+		final int inputs = neuronCounts[0];
+		sparse.clear();
+		for(int r = 0; r < rows; r ++)
+			sparse.addRow(a0, r * inputs, inputs);
+		return sparse.nonZeros() < sparseInputThreshold * rows * inputs;
+	}
+	/**
+	 * Gets the calling thread's workspace for classify() and evaluate(), making a new one the first time
+	 * or if the structure of the network has changed.
+	 * @return The workspace
+	 */
+	private ClassifyWorkspace getClassifyWorkspace() {
+		ClassifyWorkspace ws = classifyWorkspaces.get();
+		if(ws == null || !Arrays.equals(ws.neuronCounts, neuronCounts)) {
+			ws = new ClassifyWorkspace(neuronCounts, ClassificationNeuralNetwork.CLASSIFY_BATCH_SIZE);
+			classifyWorkspaces.set(ws);
+		}
+		return ws;
+	}
+	/**
+	 * The scratch memory used by one thread to classify with the network: the activations of each layer
+	 * for a batch of inputs, one row per input, and one row of the output converted to double precision.
+	 */
+	private static final class ClassifyWorkspace {
+		final int[] neuronCounts;
+		final int capacity;
+		final float[][] a;
+		final double[] output;
+		//The index in the data of the input in each row
+		final int[] samples;
+		//The non-zero inputs, for the sparse first layer
+		final SparseRows sparseInput;
+
+		ClassifyWorkspace(int[] neuronCounts, int capacity) {
+			this.neuronCounts = neuronCounts.clone();
+			this.capacity = capacity;
+			a = new float[neuronCounts.length][];
+			for(int i = 0; i < neuronCounts.length; i ++)
+				a[i] = new float[capacity * neuronCounts[i]];
+			output = new double[neuronCounts[neuronCounts.length - 1]];
+			samples = new int[capacity];
+			sparseInput = new SparseRows(capacity, neuronCounts[0], true);
+		}
+	}
+
+	/**
+	 * Stochastic gradient descent using L2 regularization. The performance is evaluated and printed to stdout
+	 * for each epoch, unless evalData is null.
+	 * @param trainingData - The training data
+	 * @param batchSize - The size of each mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param epochs - The number of epochs to train for
+	 * @param evalData - The data to evaluate the network's performance with. Can be null.
+	 */
+	public void SGD(T[] trainingData, int batchSize, double learningRate, double regularizationConstant, int epochs, T[] evalData) {
+		SGD(trainingData, batchSize, learningRate, regularizationConstant, 0, epochs, evalData);
+	}
+	/**
+	 * Performs stochastic gradient descent with L2 regularization, with momentum.<br>
+	 * The performance after each epoch is evaluated and printed to stdout if evalData is not null.
+	 * @param trainingData - The training data
+	 * @param batchSize - The size of each mini-batch
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param momentumCoefficient - The momentum coefficient (mu); a value of 0 indicates no momentum
+	 * @param epochs - The number of epochs to train for
+	 * @param evalData - The data to evaluate the network's performance with. Can be null.
+	 */
+	public void SGD(T[] trainingData, int batchSize, double learningRate, double regularizationConstant, double momentumCoefficient, int epochs, T[] evalData) {
+		float[][] velocity = null;
+		if(momentumCoefficient != 0) {
+			velocity = new float[layers][];
+			for(int i = 0; i < layers; i ++)
+				velocity[i] = new float[weights[i].length];
+		}
+		double maxPercentage = 0.0;
+		int maxEpoch = -1;
+		Permutation order = new Permutation(trainingData.length);
+		for(int epoch = 1; epoch <= epochs; epoch ++) {
+			order.shuffle();
+
+			if(evalData != null) {
+				System.out.println("Epoch #" + epoch);
+				System.out.println("Learning...");
+			}
+
+			//Separate the shuffled training samples into mini-batches and train with each mini-batch
+			for(int i = 0; i < trainingData.length; i += batchSize) {
+				learnFromMiniBatch(trainingData, order.indices, i, Math.min(i + batchSize, trainingData.length),
+						(float) learningRate, (float) regularizationConstant, trainingData.length, velocity, (float) momentumCoefficient);
+			}
+
+			if(evalData != null) {
+				System.out.println("Evaluating...");
+				double percentage = ((double) this.evaluate(evalData)) / evalData.length * 100;
+				System.out.println(percentage + "% correctly classified.");
+				if(percentage > maxPercentage) {
+					maxPercentage = percentage;
+					maxEpoch = epoch;
+				}
+			}
+		}
+		if(evalData != null)
+			System.out.printf("Max classification rate: %f%%, reached at Epoch #%d", maxPercentage, maxEpoch);
+	}
+
+	/**
+	 * Applies a single step of gradient descent with L2 regularization and momentum using samples data[order[from]] to data[order[to - 1]].
+	 * This is the same as ClassificationNeuralNetwork.learnFromMiniBatch(), in single precision.
+	 * @param data - The training data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order, i.e. data[from] to data[to - 1].
+	 * @param from - The start of the mini-batch in order, inclusive
+	 * @param to - The end of the mini-batch in order, exclusive
+	 * @param learningRate - The learning rate (eta)
+	 * @param regularizationConstant - The regularization constant (lambda)
+	 * @param dataSize - The total size of the training data, for L2 regularization.
+	 * @param velocity - A 2-dimensional array in the shape of the weights matrix, or null if momentum is not applied
+	 * @param momentumCoefficient - The momentum coefficient (mu)
+	 */
+	protected void learnFromMiniBatch(T[] data, int[] order, int from, int to, float learningRate, float regularizationConstant, int dataSize, float[][] velocity, float momentumCoefficient) {
+		if(capacity < to - from)
+			allocateWorkspace(to - from);
+		final int outputs = neuronCounts[layers - 1];
+		for(int i = 1; i < layers; i ++) {
+			Arrays.fill(biasDerivatives[i], 0.0f);
+			Arrays.fill(weightDerivatives[i], 0.0f);
+		}
+
+		int rows = 0;
+		for(int n = from; n < to; n ++) {
+			T trainingSample = data[order != null ? order[n] : n];
+			if(trainingSample != null) {
+				trainingSample.writeNeuralNetworkInput(a[0], rows * neuronCounts[0]);
+				trainingSample.writeExpectedOutput(y, rows * outputs);
+				rows ++;
+			}
+		}
+		if(rows == 0)
+			return;
+
+		//Feedforward
+		final boolean sparse = stackSparse(rows, a[0], sparseInput);
+		for(int i = 1; i < layers; i ++) {
+			final int count = neuronCounts[i];
+			if(i == 1 && sparse)
+				LinearAlgebra.multiplyTransposed(rows, count, neuronCounts[0], sparseInput, weights[1], z[1]);
+			else
+				LinearAlgebra.multiplyTransposed(rows, count, neuronCounts[i - 1], a[i - 1], weights[i], z[i]);
+			for(int r = 0; r < rows; r ++)
+				for(int j = 0; j < count; j ++)
+					z[i][r * count + j] += biases[i][j];
+			activationFunction.activation(z[i], a[i], 0, rows * count);
+		}
+		//Calculate error for output layer
+		for(int index = 0; index < rows * outputs; index ++)
+			e[layers - 1][index] = (float) costFunction.costDerivative(y[index], a[layers - 1][index]);
+		activationFunction.multiplyByDerivative(z[layers - 1], a[layers - 1], e[layers - 1], 0, rows * outputs);
+		//Backpropagate
+		for(int i = layers - 2; i >= 1; i --) {
+			LinearAlgebra.multiply(rows, neuronCounts[i], neuronCounts[i + 1], e[i + 1], weights[i + 1], e[i]);
+			activationFunction.multiplyByDerivative(z[i], a[i], e[i], 0, rows * neuronCounts[i]);
+		}
+		//Calculate the weight and bias derivatives
+		for(int i = 1; i < layers; i ++) {
+			final int count = neuronCounts[i];
+			for(int r = 0; r < rows; r ++) {
+				for(int j = 0; j < count; j ++) {
+					biasDerivatives[i][j] += e[i][r * count + j];
+				}
+			}
+			if(i == 1 && sparse)
+				LinearAlgebra.multiplyTransposedAdd(count, neuronCounts[0], rows, e[1], sparseInput, weightDerivatives[1]);
+			else
+				LinearAlgebra.multiplyTransposedAdd(count, neuronCounts[i - 1], rows, e[i], a[i - 1], weightDerivatives[i]);
+		}
+
+		//Update the weights and biases with the average gradient
+		final float scale = learningRate / rows;
+		final float decay = 1 - learningRate * regularizationConstant / dataSize;
+		for(int i = 1; i < layers; i ++) {
+			for(int j = 0; j < neuronCounts[i]; j ++) {
+				//b -> b' = b - eta * gradient
+				biases[i][j] -= scale * biasDerivatives[i][j];
+			}
+			//v -> v' = mu * v - eta * gradient, w -> w' = w * (1 - (eta * lambda / n)) + v
+			//or w -> w' = w * (1 - (eta * lambda / n)) - eta * gradient without momentum
+			Kernels.INSTANCE.update(weights[i], weightDerivatives[i], velocity != null ? velocity[i] : null, weights[i].length,
+					decay, scale, momentumCoefficient);
+		}
+	}
+	private void allocateWorkspace(int capacity) {
+		this.capacity = capacity;
+		a = new float[layers][];
+		z = new float[layers][];
+		e = new float[layers][];
+		for(int i = 0; i < layers; i ++) {
+			a[i] = new float[capacity * neuronCounts[i]];
+			z[i] = new float[capacity * neuronCounts[i]];
+			e[i] = new float[capacity * neuronCounts[i]];
+		}
+		y = new float[capacity * neuronCounts[layers - 1]];
+		sparseInput = new SparseRows(capacity, neuronCounts[0], true);
+		biasDerivatives = ClassificationNeuralNetwork.createJaggedFloatArray(neuronCounts);
+		weightDerivatives = new float[layers][];
+		for(int i = 0; i < layers; i ++)
+			weightDerivatives[i] = new float[weights[i].length];
+	}
+
+	/**
+	 * Saves the network's data in a file with format version 0x02.
+	 * The layout is the same as version 0x01 (see ClassificationNeuralNetwork.saveData()), except every weight and bias is 4 bytes.
+	 * @param f - The file to save the data in. If it does not exist, a new file will be created. Existing files will be overwritten.
+	 * @throws IOException If writing to the file was unsuccessful
+	 */
+	public void saveData(File f) throws IOException {
+		SequentialNetworkFormat.write(f, neuronCounts, activationFunction.getCode(), costFunction.getCode(), weights, biases, SAVE_FORMAT_VER);
+	}
+	/**
+	 * Saves the data of this neural network in the memory-mapped format (version 0x03) with single-precision parameters.
+	 * See ClassificationNeuralNetwork.saveMappedData().
+	 * @param f - The file to save the data in. If it does not exist, a new file will be created. Existing files will be overwritten.
+	 * @throws IOException If writing to the file was unsuccessful
+	 */
+	public void saveMappedData(File f) throws IOException {
+		MappedNetworkFormat.write(f, neuronCounts, activationFunction.getCode(), costFunction.getCode(), weights, biases, MappedNetworkFormat.FLOAT32);
+	}
+}
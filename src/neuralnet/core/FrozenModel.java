@@ -0,0 +1,114 @@
+package neuralnet.core;
+
+/**
+ * The parts shared by the frozen, classification-only copies of a ClassificationNeuralNetwork: InferenceModel,
+ * QuantizedModel and PrunedModel.<br>
+ * A model cannot be changed once made, so it can be shared between any number of threads without synchronization.
+ * Each thread that classifies with a model gets its own scratch memory the first time it does, which is then reused,
+ * so classification does not allocate as long as the input is a ByteClassifiable or overrides writeNeuralNetworkInput(),
+ * and toClassification() does not allocate either.
+ * The activation function is shared by every thread; the pre-defined ones have no state, but a custom one must be thread-safe.
+ * @param <T> - The type of the objects to classify
+ * @param <S> - The type of the scratch memory of one thread
+ */
+abstract class FrozenModel<T extends Classifiable, S> {
+	final int layers;
+	final int[] neuronCounts;
+	final int neuronMax;
+	final ActivationFunction activationFunction;
+	private final ThreadLocal<S> scratch;
+
+	/**
+	 * Copies the structure and activation function of a network.
+	 * @param net - The network the model is made from
+	 * @throws NeuralNetworkException If the network has no activation function
+	 */
+	FrozenModel(ClassificationNeuralNetwork<T> net) throws NeuralNetworkException {
+		if(net.activationFunction == null)
+			throw new NeuralNetworkException("The network has no activation function");
+		layers = net.layers;
+		neuronCounts = net.neuronCounts.clone();
+		neuronMax = ClassificationNeuralNetwork.getMax(neuronCounts);
+		activationFunction = net.activationFunction;
+		//Made the first time each thread classifies, by which time the model is fully constructed
+		scratch = new ThreadLocal<S>() {
+			@Override
+			protected S initialValue() {
+				return newScratch();
+			}
+		};
+	}
+
+	/**
+	 * @return New scratch memory for one thread
+	 */
+	abstract S newScratch();
+	/**
+	 * Feeds an input forward through the model.
+	 * @param obj - The input
+	 * @param s - The scratch memory of the calling thread
+	 * @return The array holding the output of the model in its first neuronCounts[layers - 1] elements;
+	 * this is part of the scratch memory, so it is only valid until the next call
+	 */
+	abstract double[] feedforward(T obj, S s);
+
+	/**
+	 * Classifies an input. The result is generated by calling the toClassification() method of the input with the output
+	 * of the model, which is passed in a scratch buffer that is reused, so toClassification() must not keep it.
+	 * This method can be called by any number of threads at once.
+	 * @param obj - The input
+	 * @return The "classification" of the input
+	 */
+	public Object classify(T obj) {
+		return obj.toClassification(feedforward(obj, scratch.get()));
+	}
+	/**
+	 * Classifies an input by finding the output neuron with the highest activation, without calling toClassification().
+	 * This method can be called by any number of threads at once.
+	 * @param obj - The input
+	 * @return The index of the output neuron with the highest activation
+	 */
+	public int classifyIndex(T obj) {
+		final double[] output = feedforward(obj, scratch.get());
+		int max = 0;
+		for(int j = 1; j < neuronCounts[layers - 1]; j ++)
+			if(output[j] > output[max])
+				max = j;
+		return max;
+	}
+	/**
+	 * Feeds an input forward through the model and copies the output into an array.
+	 * This method can be called by any number of threads at once.
+	 * @param obj - The input
+	 * @param output - The array to copy the activations of the output layer into
+	 */
+	public void feedforward(T obj, double[] output) {
+		System.arraycopy(feedforward(obj, scratch.get()), 0, output, 0, neuronCounts[layers - 1]);
+	}
+	/**
+	 * Classifies each element of the input array and returns the number of items correctly classified.
+	 * This method can be called by any number of threads at once.
+	 * @param data - An array containing objects to be classified
+	 * @return The number of objects correctly classified
+	 */
+	public int evaluate(T[] data) {
+		int total = 0;
+		for(T obj : data)
+			if(classify(obj).equals(obj.getClassification()))
+				total ++;
+		return total;
+	}
+
+	/**
+	 * @return A copy of the number of neurons in each layer
+	 */
+	public int[] getNeuronCounts() {
+		return neuronCounts.clone();
+	}
+	/**
+	 * @return The activation function of the model
+	 */
+	public ActivationFunction getActivationFunction() {
+		return activationFunction;
+	}
+}
@@ -0,0 +1,135 @@
+package neuralnet.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A frozen copy of a trained ClassificationNeuralNetwork, for classification only.<br>
+ * All the weights and biases are copied into one flat array when the model is made, and nothing about the model can be
+ * changed afterwards, so training, copyFrom() or setActivationFunction() on the original network do not affect it.
+ * Every field is final, so a model can be shared between any number of threads without synchronization,
+ * and each thread gets its own scratch buffers (see FrozenModel).
+ * @param <T> - The type of the objects to classify
+ */
+public final class InferenceModel<T extends Classifiable> extends FrozenModel<T, InferenceModel.Scratch> {
+	//The scratch memory of one thread
+	static final class Scratch {
+		//The activations of the layer being computed and of the layer before it
+		final double[] activations;
+		final double[] lastActivations;
+		//The indices of the non-zero inputs
+		final int[] nonZero;
+
+		Scratch(int neuronMax, int inputs) {
+			activations = new double[neuronMax];
+			lastActivations = new double[neuronMax];
+			nonZero = new int[inputs];
+		}
+	}
+
+	//The weights and biases of every layer, one after another; the weights are in the same row-major layout
+	//as in ClassificationNeuralNetwork, and the weights and biases of layer i start at weightOffsets[i] and biasOffsets[i]
+	private final double[] parameters;
+	private final int[] weightOffsets;
+	private final int[] biasOffsets;
+	private final double sparseInputThreshold;
+
+	/**
+	 * Makes a model from a copy of the current weights, biases, activation function and sparse input threshold of a network.
+	 * The network must not be changed by another thread while this runs.
+	 * @param net - The network to copy
+	 * @throws NeuralNetworkException If the network has no activation function
+	 */
+	public InferenceModel(ClassificationNeuralNetwork<T> net) throws NeuralNetworkException {
+		super(net);
+		sparseInputThreshold = net.sparseInputThreshold;
+		weightOffsets = new int[layers];
+		biasOffsets = new int[layers];
+		int size = 0;
+		for(int i = 1; i < layers; i ++) {
+			weightOffsets[i] = size;
+			size += neuronCounts[i] * neuronCounts[i - 1];
+			biasOffsets[i] = size;
+			size += neuronCounts[i];
+		}
+		parameters = new double[size];
+		for(int i = 1; i < layers; i ++) {
+			System.arraycopy(net.weights[i], 0, parameters, weightOffsets[i], net.weights[i].length);
+			System.arraycopy(net.biases[i], 0, parameters, biasOffsets[i], neuronCounts[i]);
+		}
+	}
+	/**
+	 * Loads a model from a file saved by ClassificationNeuralNetwork.
+	 * @param f - The file
+	 * @throws IOException If the file could not be read
+	 * @throws NeuralNetworkException If the file is not a valid network, or its activation function is not one of the pre-defined ones
+	 */
+	public InferenceModel(File f) throws IOException, NeuralNetworkException {
+		this(new ClassificationNeuralNetwork<T>(f));
+	}
+
+	@Override
+	Scratch newScratch() {
+		return new Scratch(neuronMax, neuronCounts[0]);
+	}
+	@Override
+	double[] feedforward(T obj, Scratch s) {
+		double[] lastActivations = s.lastActivations;
+		double[] activations = s.activations;
+		final int inputs = neuronCounts[0];
+		if(obj instanceof ByteClassifiable) {
+			ByteClassifiable byteObj = (ByteClassifiable) obj;
+			final byte[] input = byteObj.getInputBytes();
+			final int offset = byteObj.getInputOffset();
+			final double scale = byteObj.getInputScale();
+			for(int k = 0; k < inputs; k ++)
+				lastActivations[k] = (input[offset + k] & 0xFF) * scale;
+		}
+		else {
+			obj.writeNeuralNetworkInput(lastActivations, 0);
+		}
+		int first = 1;
+		if(sparseInputThreshold > 0 && layers > 1) {
+			//Find the non-zero inputs; if there are few enough, compute the first layer from them only
+			final int[] nonZero = s.nonZero;
+			int count = 0;
+			for(int k = 0; k < inputs; k ++)
+				if(lastActivations[k] != 0)
+					nonZero[count ++] = k;
+			if(count < sparseInputThreshold * inputs) {
+				final int weightOffset = weightOffsets[1], biasOffset = biasOffsets[1];
+				for(int j = 0; j < neuronCounts[1]; j ++) {
+					final int row = weightOffset + j * inputs;
+					double sum = 0;
+					for(int q = 0; q < count; q ++)
+						sum += lastActivations[nonZero[q]] * parameters[row + nonZero[q]];
+					activations[j] = sum + parameters[biasOffset + j];
+				}
+				activationFunction.activation(activations, activations, 0, neuronCounts[1]);
+				//Swap the buffers instead of copying
+				double[] tmp = lastActivations;
+				lastActivations = activations;
+				activations = tmp;
+				first = 2;
+			}
+		}
+		for(int i = first; i < layers; i ++) {
+			final int count = neuronCounts[i], width = neuronCounts[i - 1];
+			final int weightOffset = weightOffsets[i], biasOffset = biasOffsets[i];
+			int j = 0;
+			//4 neurons at a time, so the activations of the last layer are read once for every 4 rows of weights
+			for(; j + 4 <= count; j += 4) {
+				for(int q = 0; q < 4; q ++)
+					activations[j + q] = parameters[biasOffset + j + q];
+				Kernels.INSTANCE.dot4(lastActivations, 0, parameters, weightOffset + j * width, width, width, activations, j);
+			}
+			for(; j < count; j ++)
+				activations[j] = Kernels.INSTANCE.dot(lastActivations, 0, parameters, weightOffset + j * width, width) + parameters[biasOffset + j];
+			activationFunction.activation(activations, activations, 0, count);
+			double[] tmp = lastActivations;
+			lastActivations = activations;
+			activations = tmp;
+		}
+		return lastActivations;
+	}
+}
@@ -0,0 +1,59 @@
+package neuralnet.core;
+
+/**
+ * The inputs and expected outputs of a batch of samples, stacked into rows by ClassificationNeuralNetwork.stackInputs()
+ * so that they are ready for the matrix products of the forward and backward passes.<br>
+ * Every TrainingWorkspace has one, which the first layer reads from. Batches can also be filled ahead of time by the
+ * producer threads of an input pipeline, and are then swapped into a workspace with TrainingWorkspace.setInput(),
+ * exchanging buffers instead of copying them.
+ */
+final class InputBatch {
+	//The number of samples this batch can hold
+	final int capacity;
+	//The number of inputs of each sample
+	final int inputs;
+	//The inputs as doubles, used as the activations of the input layer when not all samples are ByteClassifiables
+	final double[] a0;
+	//Expected outputs
+	final double[] y;
+	//The inputs as unsigned bytes and the scale of each row, used instead of a0 when the samples are ByteClassifiables
+	final byte[] inputBytes;
+	final double[] inputScales;
+	//The non-zero inputs, used in the first layer when the inputs are sparse enough
+	final SparseRows sparseInput;
+	//The samples stacked into the rows: their number, their indices in the data,
+	//whether their inputs are in inputBytes instead of a0, and whether the first layer should use sparseInput
+	int rows;
+	final int[] samples;
+	boolean byteInput;
+	boolean sparse;
+
+	/**
+	 * Creates an empty batch.
+	 * @param inputs - The number of neurons in the input layer
+	 * @param outputs - The number of neurons in the output layer
+	 * @param capacity - The number of samples the batch can hold
+	 */
+	InputBatch(int inputs, int outputs, int capacity) {
+		this.capacity = capacity;
+		this.inputs = inputs;
+		a0 = new double[capacity * inputs];
+		y = new double[capacity * outputs];
+		inputBytes = new byte[capacity * inputs];
+		inputScales = new double[capacity];
+		sparseInput = new SparseRows(capacity, inputs);
+		samples = new int[capacity];
+	}
+
+	/**
+	 * Converts the first rows of inputBytes to doubles and stores them in a0.
+	 * @param rows - The number of rows to convert
+	 */
+	void convertInputBytes(int rows) {
+		for(int r = 0; r < rows; r ++) {
+			final double scale = inputScales[r];
+			for(int k = r * inputs; k < (r + 1) * inputs; k ++)
+				a0[k] = (inputBytes[k] & 0xFF) * scale;
+		}
+	}
+}
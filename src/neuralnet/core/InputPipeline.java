@@ -0,0 +1,221 @@
+package neuralnet.core;
+
+/**
+ * Prepares the mini-batches of an epoch on background threads while the network trains on the calling thread.<br>
+ * Producer threads stack the inputs and expected outputs of the upcoming mini-batches (see ClassificationNeuralNetwork.stackInputs())
+ * into a ring of InputBatches, a few mini-batches ahead of the trainer. The trainer takes the mini-batches in order and
+ * swaps each prepared batch into a workspace, giving the workspace's old batch back to the ring to be filled again,
+ * so no inputs are copied and nothing is allocated after the ring has been made.<br>
+ * The ring is divided into slots, each holding a group of consecutive mini-batches, so that small mini-batches are
+ * handed over a group at a time. Each mini-batch has one part for every workspace it is split across, split the same way
+ * as the GradientTask tree splits it. A slot is only refilled once the trainer has moved past it.
+ */
+final class InputPipeline<T extends Classifiable> {
+	//Each slot holds mini-batches until it has at least this many samples
+	static final int GROUP_SAMPLES = 128;
+
+	final ClassificationNeuralNetwork<T> net;
+	//The workspaces the batches are swapped into
+	final TrainingWorkspace[] workspaces;
+	//The number of parts of each mini-batch, the number of mini-batches in each slot and the number of producer threads
+	final int parts, group, producerCount;
+	//slots[s][m][p] is part p of mini-batch m of slot s
+	final InputBatch[][][] slots;
+	//The number of the group each slot was last filled with, or -1
+	final int[] ready;
+
+	//The epoch being prepared
+	T[] data;
+	int[] order;
+	int batchSize;
+	int batches, groups;
+	//The next group to be claimed by a producer, and the number of groups the trainer is done with
+	int claimed, released;
+	//The position of the trainer: the next mini-batch, and the group it is in
+	int nextBatch;
+	boolean stopped;
+	Throwable error;
+	Thread[] producers;
+
+	/**
+	 * Creates a pipeline and its ring of batches.
+	 * @param net - The network being trained
+	 * @param workspaces - The workspaces the batches will be swapped into
+	 * @param parts - The number of parts each mini-batch is split into, one for each workspace used
+	 * @param batchSize - The size of each mini-batch
+	 * @param producerCount - The number of producer threads
+	 */
+	InputPipeline(ClassificationNeuralNetwork<T> net, TrainingWorkspace[] workspaces, int parts, int batchSize, int producerCount) {
+		this.net = net;
+		this.workspaces = workspaces;
+		this.parts = parts;
+		this.group = Math.max(1, GROUP_SAMPLES / batchSize);
+		this.producerCount = producerCount;
+		//Enough slots for every producer to be filling one while the trainer uses another and the next one waits
+		final int depth = producerCount + 2;
+		final int[] counts = workspaces[0].neuronCounts;
+		final int capacity = workspaces[0].capacity;
+		slots = new InputBatch[depth][group][parts];
+		for(int s = 0; s < depth; s ++)
+			for(int m = 0; m < group; m ++)
+				for(int p = 0; p < parts; p ++)
+					slots[s][m][p] = new InputBatch(counts[0], counts[counts.length - 1], capacity);
+		ready = new int[depth];
+	}
+
+	/**
+	 * Checks whether this pipeline can be used for an epoch.
+	 * @param workspaces - The workspaces that will be trained with
+	 * @param parts - The number of parts each mini-batch is split into
+	 * @param batchSize - The size of each mini-batch
+	 * @param producerCount - The number of producer threads
+	 * @return Whether this pipeline fits
+	 */
+	boolean fits(TrainingWorkspace[] workspaces, int parts, int batchSize, int producerCount) {
+		return this.workspaces == workspaces && this.parts == parts && this.producerCount == producerCount
+				&& group == Math.max(1, GROUP_SAMPLES / batchSize);
+	}
+
+	/**
+	 * Starts preparing the mini-batches of data[order[0]] to data[order[data.length - 1]] on new producer threads.
+	 * The order must not be changed until stop() is called.
+	 * @param data - The training data
+	 * @param order - The order to take samples from data in. If null, samples are taken in order.
+	 * @param batchSize - The size of each mini-batch; must be the same as the one given to the constructor
+	 */
+	void start(T[] data, int[] order, int batchSize) {
+		this.data = data;
+		this.order = order;
+		this.batchSize = batchSize;
+		batches = (data.length + batchSize - 1) / batchSize;
+		groups = (batches + group - 1) / group;
+		claimed = released = nextBatch = 0;
+		stopped = false;
+		error = null;
+		for(int s = 0; s < ready.length; s ++)
+			ready[s] = -1;
+		producers = new Thread[producerCount];
+		for(int t = 0; t < producerCount; t ++) {
+			producers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						produce();
+					}
+					catch(Throwable e) {
+						synchronized(InputPipeline.this) {
+							if(error == null)
+								error = e;
+							InputPipeline.this.notifyAll();
+						}
+					}
+				}
+			}, "Input prefetch #" + t);
+			producers[t].setDaemon(true);
+			producers[t].start();
+		}
+	}
+
+	/**
+	 * The loop of a producer thread: claims the next group whose slot is free and fills it, until every group is claimed.
+	 * @throws InterruptedException If the thread was interrupted while waiting for a free slot
+	 */
+	void produce() throws InterruptedException {
+		final int inputs = workspaces[0].neuronCounts[0];
+		final int outputs = workspaces[0].neuronCounts[workspaces[0].neuronCounts.length - 1];
+		while(true) {
+			int g;
+			synchronized(this) {
+				//The slot of group g is free once the trainer has released group g - depth
+				while(!stopped && claimed < groups && claimed - released >= slots.length)
+					wait();
+				if(stopped || claimed >= groups)
+					return;
+				g = claimed ++;
+			}
+			final InputBatch[][] slot = slots[g % slots.length];
+			for(int m = 0; m < group; m ++) {
+				final int from = (g * group + m) * batchSize;
+				if(from >= data.length)
+					break;
+				final int to = Math.min(from + batchSize, data.length);
+				//Mini-batches of one sample are not split (see ClassificationNeuralNetwork.learnFromMiniBatch())
+				if(parts == 1 || to - from == 1)
+					net.stackInputs(data, order, from, to, slot[m][0], inputs, outputs);
+				else
+					stack(from, to, 0, parts, slot[m], inputs, outputs);
+			}
+			synchronized(this) {
+				ready[g % slots.length] = g;
+				notifyAll();
+			}
+		}
+	}
+	/**
+	 * Stacks a range of samples into the parts first to last - 1, splitting it the same way as the GradientTask tree does.
+	 */
+	void stack(int from, int to, int first, int last, InputBatch[] batch, int inputs, int outputs) {
+		if(last - first == 1) {
+			net.stackInputs(data, order, from, to, batch[first], inputs, outputs);
+			return;
+		}
+		final int mid = (first + last) >>> 1;
+		final int split = ClassificationNeuralNetwork.splitBatch(from, to, mid - first, last - first);
+		stack(from, split, first, mid, batch, inputs, outputs);
+		stack(split, to, mid, last, batch, inputs, outputs);
+	}
+
+	/**
+	 * Gets the next mini-batch, waiting for it to be prepared if needed. Getting it releases the group of the one before,
+	 * if it was the last of its group, so the batches of the mini-batches before must no longer be in use.
+	 * The parts can be swapped with the batches of workspaces, as long as each swapped-out batch is put back in its place.
+	 * @return The parts of the mini-batch
+	 */
+	InputBatch[] next() {
+		final int g = nextBatch / group;
+		synchronized(this) {
+			if(nextBatch % group == 0 && g > 0) {
+				released = g;
+				notifyAll();
+			}
+			try {
+				while(ready[g % slots.length] != g && error == null)
+					wait();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the next mini-batch", e);
+			}
+			if(error != null)
+				throw new IllegalStateException("Failed to prepare a mini-batch", error);
+		}
+		return slots[g % slots.length][nextBatch ++ % group];
+	}
+
+	/**
+	 * Stops the producer threads and waits for them to finish. Must be called after every start(), even if not every
+	 * mini-batch was taken.
+	 */
+	void stop() {
+		synchronized(this) {
+			stopped = true;
+			notifyAll();
+		}
+		boolean interrupted = false;
+		for(Thread producer : producers) {
+			while(true) {
+				try {
+					producer.join();
+					break;
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		data = null;
+		order = null;
+	}
+}
@@ -0,0 +1,57 @@
+package neuralnet.core;
+
+/**
+ * A table of the values of a function at evenly spaced points, for approximating the function by linear interpolation.<br>
+ * Used by the approximate activation functions. The error of linear interpolation between points h apart is at most
+ * h<sup>2</sup> / 8 times the largest absolute value of the second derivative of the function in the range.
+ */
+final class InterpolationTable {
+	final double min;
+	final double max;
+	//The number of points per unit, i.e. 1 / h
+	final double scale;
+	final int intervals;
+	//values[i] is the function at min + i / scale
+	final double[] values;
+	//slopes[i] = values[i + 1] - values[i], so that interpolation needs one load of each
+	final double[] slopes;
+
+	/**
+	 * Tabulates a function.
+	 * @param function - The function to tabulate; only activation(double) is used
+	 * @param min - The start of the range of the table
+	 * @param max - The end of the range of the table
+	 * @param intervals - The number of intervals to divide the range into
+	 */
+	InterpolationTable(ActivationFunction function, double min, double max, int intervals) {
+		this.min = min;
+		this.max = max;
+		this.intervals = intervals;
+		scale = intervals / (max - min);
+		values = new double[intervals + 1];
+		slopes = new double[intervals + 1];
+		for(int i = 0; i <= intervals; i ++)
+			values[i] = function.activation(min + i / scale);
+		for(int i = 0; i < intervals; i ++)
+			slopes[i] = values[i + 1] - values[i];
+	}
+
+	/**
+	 * Whether a value is in the range of the table. NaN is not.
+	 * @param z - The value
+	 * @return Whether z can be passed to get()
+	 */
+	boolean contains(double z) {
+		return z >= min && z < max;
+	}
+	/**
+	 * Gets the interpolated value of the function. z must be in the range of the table (see contains()).
+	 * @param z - The value
+	 * @return The approximate value of the function at z
+	 */
+	double get(double z) {
+		final double x = (z - min) * scale;
+		final int i = (int) x;
+		return values[i] + (x - i) * slopes[i];
+	}
+}
@@ -0,0 +1,76 @@
+package neuralnet.core;
+
+/**
+ * The innermost loops of training and classification: dot products, the accumulation of outer products
+ * and the momentum/L2 weight update.<br>
+ * Two implementations exist. ScalarKernels uses plain loops and is always available. VectorKernels uses the
+ * incubating Java Vector API (jdk.incubator.vector) to use the SIMD instructions of the CPU; it is in the separate
+ * src-vector source folder since it has to be compiled and run with <em>--add-modules jdk.incubator.vector</em>.
+ * The vector kernels are picked automatically when both the class and the module are present, unless the
+ * system property <em>neuralnet.kernels</em> is set to <em>scalar</em>.<br>
+ * <br>
+ * Tolerance: axpy(), multiplyAdd4() and update() do the same operations in the same order in both implementations,
+ * so their results are identical. dot() and dot4() sum in a different order when vectorized, so they may differ
+ * from the scalar results by at most len * 2<sup>-52</sup> * sum(|a[i] * b[i]|), which for typical layers is
+ * below 1e-13 relative to the magnitude of the terms. The same holds for the single-precision kernels, with 2<sup>-23</sup>
+ * in place of 2<sup>-52</sup>.
+ */
+abstract class Kernels {
+	//The kernels in use
+	static final Kernels INSTANCE = load();
+
+	static Kernels load() {
+		if(!"scalar".equals(System.getProperty("neuralnet.kernels"))
+				&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (Kernels) Class.forName("neuralnet.core.VectorKernels").getDeclaredConstructor().newInstance();
+			}
+			catch(ReflectiveOperationException | LinkageError e) {
+				//The vector kernels were not compiled in; fall back to the scalar ones
+			}
+		}
+		return new ScalarKernels();
+	}
+
+	/**
+	 * @return The name of these kernels, for printing
+	 */
+	abstract String name();
+	/**
+	 * @return The fraction of non-zero inputs below which skipping the zero inputs of the first layer is faster than
+	 * using these kernels on all the inputs, as measured with SparseInputBenchmark
+	 */
+	abstract double sparseInputThreshold();
+	/**
+	 * Computes the dot product of a[aOffset..aOffset + len) and b[bOffset..bOffset + len).
+	 */
+	abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int len);
+	/**
+	 * Computes the dot products of a[aOffset..aOffset + len) with 4 consecutive rows of b, which start at
+	 * bOffset and are stride apart, and adds them to out[outOffset] to out[outOffset + 3].
+	 */
+	abstract void dot4(double[] a, int aOffset, double[] b, int bOffset, int stride, int len, double[] out, int outOffset);
+	/**
+	 * Adds alpha * x[xOffset..xOffset + len) to y[yOffset..yOffset + len).
+	 */
+	abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int len);
+	/**
+	 * Adds x0 * b[row 0] + x1 * b[row 1] + x2 * b[row 2] + x3 * b[row 3] to c[cOffset..cOffset + len),
+	 * where row r of b starts at bOffset + r * stride. This accumulates 4 outer products at a time.
+	 */
+	abstract void multiplyAdd4(double x0, double x1, double x2, double x3, double[] b, int bOffset, int stride, double[] c, int cOffset, int len);
+	/**
+	 * Applies the gradient descent update to the first len weights of w, in one pass:<br>
+	 * v -> v' = mu * v - eta * gradient and w -> w' = w * decay + v' if velocity is not null, or<br>
+	 * w -> w' = w * decay - eta * gradient if it is.
+	 */
+	abstract void update(double[] w, double[] gradient, double[] velocity, int len, double decay, double learningRate, double momentumCoefficient);
+
+	//Single-precision versions of the kernels above, used by FloatClassificationNeuralNetwork
+	//The vector versions process twice as many floats as doubles at a time
+	abstract float dot(float[] a, int aOffset, float[] b, int bOffset, int len);
+	abstract void dot4(float[] a, int aOffset, float[] b, int bOffset, int stride, int len, float[] out, int outOffset);
+	abstract void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int len);
+	abstract void multiplyAdd4(float x0, float x1, float x2, float x3, float[] b, int bOffset, int stride, float[] c, int cOffset, int len);
+	abstract void update(float[] w, float[] gradient, float[] velocity, int len, float decay, float learningRate, float momentumCoefficient);
+}
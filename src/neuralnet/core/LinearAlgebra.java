@@ -0,0 +1,310 @@
+package neuralnet.core;
+
+import java.util.Arrays;
+
+/**
+ * Cache-blocked matrix multiplication kernels used by the batched training engine.<br>
+ * All matrices are flat row-major double (or float, for the single-precision versions) arrays. Each product is computed a block at a time so that the block of the
+ * right-hand matrix being worked on stays in cache while every row of the left-hand matrix is streamed past it,
+ * instead of re-reading the whole matrix from memory once per row. The inner loops work on 4 rows at a time to cut
+ * down on loads and stores. The inner loops are done by Kernels, so they are vectorized when possible.
+ */
+final class LinearAlgebra {
+	//The number of rows of the right-hand matrix that are kept in cache at a time
+	static final int ROW_BLOCK = 32;
+	//The number of columns that are kept in cache at a time
+	static final int COL_BLOCK = 256;
+	
+	static final Kernels KERNELS = Kernels.INSTANCE;
+
+	private LinearAlgebra() {
+	}
+
+	/**
+	 * Computes C = A * B<sup>T</sup>, overwriting C.
+	 * This is the forward pass of a layer, with A being the activations of the batch and B being the weights.
+	 * @param m - The number of rows of A and C
+	 * @param n - The number of rows of B and the number of columns of C
+	 * @param k - The number of columns of A and B
+	 * @param a - An m x k matrix
+	 * @param b - An n x k matrix
+	 * @param c - An m x n matrix to store the result in
+	 */
+	static void multiplyTransposed(final int m, final int n, final int k, final double[] a, final double[] b, final double[] c) {
+		Arrays.fill(c, 0, m * n, 0.0);
+		for(int kb = 0; kb < k; kb += COL_BLOCK) {
+			final int len = Math.min(kb + COL_BLOCK, k) - kb;
+			for(int jb = 0; jb < n; jb += ROW_BLOCK) {
+				final int jEnd = Math.min(jb + ROW_BLOCK, n);
+				for(int i = 0; i < m; i ++) {
+					final int aRow = i * k + kb;
+					final int cRow = i * n;
+					int j = jb;
+					for(; j + 3 < jEnd; j += 4)
+						KERNELS.dot4(a, aRow, b, j * k + kb, k, len, c, cRow + j);
+					for(; j < jEnd; j ++)
+						c[cRow + j] += KERNELS.dot(a, aRow, b, j * k + kb, len);
+				}
+			}
+		}
+	}
+	/**
+	 * Computes C = A * B, overwriting C.
+	 * This is the backpropagation of errors through a layer, with A being the errors of the next layer and B being its weights.
+	 * @param m - The number of rows of A and C
+	 * @param n - The number of columns of B and C
+	 * @param k - The number of columns of A and the number of rows of B
+	 * @param a - An m x k matrix
+	 * @param b - A k x n matrix
+	 * @param c - An m x n matrix to store the result in
+	 */
+	static void multiply(final int m, final int n, final int k, final double[] a, final double[] b, final double[] c) {
+		Arrays.fill(c, 0, m * n, 0.0);
+		for(int pb = 0; pb < k; pb += ROW_BLOCK) {
+			final int pEnd = Math.min(pb + ROW_BLOCK, k);
+			for(int jb = 0; jb < n; jb += COL_BLOCK) {
+				final int jEnd = Math.min(jb + COL_BLOCK, n);
+				for(int i = 0; i < m; i ++) {
+					final int aRow = i * k;
+					final int cRow = i * n;
+					int p = pb;
+					for(; p + 3 < pEnd; p += 4)
+						KERNELS.multiplyAdd4(a[aRow + p], a[aRow + p + 1], a[aRow + p + 2], a[aRow + p + 3], b, p * n + jb, n, c, cRow + jb, jEnd - jb);
+					for(; p < pEnd; p ++)
+						KERNELS.axpy(a[aRow + p], b, p * n + jb, c, cRow + jb, jEnd - jb);
+				}
+			}
+		}
+	}
+	/**
+	 * Computes C = C + A<sup>T</sup> * B.
+	 * This is the sum of the outer products of the errors and activations over a batch, i.e. the weight gradient of a layer,
+	 * with A being the errors of the layer and B being the activations of the layer before it.
+	 * @param m - The number of columns of A and the number of rows of C
+	 * @param n - The number of columns of B and C
+	 * @param k - The number of rows of A and B
+	 * @param a - A k x m matrix
+	 * @param b - A k x n matrix
+	 * @param c - An m x n matrix to add the result to
+	 */
+	static void multiplyTransposedAdd(final int m, final int n, final int k, final double[] a, final double[] b, final double[] c) {
+		for(int jb = 0; jb < n; jb += COL_BLOCK) {
+			final int jEnd = Math.min(jb + COL_BLOCK, n);
+			for(int i = 0; i < m; i ++) {
+				final int cRow = i * n;
+				int p = 0;
+				for(; p + 3 < k; p += 4)
+					KERNELS.multiplyAdd4(a[p * m + i], a[(p + 1) * m + i], a[(p + 2) * m + i], a[(p + 3) * m + i], b, p * n + jb, n, c, cRow + jb, jEnd - jb);
+				for(; p < k; p ++)
+					KERNELS.axpy(a[p * m + i], b, p * n + jb, c, cRow + jb, jEnd - jb);
+			}
+		}
+	}
+	/**
+	 * Computes C = diag(scale) * A * B<sup>T</sup>, overwriting C, where A is a matrix of unsigned bytes.
+	 * This is the forward pass of the first layer when the inputs are bytes; row i of A is multiplied by scale[i].<br>
+	 * A is converted to doubles one block of columns at a time, as the block is needed, into a small buffer that stays in cache,
+	 * so A is never stored as doubles in full.
+	 * @param m - The number of rows of A and C
+	 * @param n - The number of rows of B and the number of columns of C
+	 * @param k - The number of columns of A and B
+	 * @param a - An m x k matrix of unsigned bytes
+	 * @param scale - The scale of each row of A
+	 * @param b - An n x k matrix
+	 * @param c - An m x n matrix to store the result in
+	 * @param buffer - An array of at least m * COL_BLOCK elements to convert A into
+	 */
+	static void multiplyTransposed(final int m, final int n, final int k, final byte[] a, final double[] scale, final double[] b, final double[] c, final double[] buffer) {
+		Arrays.fill(c, 0, m * n, 0.0);
+		for(int kb = 0; kb < k; kb += COL_BLOCK) {
+			final int len = Math.min(kb + COL_BLOCK, k) - kb;
+			convertBlock(m, k, kb, len, a, scale, buffer);
+			for(int jb = 0; jb < n; jb += ROW_BLOCK) {
+				final int jEnd = Math.min(jb + ROW_BLOCK, n);
+				for(int i = 0; i < m; i ++) {
+					final int aRow = i * len;
+					final int cRow = i * n;
+					int j = jb;
+					for(; j + 3 < jEnd; j += 4)
+						KERNELS.dot4(buffer, aRow, b, j * k + kb, k, len, c, cRow + j);
+					for(; j < jEnd; j ++)
+						c[cRow + j] += KERNELS.dot(buffer, aRow, b, j * k + kb, len);
+				}
+			}
+		}
+	}
+	/**
+	 * Computes C = C + A<sup>T</sup> * diag(scale) * B, where B is a matrix of unsigned bytes.
+	 * This is the weight gradient of the first layer when the inputs are bytes; row p of B is multiplied by scale[p].
+	 * B is converted a block of columns at a time like in the byte version of multiplyTransposed().
+	 * @param m - The number of columns of A and the number of rows of C
+	 * @param n - The number of columns of B and C
+	 * @param k - The number of rows of A and B
+	 * @param a - A k x m matrix
+	 * @param b - A k x n matrix of unsigned bytes
+	 * @param scale - The scale of each row of B
+	 * @param c - An m x n matrix to add the result to
+	 * @param buffer - An array of at least k * COL_BLOCK elements to convert B into
+	 */
+	static void multiplyTransposedAdd(final int m, final int n, final int k, final double[] a, final byte[] b, final double[] scale, final double[] c, final double[] buffer) {
+		for(int jb = 0; jb < n; jb += COL_BLOCK) {
+			final int len = Math.min(jb + COL_BLOCK, n) - jb;
+			convertBlock(k, n, jb, len, b, scale, buffer);
+			for(int i = 0; i < m; i ++) {
+				final int cRow = i * n;
+				int p = 0;
+				for(; p + 3 < k; p += 4)
+					KERNELS.multiplyAdd4(a[p * m + i], a[(p + 1) * m + i], a[(p + 2) * m + i], a[(p + 3) * m + i], buffer, p * len, len, c, cRow + jb, len);
+				for(; p < k; p ++)
+					KERNELS.axpy(a[p * m + i], buffer, p * len, c, cRow + jb, len);
+			}
+		}
+	}
+	/**
+	 * Computes C = A * B<sup>T</sup>, overwriting C, where A is a sparse matrix.
+	 * This is the forward pass of the first layer when most of the inputs are 0; only the non-zero inputs are visited.
+	 * @param m - The number of rows of A and C
+	 * @param n - The number of rows of B and the number of columns of C
+	 * @param k - The number of columns of A and B
+	 * @param a - An m x k sparse matrix
+	 * @param b - An n x k matrix
+	 * @param c - An m x n matrix to store the result in
+	 */
+	static void multiplyTransposed(final int m, final int n, final int k, final SparseRows a, final double[] b, final double[] c) {
+		final int[] rowStart = a.rowStart, indices = a.indices;
+		final double[] values = a.values;
+		for(int jb = 0; jb < n; jb += ROW_BLOCK) {
+			final int jEnd = Math.min(jb + ROW_BLOCK, n);
+			for(int i = 0; i < m; i ++) {
+				final int start = rowStart[i], end = rowStart[i + 1];
+				for(int j = jb; j < jEnd; j ++) {
+					final int bRow = j * k;
+					double sum = 0;
+					for(int q = start; q < end; q ++)
+						sum += values[q] * b[bRow + indices[q]];
+					c[i * n + j] = sum;
+				}
+			}
+		}
+	}
+	/**
+	 * Computes C = C + A<sup>T</sup> * B, where B is a sparse matrix.
+	 * This is the weight gradient of the first layer when most of the inputs are 0; only the non-zero inputs are visited.
+	 * @param m - The number of columns of A and the number of rows of C
+	 * @param n - The number of columns of B and C
+	 * @param k - The number of rows of A and B
+	 * @param a - A k x m matrix
+	 * @param b - A k x n sparse matrix
+	 * @param c - An m x n matrix to add the result to
+	 */
+	static void multiplyTransposedAdd(final int m, final int n, final int k, final double[] a, final SparseRows b, final double[] c) {
+		final int[] rowStart = b.rowStart, indices = b.indices;
+		final double[] values = b.values;
+		for(int i = 0; i < m; i ++) {
+			final int cRow = i * n;
+			for(int p = 0; p < k; p ++) {
+				final double x = a[p * m + i];
+				final int end = rowStart[p + 1];
+				for(int q = rowStart[p]; q < end; q ++)
+					c[cRow + indices[q]] += x * values[q];
+			}
+		}
+	}
+	/**
+	 * Converts columns from to from + len of an m x n matrix of unsigned bytes to doubles, multiplying row i by scale[i].
+	 * The result is stored in out as an m x len matrix.
+	 */
+	static void convertBlock(final int m, final int n, final int from, final int len, final byte[] a, final double[] scale, final double[] out) {
+		for(int i = 0; i < m; i ++) {
+			final double s = scale[i];
+			final int aRow = i * n + from;
+			final int outRow = i * len;
+			for(int p = 0; p < len; p ++)
+				out[outRow + p] = (a[aRow + p] & 0xFF) * s;
+		}
+	}
+	//Single-precision version of multiplyTransposed()
+	static void multiplyTransposed(final int m, final int n, final int k, final float[] a, final float[] b, final float[] c) {
+		Arrays.fill(c, 0, m * n, 0.0f);
+		for(int kb = 0; kb < k; kb += COL_BLOCK) {
+			final int len = Math.min(kb + COL_BLOCK, k) - kb;
+			for(int jb = 0; jb < n; jb += ROW_BLOCK) {
+				final int jEnd = Math.min(jb + ROW_BLOCK, n);
+				for(int i = 0; i < m; i ++) {
+					final int aRow = i * k + kb;
+					final int cRow = i * n;
+					int j = jb;
+					for(; j + 3 < jEnd; j += 4)
+						KERNELS.dot4(a, aRow, b, j * k + kb, k, len, c, cRow + j);
+					for(; j < jEnd; j ++)
+						c[cRow + j] += KERNELS.dot(a, aRow, b, j * k + kb, len);
+				}
+			}
+		}
+	}
+	//Single-precision version of multiply()
+	static void multiply(final int m, final int n, final int k, final float[] a, final float[] b, final float[] c) {
+		Arrays.fill(c, 0, m * n, 0.0f);
+		for(int pb = 0; pb < k; pb += ROW_BLOCK) {
+			final int pEnd = Math.min(pb + ROW_BLOCK, k);
+			for(int jb = 0; jb < n; jb += COL_BLOCK) {
+				final int jEnd = Math.min(jb + COL_BLOCK, n);
+				for(int i = 0; i < m; i ++) {
+					final int aRow = i * k;
+					final int cRow = i * n;
+					int p = pb;
+					for(; p + 3 < pEnd; p += 4)
+						KERNELS.multiplyAdd4(a[aRow + p], a[aRow + p + 1], a[aRow + p + 2], a[aRow + p + 3], b, p * n + jb, n, c, cRow + jb, jEnd - jb);
+					for(; p < pEnd; p ++)
+						KERNELS.axpy(a[aRow + p], b, p * n + jb, c, cRow + jb, jEnd - jb);
+				}
+			}
+		}
+	}
+	//Single-precision version of multiplyTransposedAdd()
+	static void multiplyTransposedAdd(final int m, final int n, final int k, final float[] a, final float[] b, final float[] c) {
+		for(int jb = 0; jb < n; jb += COL_BLOCK) {
+			final int jEnd = Math.min(jb + COL_BLOCK, n);
+			for(int i = 0; i < m; i ++) {
+				final int cRow = i * n;
+				int p = 0;
+				for(; p + 3 < k; p += 4)
+					KERNELS.multiplyAdd4(a[p * m + i], a[(p + 1) * m + i], a[(p + 2) * m + i], a[(p + 3) * m + i], b, p * n + jb, n, c, cRow + jb, jEnd - jb);
+				for(; p < k; p ++)
+					KERNELS.axpy(a[p * m + i], b, p * n + jb, c, cRow + jb, jEnd - jb);
+			}
+		}
+	}
+	//Single-precision version of multiplyTransposed() for a sparse A
+	static void multiplyTransposed(final int m, final int n, final int k, final SparseRows a, final float[] b, final float[] c) {
+		final int[] rowStart = a.rowStart, indices = a.indices;
+		final float[] values = a.floatValues;
+		for(int jb = 0; jb < n; jb += ROW_BLOCK) {
+			final int jEnd = Math.min(jb + ROW_BLOCK, n);
+			for(int i = 0; i < m; i ++) {
+				final int start = rowStart[i], end = rowStart[i + 1];
+				for(int j = jb; j < jEnd; j ++) {
+					final int bRow = j * k;
+					float sum = 0;
+					for(int q = start; q < end; q ++)
+						sum += values[q] * b[bRow + indices[q]];
+					c[i * n + j] = sum;
+				}
+			}
+		}
+	}
+	//Single-precision version of multiplyTransposedAdd() for a sparse B
+	static void multiplyTransposedAdd(final int m, final int n, final int k, final float[] a, final SparseRows b, final float[] c) {
+		final int[] rowStart = b.rowStart, indices = b.indices;
+		final float[] values = b.floatValues;
+		for(int i = 0; i < m; i ++) {
+			final int cRow = i * n;
+			for(int p = 0; p < k; p ++) {
+				final float x = a[p * m + i];
+				final int end = rowStart[p + 1];
+				for(int q = rowStart[p]; q < end; q ++)
+					c[cRow + indices[q]] += x * values[q];
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package neuralnet.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reading and writing of the memory-mappable network file format (version 0x03).<br>
+ * Versions 0x01 and 0x02 store every number big-endian, one after another, so they have to be parsed one number at a time.
+ * This format instead has a fixed-size header that records where each parameter block is, the type and byte order of the
+ * numbers, followed by the raw blocks, each starting at a multiple of 64 bytes. Loading maps the file with FileChannel.map()
+ * and copies each block into the network's arrays with a single bulk get; when the byte order matches the machine's
+ * (little-endian, as written, on x86 and ARM) that is a plain memory copy.<br>
+ * <br>
+ * Layout (after the first byte, all numbers use the byte order in the header):
+ * <pre>
+ * 0   byte    version (0x03)
+ * 1   byte    byte order: 0 = little-endian, 1 = big-endian
+ * 2   byte    data type of the parameters: 0 = 8-byte double, 1 = 4-byte float
+ * 3   byte    activation function code
+ * 4   byte    cost function code
+ * 5   3 bytes padding
+ * 8   int     number of layers (L)
+ * 12  int     padding
+ * 16  L ints  number of neurons in each layer, padded to a multiple of 8 bytes
+ * ... L pairs of longs: the offsets in the file of the weights and biases of each layer (0 for the input layer)
+ * ... padding to a multiple of 64 bytes, then the blocks
+ * </pre>
+ * The weights of a layer are in the same row-major order as in memory, followed (in their own block) by its biases.
+ */
+final class MappedNetworkFormat {
+	static final byte VERSION = 0x03;
+	//The alignment of the header and of every block, a cache line
+	static final int ALIGNMENT = 64;
+	static final byte LITTLE_ENDIAN = 0;
+	static final byte BIG_ENDIAN = 1;
+	static final byte FLOAT64 = 0;
+	static final byte FLOAT32 = 1;
+
+	private MappedNetworkFormat() {
+	}
+
+	//Rounds up to a multiple of a power of two
+	static long align(long x, int alignment) {
+		return (x + alignment - 1) & -alignment;
+	}
+	//The offset of the table of block offsets
+	static int offsetTableStart(int layers) {
+		return (int) align(16 + 4L * layers, 8);
+	}
+
+	/**
+	 * Writes a network in this format, little-endian.
+	 * @param f - The file to write
+	 * @param neuronCounts - The structure of the network
+	 * @param activationCode - The code of the activation function
+	 * @param costCode - The code of the cost function
+	 * @param weights - The weights of each layer as double[] or float[], in the layout of ClassificationNeuralNetwork
+	 * @param biases - The biases of each layer, of the same type as the weights
+	 * @param dataType - FLOAT64 if the arrays are double[], FLOAT32 if they are float[]
+	 * @throws IOException If writing failed
+	 */
+	static void write(File f, int[] neuronCounts, byte activationCode, byte costCode, Object[] weights, Object[] biases, byte dataType) throws IOException {
+		final int layers = neuronCounts.length;
+		final int size = dataType == FLOAT64 ? 8 : 4;
+		//Lay out the blocks
+		final long[] weightOffsets = new long[layers], biasOffsets = new long[layers];
+		final int headerSize = (int) align(offsetTableStart(layers) + 16L * layers, ALIGNMENT);
+		long end = headerSize;
+		for(int i = 1; i < layers; i ++) {
+			weightOffsets[i] = end;
+			end = align(end + (long) size * neuronCounts[i] * neuronCounts[i - 1], ALIGNMENT);
+			biasOffsets[i] = end;
+			end = align(end + (long) size * neuronCounts[i], ALIGNMENT);
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(VERSION).put(LITTLE_ENDIAN).put(dataType).put(activationCode).put(costCode);
+		header.position(8);
+		header.putInt(layers);
+		header.position(16);
+		for(int i = 0; i < layers; i ++)
+			header.putInt(neuronCounts[i]);
+		header.position(offsetTableStart(layers));
+		for(int i = 0; i < layers; i ++)
+			header.putLong(weightOffsets[i]).putLong(biasOffsets[i]);
+		header.clear();
+
+		//Write to a temporary file that then replaces the destination, like SequentialNetworkFormat
+		final File temp = ClassificationNeuralNetwork.temporaryFile(f);
+		try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header, 0);
+			for(int i = 1; i < layers; i ++) {
+				writeFully(channel, toBytes(weights[i], dataType), weightOffsets[i]);
+				writeFully(channel, toBytes(biases[i], dataType), biasOffsets[i]);
+			}
+			//Pad the end of the file, so that the last block is followed by the alignment like the others
+			if(channel.size() < end)
+				writeFully(channel, ByteBuffer.allocate((int) (end - channel.size())), channel.size());
+			channel.force(false);
+		}
+		catch(IOException e) {
+			temp.delete();
+			throw e;
+		}
+		ClassificationNeuralNetwork.replaceFile(temp, f);
+	}
+	//Puts a double[] or float[] into a new little-endian buffer
+	private static ByteBuffer toBytes(Object array, byte dataType) {
+		ByteBuffer buf;
+		if(dataType == FLOAT64) {
+			double[] a = (double[]) array;
+			buf = ByteBuffer.allocate(8 * a.length).order(ByteOrder.LITTLE_ENDIAN);
+			buf.asDoubleBuffer().put(a);
+		}
+		else {
+			float[] a = (float[]) array;
+			buf = ByteBuffer.allocate(4 * a.length).order(ByteOrder.LITTLE_ENDIAN);
+			buf.asFloatBuffer().put(a);
+		}
+		return buf;
+	}
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while(buf.hasRemaining())
+			position += channel.write(buf, position);
+	}
+
+	/**
+	 * Loads a network saved in this format into an existing (empty) network object, setting its structure, functions
+	 * and parameters. Float parameters are widened to doubles.
+	 * @param channel - The channel of the file to read, opened for reading
+	 * @param net - The network to load into
+	 * @throws IOException If reading failed
+	 * @throws NeuralNetworkException If the file is not valid
+	 */
+	static void read(FileChannel channel, ClassificationNeuralNetwork<?> net) throws IOException, NeuralNetworkException {
+		final long fileSize = channel.size();
+		if(fileSize < 16)
+			throw new NeuralNetworkException("Unsupported format");
+		//A buffer can only be indexed with an int
+		if(fileSize > Integer.MAX_VALUE)
+			throw new NeuralNetworkException("Files larger than 2GB are not supported");
+		MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+		if(buf.get(0) != VERSION)
+			throw new NeuralNetworkException("Unsupported format");
+		final byte byteOrder = buf.get(1), dataType = buf.get(2);
+		if((byteOrder != LITTLE_ENDIAN && byteOrder != BIG_ENDIAN) || (dataType != FLOAT64 && dataType != FLOAT32))
+			throw new NeuralNetworkException("Unsupported byte order or data type");
+		buf.order(byteOrder == LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		final int layers = buf.getInt(8);
+		//The header ends after the table of block offsets, which has to be inside the file
+		if(layers < 1 || align(16 + 4L * layers, 8) + 16L * layers > fileSize)
+			throw new NeuralNetworkException("Invalid number of layers");
+
+		int[] neuronCounts = new int[layers];
+		for(int i = 0; i < layers; i ++) {
+			neuronCounts[i] = buf.getInt(16 + 4 * i);
+			if(neuronCounts[i] <= 0)
+				throw new NeuralNetworkException("Invalid number of neurons");
+		}
+		//Check that every block is inside the file before allocating anything, so that a corrupt header
+		//cannot make the arrays overflow or run out of memory
+		final int size = dataType == FLOAT64 ? 8 : 4;
+		final int table = offsetTableStart(layers);
+		final long[] weightOffsets = new long[layers], biasOffsets = new long[layers];
+		for(int i = 1; i < layers; i ++) {
+			weightOffsets[i] = buf.getLong(table + 16 * i);
+			biasOffsets[i] = buf.getLong(table + 16 * i + 8);
+			checkBlock(weightOffsets[i], (long) neuronCounts[i] * neuronCounts[i - 1], size, fileSize);
+			checkBlock(biasOffsets[i], neuronCounts[i], size, fileSize);
+		}
+		net.layers = layers;
+		net.neuronCounts = neuronCounts;
+		net.neuronMax = ClassificationNeuralNetwork.getMax(neuronCounts);
+		net.activationFunction = ClassificationNeuralNetwork.findActivationFunction(buf.get(3));
+		net.costFunction = ClassificationNeuralNetwork.findCostFunction(buf.get(4));
+		net.weights = net.createWeightsArray();
+		net.biases = net.createBiasesArray();
+
+		for(int i = 1; i < layers; i ++) {
+			readBlock(buf, weightOffsets[i], net.weights[i], dataType);
+			readBlock(buf, biasOffsets[i], net.biases[i], dataType);
+		}
+	}
+	//Checks that a block of count parameters at offset is inside the file
+	private static void checkBlock(long offset, long count, int size, long fileSize) throws NeuralNetworkException {
+		//count is at most (2^31 - 1)^2, so count * size cannot overflow a long
+		if(offset < 0 || offset > fileSize || count * size > fileSize - offset)
+			throw new NeuralNetworkException("Parameter block out of bounds");
+	}
+	//Copies a block of parameters from the mapped file into an array; the block has been checked with checkBlock()
+	private static void readBlock(MappedByteBuffer buf, long offset, double[] dest, byte dataType) {
+		ByteBuffer block = buf.duplicate().order(buf.order());
+		block.position((int) offset);
+		if(dataType == FLOAT64) {
+			block.asDoubleBuffer().get(dest);
+		}
+		else {
+			FloatBuffer floats = block.asFloatBuffer();
+			for(int k = 0; k < dest.length; k ++)
+				dest[k] = floats.get(k);
+		}
+	}
+}
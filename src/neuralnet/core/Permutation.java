@@ -0,0 +1,62 @@
+package neuralnet.core;
+
+/**
+ * A shuffled order of the indices of a data set.<br>
+ * The training methods of ClassificationNeuralNetwork visit the training data through one of these instead of shuffling
+ * the data itself, so the caller's array is never modified and no arrays have to be made for the mini-batches.
+ * A mini-batch is just a range of this permutation. Because the data is only read, one data set can back several
+ * training jobs running at the same time, each with its own Permutation.<br>
+ * The shuffling uses an XorShiftRandom, which is much cheaper than java.util.Random and needs no synchronization.
+ */
+public final class Permutation {
+	final int[] indices;
+	private final XorShiftRandom random;
+
+	/**
+	 * Creates a new permutation of 0 to size - 1 in order, with a random seed.
+	 * @param size - The number of indices
+	 */
+	public Permutation(int size) {
+		indices = new int[size];
+		for(int i = 0; i < size; i ++)
+			indices[i] = i;
+		random = new XorShiftRandom();
+	}
+	/**
+	 * Creates a new permutation of 0 to size - 1 in order, with a specified seed.
+	 * Two permutations with the same size and seed are shuffled the same way.
+	 * @param size - The number of indices
+	 * @param seed - The seed of the random number generator
+	 */
+	public Permutation(int size, long seed) {
+		indices = new int[size];
+		for(int i = 0; i < size; i ++)
+			indices[i] = i;
+		random = new XorShiftRandom(seed);
+	}
+
+	/**
+	 * Shuffles the permutation in place (Fisher-Yates).
+	 */
+	public void shuffle() {
+		for(int i = indices.length - 1; i > 0; i --) {
+			int j = random.nextInt(i + 1);
+			int tmp = indices[i];
+			indices[i] = indices[j];
+			indices[j] = tmp;
+		}
+	}
+	/**
+	 * @return The number of indices
+	 */
+	public int size() {
+		return indices.length;
+	}
+	/**
+	 * @param i - The position in the permutation
+	 * @return The index at that position
+	 */
+	public int get(int i) {
+		return indices[i];
+	}
+}
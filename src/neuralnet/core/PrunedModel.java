@@ -0,0 +1,140 @@
+package neuralnet.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A frozen copy of a ClassificationNeuralNetwork that stores only its non-zero weights, for classifying with pruned networks
+ * (see ClassificationNeuralNetwork.prune()).<br>
+ * The weights of each layer are in compressed sparse row form: the non-zero weights of neuron j are values[i][rowStart[i][j]]
+ * to values[i][rowStart[i][j + 1] - 1], and they connect to the neurons of the layer before in columns[i][rowStart[i][j]]
+ * to columns[i][rowStart[i][j + 1] - 1]. Each weight takes 12 bytes instead of 8, but only the remaining weights are
+ * stored and visited, so the size and the time taken shrink with the number of weights left; past about 1/3 of the weights
+ * removed, the model is smaller than the dense one. See FrozenModel for how a model is shared between threads.
+ * @param <T> - The type of the objects to classify
+ */
+public final class PrunedModel<T extends Classifiable> extends FrozenModel<T, PrunedModel.Scratch> {
+	//The scratch memory of one thread
+	static final class Scratch {
+		//The activations of the layer being computed and of the layer before it
+		final double[] activations;
+		final double[] lastActivations;
+
+		Scratch(int neuronMax) {
+			activations = new double[neuronMax];
+			lastActivations = new double[neuronMax];
+		}
+	}
+
+	private final int[][] rowStart;
+	private final int[][] columns;
+	private final double[][] values;
+	private final double[][] biases;
+
+	/**
+	 * Makes a model from the current non-zero weights, biases and activation function of a network.
+	 * The network must not be changed by another thread while this runs.
+	 * @param net - The network to copy
+	 * @throws NeuralNetworkException If the network has no activation function
+	 */
+	public PrunedModel(ClassificationNeuralNetwork<T> net) throws NeuralNetworkException {
+		super(net);
+		rowStart = new int[layers][];
+		columns = new int[layers][];
+		values = new double[layers][];
+		biases = new double[layers][];
+		for(int i = 1; i < layers; i ++) {
+			final double[] w = net.weights[i];
+			final int count = neuronCounts[i], width = neuronCounts[i - 1];
+			int nonZeros = 0;
+			for(int k = 0; k < w.length; k ++)
+				if(w[k] != 0)
+					nonZeros ++;
+			rowStart[i] = new int[count + 1];
+			columns[i] = new int[nonZeros];
+			values[i] = new double[nonZeros];
+			biases[i] = net.biases[i].clone();
+			int q = 0;
+			for(int j = 0; j < count; j ++) {
+				for(int k = 0; k < width; k ++) {
+					if(w[j * width + k] != 0) {
+						columns[i][q] = k;
+						values[i][q ++] = w[j * width + k];
+					}
+				}
+				rowStart[i][j + 1] = q;
+			}
+		}
+	}
+	/**
+	 * Loads a model from a file saved by ClassificationNeuralNetwork, e.g. a pruned network.
+	 * @param f - The file
+	 * @throws IOException If the file could not be read
+	 * @throws NeuralNetworkException If the file is not a valid network, or its activation function is not one of the pre-defined ones
+	 */
+	public PrunedModel(File f) throws IOException, NeuralNetworkException {
+		this(new ClassificationNeuralNetwork<T>(f));
+	}
+
+	@Override
+	Scratch newScratch() {
+		return new Scratch(neuronMax);
+	}
+	@Override
+	double[] feedforward(T obj, Scratch s) {
+		double[] lastActivations = s.lastActivations;
+		double[] activations = s.activations;
+		if(obj instanceof ByteClassifiable) {
+			ByteClassifiable byteObj = (ByteClassifiable) obj;
+			final byte[] input = byteObj.getInputBytes();
+			final int offset = byteObj.getInputOffset();
+			final double scale = byteObj.getInputScale();
+			for(int k = 0; k < neuronCounts[0]; k ++)
+				lastActivations[k] = (input[offset + k] & 0xFF) * scale;
+		}
+		else {
+			obj.writeNeuralNetworkInput(lastActivations, 0);
+		}
+		for(int i = 1; i < layers; i ++) {
+			final int[] start = rowStart[i], cols = columns[i];
+			final double[] w = values[i], b = biases[i];
+			for(int j = 0; j < neuronCounts[i]; j ++) {
+				//Two sums, so that the additions of neighbouring weights don't have to wait for each other
+				double sum0 = 0, sum1 = 0;
+				int q = start[j];
+				final int end = start[j + 1];
+				for(; q + 1 < end; q += 2) {
+					sum0 += w[q] * lastActivations[cols[q]];
+					sum1 += w[q + 1] * lastActivations[cols[q + 1]];
+				}
+				if(q < end)
+					sum0 += w[q] * lastActivations[cols[q]];
+				activations[j] = (sum0 + sum1) + b[j];
+			}
+			activationFunction.activation(activations, activations, 0, neuronCounts[i]);
+			double[] tmp = lastActivations;
+			lastActivations = activations;
+			activations = tmp;
+		}
+		return lastActivations;
+	}
+
+	/**
+	 * @return The number of weights stored, i.e. the non-zero weights of the network
+	 */
+	public int getWeightCount() {
+		int count = 0;
+		for(int i = 1; i < layers; i ++)
+			count += values[i].length;
+		return count;
+	}
+	/**
+	 * @return The number of bytes taken by the weights, their column indices, the row starts and the biases of this model
+	 */
+	public long getParameterBytes() {
+		long bytes = 0;
+		for(int i = 1; i < layers; i ++)
+			bytes += 12L * values[i].length + 4L * rowStart[i].length + 8L * biases[i].length;
+		return bytes;
+	}
+}
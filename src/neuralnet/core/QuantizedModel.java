@@ -0,0 +1,202 @@
+package neuralnet.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A frozen copy of a trained ClassificationNeuralNetwork with 8-bit integer weights and activations, for classification only.<br>
+ * Each row of weights (the weights of one neuron) is quantized to signed bytes with its own scale, the largest absolute weight
+ * of the row mapping to 127. The activations of every layer but the output layer are quantized to unsigned bytes, using a
+ * scale and zero point calibrated on a sample of data so that the range of activations seen in the sample maps to 0-255.
+ * The weighted sums are then computed as sums of byte products in int arithmetic, and only converted back to doubles to
+ * add the bias and apply the activation function. The inputs of ByteClassifiables, such as the pixels of MNIST images,
+ * are used as they are, without being converted or copied. Other inputs are quantized like the activations.<br>
+ * The weights take an eighth of the memory of the double weights. See FrozenModel for how a model is shared between threads.
+ * @param <T> - The type of the objects to classify
+ */
+public final class QuantizedModel<T extends Classifiable> extends FrozenModel<T, QuantizedModel.Scratch> {
+	//The scratch memory of one thread
+	static final class Scratch {
+		//The weighted sums or activations of the layer being computed
+		final double[] values;
+		//The quantized activations of the layer being computed and of the layer before it
+		final byte[] quantized;
+		final byte[] lastQuantized;
+		//The int sums of the layer being computed
+		final int[] sums;
+
+		Scratch(int neuronMax) {
+			values = new double[neuronMax];
+			quantized = new byte[neuronMax];
+			lastQuantized = new byte[neuronMax];
+			sums = new int[neuronMax];
+		}
+	}
+
+	//The quantized weights of each layer, in column-major order: the weight between neuron j of layer i
+	//and neuron k of the layer before it is weights[i][k * neuronCounts[i] + j]
+	private final byte[][] weights;
+	//The scale of each row of weights: w = rowScales[i][j] * q
+	private final double[][] rowScales;
+	//The sum of the quantized weights of each row, to take out the zero point of the activations
+	private final int[][] rowSums;
+	private final double[][] biases;
+	//The scale and zero point of the quantized activations of each layer: a = activationScales[i] * (q - zeroPoints[i])
+	//The entries of the output layer are not used, and those of the input layer are only used for inputs that are not bytes
+	private final double[] activationScales;
+	private final int[] zeroPoints;
+
+	/**
+	 * Quantizes a network, calibrating the ranges of the activations on a sample of data.
+	 * The network must not be changed by another thread while this runs.
+	 * @param net - The network to quantize
+	 * @param calibrationData - The data to calibrate on, e.g. a few hundred validation images. It should cover the
+	 * range of inputs the model will be used on; activations outside of the range seen are clamped.
+	 * @throws NeuralNetworkException If the network has no activation function
+	 */
+	public QuantizedModel(ClassificationNeuralNetwork<T> net, T[] calibrationData) throws NeuralNetworkException {
+		super(net);
+		weights = new byte[layers][];
+		rowScales = new double[layers][];
+		rowSums = new int[layers][];
+		biases = new double[layers][];
+		for(int i = 1; i < layers; i ++) {
+			final int count = neuronCounts[i], width = neuronCounts[i - 1];
+			weights[i] = new byte[count * width];
+			rowScales[i] = new double[count];
+			rowSums[i] = new int[count];
+			biases[i] = net.biases[i].clone();
+			for(int j = 0; j < count; j ++) {
+				final int row = j * width;
+				double max = 0;
+				for(int k = 0; k < width; k ++)
+					max = Math.max(max, Math.abs(net.weights[i][row + k]));
+				//A row of zeros gets a scale of 1 so it doesn't divide by 0
+				final double scale = max > 0 ? max / 127 : 1;
+				rowScales[i][j] = scale;
+				for(int k = 0; k < width; k ++) {
+					final int q = (int) Math.round(net.weights[i][row + k] / scale);
+					weights[i][k * count + j] = (byte) q;
+					rowSums[i][j] += q;
+				}
+			}
+		}
+
+		//Find the range of the inputs and of the activations of each layer on the calibration data
+		final double[] min = new double[layers], max = new double[layers];
+		final TrainingWorkspace ws = net.getClassifyWorkspace();
+		int n = 0;
+		while(n < calibrationData.length) {
+			n = net.stackInputs(calibrationData, null, n, calibrationData.length, ws, neuronCounts[0], neuronCounts[layers - 1]);
+			if(ws.input.rows == 0)
+				break;
+			if(ws.input.byteInput)
+				ws.input.convertInputBytes(ws.input.rows);
+			net.feedforward(ws, neuronCounts, net.weights, net.biases);
+			for(int i = 0; i < layers - 1; i ++) {
+				for(int index = 0; index < ws.input.rows * neuronCounts[i]; index ++) {
+					min[i] = Math.min(min[i], ws.a[i][index]);
+					max[i] = Math.max(max[i], ws.a[i][index]);
+				}
+			}
+		}
+		//The range includes 0 (min and max start at 0), so that 0 is represented exactly
+		activationScales = new double[layers];
+		zeroPoints = new int[layers];
+		for(int i = 0; i < layers - 1; i ++) {
+			activationScales[i] = max[i] > min[i] ? (max[i] - min[i]) / 255 : 1;
+			zeroPoints[i] = (int) Math.round(-min[i] / activationScales[i]);
+		}
+	}
+	/**
+	 * Loads a network from a file saved by ClassificationNeuralNetwork and quantizes it.
+	 * @param f - The file
+	 * @param calibrationData - The data to calibrate on; see QuantizedModel(ClassificationNeuralNetwork, T[])
+	 * @throws IOException If the file could not be read
+	 * @throws NeuralNetworkException If the file is not a valid network, or its activation function is not one of the pre-defined ones
+	 */
+	public QuantizedModel(File f, T[] calibrationData) throws IOException, NeuralNetworkException {
+		this(new ClassificationNeuralNetwork<T>(f), calibrationData);
+	}
+
+	//Quantizes a value to an unsigned byte with a scale and zero point, clamping it to 0-255
+	private static byte quantize(double value, double scale, int zeroPoint) {
+		long q = Math.round(value / scale) + zeroPoint;
+		return (byte) (q < 0 ? 0 : q > 255 ? 255 : q);
+	}
+	@Override
+	Scratch newScratch() {
+		return new Scratch(neuronMax);
+	}
+	@Override
+	double[] feedforward(T obj, Scratch s) {
+		final int inputs = neuronCounts[0];
+		final double[] values = s.values;
+		byte[] input, output = s.quantized;
+		int offset;
+		double inputScale;
+		int zeroPoint;
+		if(obj instanceof ByteClassifiable) {
+			//Use the input bytes as the quantized input, with the object's scale and a zero point of 0
+			ByteClassifiable byteObj = (ByteClassifiable) obj;
+			input = byteObj.getInputBytes();
+			offset = byteObj.getInputOffset();
+			inputScale = byteObj.getInputScale();
+			zeroPoint = 0;
+		}
+		else {
+			obj.writeNeuralNetworkInput(values, 0);
+			input = s.lastQuantized;
+			offset = 0;
+			inputScale = activationScales[0];
+			zeroPoint = zeroPoints[0];
+			for(int k = 0; k < inputs; k ++)
+				input[k] = quantize(values[k], inputScale, zeroPoint);
+		}
+		for(int i = 1; i < layers; i ++) {
+			final int count = neuronCounts[i], width = neuronCounts[i - 1];
+			final byte[] w = weights[i];
+			final double[] scales = rowScales[i], b = biases[i];
+			final int[] sums = rowSums[i];
+			final int[] acc = s.sums;
+			Arrays.fill(acc, 0, count, 0);
+			//Add each input times its column of weights to the sums of every neuron; the inner loop is over contiguous
+			//weights and sums, and inputs of 0 (most of the pixels of an MNIST image) are skipped
+			for(int k = 0; k < width; k ++) {
+				final int x = input[offset + k] & 0xFF;
+				if(x == 0)
+					continue;
+				final int column = k * count;
+				for(int j = 0; j < count; j ++)
+					acc[j] += w[column + j] * x;
+			}
+			for(int j = 0; j < count; j ++) {
+				//sum(w * a) = rowScale * inputScale * sum(qw * (qa - zeroPoint))
+				values[j] = scales[j] * inputScale * (acc[j] - zeroPoint * sums[j]) + b[j];
+			}
+			activationFunction.activation(values, values, 0, count);
+			if(i != layers - 1) {
+				//Quantize the activations for the next layer, alternating between the two byte buffers
+				inputScale = activationScales[i];
+				zeroPoint = zeroPoints[i];
+				for(int j = 0; j < count; j ++)
+					output[j] = quantize(values[j], inputScale, zeroPoint);
+				input = output;
+				output = output == s.quantized ? s.lastQuantized : s.quantized;
+				offset = 0;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return The number of bytes taken by the weights, biases and scales of this model
+	 */
+	public long getParameterBytes() {
+		long bytes = 0;
+		for(int i = 1; i < layers; i ++)
+			bytes += weights[i].length + 8L * biases[i].length + 8L * rowScales[i].length + 4L * rowSums[i].length;
+		return bytes;
+	}
+}
@@ -0,0 +1,118 @@
+package neuralnet.core;
+
+/**
+ * The plain loop implementation of Kernels, used when the Java Vector API is not available.
+ */
+final class ScalarKernels extends Kernels {
+	@Override
+	String name() {
+		return "scalar";
+	}
+	@Override
+	double sparseInputThreshold() {
+		return 0.4;
+	}
+	@Override
+	double dot(final double[] a, final int aOffset, final double[] b, final int bOffset, final int len) {
+		double result = 0;
+		for(int i = 0; i < len; i ++)
+			result += a[aOffset + i] * b[bOffset + i];
+		return result;
+	}
+	@Override
+	void dot4(final double[] a, final int aOffset, final double[] b, final int bOffset, final int stride, final int len, final double[] out, final int outOffset) {
+		final int b0 = bOffset, b1 = b0 + stride, b2 = b1 + stride, b3 = b2 + stride;
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		for(int i = 0; i < len; i ++) {
+			final double x = a[aOffset + i];
+			s0 += x * b[b0 + i];
+			s1 += x * b[b1 + i];
+			s2 += x * b[b2 + i];
+			s3 += x * b[b3 + i];
+		}
+		out[outOffset] += s0;
+		out[outOffset + 1] += s1;
+		out[outOffset + 2] += s2;
+		out[outOffset + 3] += s3;
+	}
+	@Override
+	void axpy(final double alpha, final double[] x, final int xOffset, final double[] y, final int yOffset, final int len) {
+		for(int i = 0; i < len; i ++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+	@Override
+	void multiplyAdd4(final double x0, final double x1, final double x2, final double x3, final double[] b, final int bOffset, final int stride,
+			final double[] c, final int cOffset, final int len) {
+		final int b0 = bOffset, b1 = b0 + stride, b2 = b1 + stride, b3 = b2 + stride;
+		for(int i = 0; i < len; i ++)
+			c[cOffset + i] += x0 * b[b0 + i] + x1 * b[b1 + i] + x2 * b[b2 + i] + x3 * b[b3 + i];
+	}
+	@Override
+	void update(final double[] w, final double[] gradient, final double[] velocity, final int len, final double decay,
+			final double learningRate, final double momentumCoefficient) {
+		if(velocity != null) {
+			for(int k = 0; k < len; k ++) {
+				//v -> v' = mu * v - eta * gradient
+				velocity[k] = momentumCoefficient * velocity[k] - learningRate * gradient[k];
+				//w -> w' = w * (1 - (eta * lambda / n)) + v
+				w[k] = w[k] * decay + velocity[k];
+			}
+		}
+		else {
+			for(int k = 0; k < len; k ++) {
+				//w -> w' = w * (1 - (eta * lambda / n)) - eta * gradient
+				w[k] = w[k] * decay - learningRate * gradient[k];
+			}
+		}
+	}
+
+	@Override
+	float dot(final float[] a, final int aOffset, final float[] b, final int bOffset, final int len) {
+		float result = 0;
+		for(int i = 0; i < len; i ++)
+			result += a[aOffset + i] * b[bOffset + i];
+		return result;
+	}
+	@Override
+	void dot4(final float[] a, final int aOffset, final float[] b, final int bOffset, final int stride, final int len, final float[] out, final int outOffset) {
+		final int b0 = bOffset, b1 = b0 + stride, b2 = b1 + stride, b3 = b2 + stride;
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		for(int i = 0; i < len; i ++) {
+			final float x = a[aOffset + i];
+			s0 += x * b[b0 + i];
+			s1 += x * b[b1 + i];
+			s2 += x * b[b2 + i];
+			s3 += x * b[b3 + i];
+		}
+		out[outOffset] += s0;
+		out[outOffset + 1] += s1;
+		out[outOffset + 2] += s2;
+		out[outOffset + 3] += s3;
+	}
+	@Override
+	void axpy(final float alpha, final float[] x, final int xOffset, final float[] y, final int yOffset, final int len) {
+		for(int i = 0; i < len; i ++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+	@Override
+	void multiplyAdd4(final float x0, final float x1, final float x2, final float x3, final float[] b, final int bOffset, final int stride,
+			final float[] c, final int cOffset, final int len) {
+		final int b0 = bOffset, b1 = b0 + stride, b2 = b1 + stride, b3 = b2 + stride;
+		for(int i = 0; i < len; i ++)
+			c[cOffset + i] += x0 * b[b0 + i] + x1 * b[b1 + i] + x2 * b[b2 + i] + x3 * b[b3 + i];
+	}
+	@Override
+	void update(final float[] w, final float[] gradient, final float[] velocity, final int len, final float decay,
+			final float learningRate, final float momentumCoefficient) {
+		if(velocity != null) {
+			for(int k = 0; k < len; k ++) {
+				velocity[k] = momentumCoefficient * velocity[k] - learningRate * gradient[k];
+				w[k] = w[k] * decay + velocity[k];
+			}
+		}
+		else {
+			for(int k = 0; k < len; k ++)
+				w[k] = w[k] * decay - learningRate * gradient[k];
+		}
+	}
+}
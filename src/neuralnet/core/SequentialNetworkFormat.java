@@ -0,0 +1,180 @@
+package neuralnet.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reading and writing of the original network file formats, version 0x01 (8-byte doubles) and 0x02 (4-byte floats).<br>
+ * The layout is described in ClassificationNeuralNetwork.saveData(); every number is big-endian and they follow each
+ * other with no padding. Instead of reading and writing one number at a time through a DataInputStream or DataOutputStream,
+ * which takes a call into the stream (and, unbuffered, a system call) per parameter, the file is moved through a FileChannel
+ * in large blocks, and the parameters are copied between the block and the network's arrays with bulk DoubleBuffer and
+ * FloatBuffer transfers.<br>
+ * Files are written to a temporary file in the same folder, which then replaces the destination in one step, so that a
+ * crash in the middle of a save leaves either the old file or the new one, never a truncated one.
+ */
+final class SequentialNetworkFormat {
+	//The size of the block moved through the channel at a time
+	static final int BUFFER_SIZE = 1 << 20;
+
+	private SequentialNetworkFormat() {
+	}
+
+	//Reads from the channel until the buffer has at least n bytes remaining, keeping the ones not yet used
+	private static void ensure(FileChannel channel, ByteBuffer buf, int n) throws IOException {
+		if(buf.remaining() >= n)
+			return;
+		buf.compact();
+		while(buf.position() < n) {
+			if(channel.read(buf) < 0)
+				throw new EOFException();
+		}
+		buf.flip();
+	}
+	/**
+	 * Loads a network saved in version 0x01 or 0x02 into an existing (empty) network object, setting its structure,
+	 * functions and parameters. Float parameters are widened to doubles.
+	 * @param channel - The channel to read from, positioned right after the version byte
+	 * @param net - The network to load into
+	 * @param version - The version of the file, 0x01 or 0x02
+	 * @throws IOException If reading failed, or the file ended early
+	 * @throws NeuralNetworkException If the file is not valid
+	 */
+	static void read(FileChannel channel, ClassificationNeuralNetwork<?> net, byte version) throws IOException, NeuralNetworkException {
+		ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buf.flip();
+		//The neuron counts end with a 0
+		int[] neuronCounts = new int[8];
+		int layers = 0;
+		int count;
+		while(true) {
+			ensure(channel, buf, 4);
+			if((count = buf.getInt()) == 0)
+				break;
+			if(count < 0)
+				throw new NeuralNetworkException("Invalid number of neurons");
+			if(layers == neuronCounts.length)
+				neuronCounts = Arrays.copyOf(neuronCounts, layers * 2);
+			neuronCounts[layers ++] = count;
+		}
+		if(layers == 0)
+			throw new NeuralNetworkException("Invalid number of layers");
+		ensure(channel, buf, 2);
+		net.layers = layers;
+		net.neuronCounts = Arrays.copyOf(neuronCounts, layers);
+		net.neuronMax = ClassificationNeuralNetwork.getMax(net.neuronCounts);
+		net.activationFunction = ClassificationNeuralNetwork.findActivationFunction(buf.get());
+		net.costFunction = ClassificationNeuralNetwork.findCostFunction(buf.get());
+		net.weights = net.createWeightsArray();
+		net.biases = net.createBiasesArray();
+
+		//All the weights, then all the biases
+		final boolean singlePrecision = version == FloatClassificationNeuralNetwork.SAVE_FORMAT_VER;
+		for(int i = 1; i < layers; i ++)
+			readArray(channel, buf, net.weights[i], singlePrecision);
+		for(int i = 1; i < layers; i ++)
+			readArray(channel, buf, net.biases[i], singlePrecision);
+	}
+	//Fills an array with the next doubles or floats of the file, a buffer at a time
+	private static void readArray(FileChannel channel, ByteBuffer buf, double[] dest, boolean singlePrecision) throws IOException {
+		final int size = singlePrecision ? 4 : 8;
+		int done = 0;
+		while(done < dest.length) {
+			ensure(channel, buf, size);
+			final int n = Math.min(dest.length - done, buf.remaining() / size);
+			if(singlePrecision) {
+				FloatBuffer floats = buf.asFloatBuffer();
+				for(int k = 0; k < n; k ++)
+					dest[done + k] = floats.get(k);
+			}
+			else {
+				buf.asDoubleBuffer().get(dest, done, n);
+			}
+			buf.position(buf.position() + n * size);
+			done += n;
+		}
+	}
+
+	/**
+	 * Writes a network in version 0x01 or 0x02, replacing the file atomically.
+	 * @param f - The file to write
+	 * @param neuronCounts - The structure of the network
+	 * @param activationCode - The code of the activation function
+	 * @param costCode - The code of the cost function
+	 * @param weights - The weights of each layer as double[] (version 0x01) or float[] (version 0x02), in the layout of ClassificationNeuralNetwork
+	 * @param biases - The biases of each layer, of the same type as the weights
+	 * @param version - The version to write, 0x01 or 0x02
+	 * @throws IOException If writing failed
+	 */
+	static void write(File f, int[] neuronCounts, byte activationCode, byte costCode, Object[] weights, Object[] biases, byte version) throws IOException {
+		final File temp = ClassificationNeuralNetwork.temporaryFile(f);
+		try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buf.put(version);
+			for(int i = 0; i < neuronCounts.length; i ++) {
+				if(buf.remaining() < 4)
+					flush(channel, buf);
+				buf.putInt(neuronCounts[i]);
+			}
+			if(buf.remaining() < 6)
+				flush(channel, buf);
+			buf.putInt(0);
+			buf.put(activationCode);
+			buf.put(costCode);
+			for(int i = 1; i < neuronCounts.length; i ++)
+				writeArray(channel, buf, weights[i]);
+			for(int i = 1; i < neuronCounts.length; i ++)
+				writeArray(channel, buf, biases[i]);
+			flush(channel, buf);
+			channel.force(false);
+		}
+		catch(IOException e) {
+			temp.delete();
+			throw e;
+		}
+		ClassificationNeuralNetwork.replaceFile(temp, f);
+	}
+	//Writes a double[] or float[] to the file, a buffer at a time
+	private static void writeArray(FileChannel channel, ByteBuffer buf, Object array) throws IOException {
+		if(array instanceof double[]) {
+			final double[] a = (double[]) array;
+			int done = 0;
+			while(done < a.length) {
+				if(buf.remaining() < 8)
+					flush(channel, buf);
+				DoubleBuffer doubles = buf.asDoubleBuffer();
+				final int n = Math.min(a.length - done, doubles.remaining());
+				doubles.put(a, done, n);
+				buf.position(buf.position() + n * 8);
+				done += n;
+			}
+		}
+		else {
+			final float[] a = (float[]) array;
+			int done = 0;
+			while(done < a.length) {
+				if(buf.remaining() < 4)
+					flush(channel, buf);
+				FloatBuffer floats = buf.asFloatBuffer();
+				final int n = Math.min(a.length - done, floats.remaining());
+				floats.put(a, done, n);
+				buf.position(buf.position() + n * 4);
+				done += n;
+			}
+		}
+	}
+	//Writes out everything in the buffer and clears it
+	private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while(buf.hasRemaining())
+			channel.write(buf);
+		buf.clear();
+	}
+}
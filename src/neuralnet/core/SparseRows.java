@@ -0,0 +1,103 @@
+package neuralnet.core;
+
+/**
+ * The rows of a matrix, e.g. the inputs of a batch, in compressed sparse row form: only the non-zero elements are stored.<br>
+ * The non-zero elements of row i are values[rowStart[i]] to values[rowStart[i + 1] - 1], and they are in columns
+ * indices[rowStart[i]] to indices[rowStart[i + 1] - 1], in increasing order.
+ * The arrays are allocated once for the largest number of rows and columns and refilled for each batch.
+ * A single-precision matrix keeps its values in floatValues instead of values.
+ */
+final class SparseRows {
+	final int[] rowStart;
+	final int[] indices;
+	final double[] values;
+	final float[] floatValues;
+	//The number of rows currently stored
+	int rows;
+
+	/**
+	 * Creates an empty matrix.
+	 * @param maxRows - The largest number of rows it has to hold
+	 * @param columns - The number of columns
+	 */
+	SparseRows(int maxRows, int columns) {
+		this(maxRows, columns, false);
+	}
+	/**
+	 * Creates an empty matrix, with single- or double-precision values.
+	 * @param maxRows - The largest number of rows it has to hold
+	 * @param columns - The number of columns
+	 * @param singlePrecision - Whether the values are floats, added with addRow(float[], int, int)
+	 */
+	SparseRows(int maxRows, int columns, boolean singlePrecision) {
+		rowStart = new int[maxRows + 1];
+		indices = new int[maxRows * columns];
+		values = singlePrecision ? null : new double[maxRows * columns];
+		floatValues = singlePrecision ? new float[maxRows * columns] : null;
+	}
+
+	/**
+	 * Removes all the rows.
+	 */
+	void clear() {
+		rows = 0;
+	}
+	/**
+	 * Adds a row, taking the non-zero elements from a dense array.
+	 * @param src - The array containing the row
+	 * @param offset - The index of the first element of the row in src
+	 * @param len - The number of columns
+	 */
+	void addRow(double[] src, int offset, int len) {
+		int q = rowStart[rows];
+		for(int p = 0; p < len; p ++) {
+			final double x = src[offset + p];
+			if(x != 0) {
+				indices[q] = p;
+				values[q ++] = x;
+			}
+		}
+		rowStart[++ rows] = q;
+	}
+	/**
+	 * Adds a row, taking the non-zero elements from an array of unsigned bytes, multiplied by scale.
+	 * @param src - The array containing the row
+	 * @param offset - The index of the first element of the row in src
+	 * @param len - The number of columns
+	 * @param scale - The factor to multiply the bytes by
+	 */
+	void addRow(byte[] src, int offset, int len, double scale) {
+		int q = rowStart[rows];
+		for(int p = 0; p < len; p ++) {
+			final int x = src[offset + p] & 0xFF;
+			if(x != 0) {
+				indices[q] = p;
+				values[q ++] = x * scale;
+			}
+		}
+		rowStart[++ rows] = q;
+	}
+	/**
+	 * Adds a row to a single-precision matrix, taking the non-zero elements from a dense array.
+	 * @param src - The array containing the row
+	 * @param offset - The index of the first element of the row in src
+	 * @param len - The number of columns
+	 */
+	void addRow(float[] src, int offset, int len) {
+		int q = rowStart[rows];
+		for(int p = 0; p < len; p ++) {
+			final float x = src[offset + p];
+			if(x != 0) {
+				indices[q] = p;
+				floatValues[q ++] = x;
+			}
+		}
+		rowStart[++ rows] = q;
+	}
+	/**
+	 * @return The number of non-zero elements stored
+	 */
+	int nonZeros() {
+		return rowStart[rows];
+	}
+}
@@ -0,0 +1,31 @@
+package neuralnet.core;
+
+import java.io.IOException;
+
+/**
+ * A source of training data that is handed to the network a chunk at a time instead of as one array, so that the data set
+ * can be larger than the heap, e.g. when it is streamed from files on disk.<br>
+ * Each epoch, the network calls startEpoch() and then nextChunk() until it returns null, shuffling each chunk and training
+ * on it in mini-batches. A source is expected to give the chunks in a different random order each epoch, and to make each
+ * chunk a random mix of the data (e.g. blocks from all over the data set), since samples are only shuffled within a chunk.
+ * @param <T> - The type of the samples
+ */
+public interface TrainingDataSource<T extends Classifiable> {
+	/**
+	 * The number of samples in one epoch, for L2 regularization.
+	 * @return The number of samples in the data set
+	 */
+	public int size();
+	/**
+	 * Starts a new pass over the data, in a new random order.
+	 * @throws IOException If the data could not be read
+	 */
+	public void startEpoch() throws IOException;
+	/**
+	 * Gets the next chunk of the current epoch. The array and the samples in it only have to stay valid until the next call,
+	 * so that a source can reuse the same memory for every chunk.
+	 * @return The next chunk, or null if the epoch is over
+	 * @throws IOException If the data could not be read
+	 */
+	public T[] nextChunk() throws IOException;
+}
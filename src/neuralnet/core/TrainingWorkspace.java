@@ -0,0 +1,119 @@
+package neuralnet.core;
+
+import java.util.Arrays;
+
+/**
+ * The scratch memory used by one thread to train a ClassificationNeuralNetwork.<br>
+ * A workspace is sized once from the structure of the network and the number of samples it has to hold,
+ * then reused for every mini-batch so that the training loop does not allocate anything.
+ * Each row of the activation, weighted sum, error and expected output matrices belongs to one sample.
+ */
+public final class TrainingWorkspace {
+	//The structure of the network this workspace was made for
+	final int[] neuronCounts;
+	//The number of samples this workspace can hold at a time
+	final int capacity;
+
+	//Activations
+	final double[][] a;
+	//Weighted sums
+	final double[][] z;
+	//Errors
+	final double[][] e;
+	//The stacked inputs and expected outputs of the samples being worked on; a[0] is input.a0
+	InputBatch input;
+	//The block of the byte inputs being worked on, converted to doubles
+	final double[] inputBlock;
+	//Summed dC/db and dC/dw
+	final double[][] biasDerivatives;
+	final double[][] weightDerivatives;
+	//The number of samples whose gradients are in biasDerivatives and weightDerivatives
+	int count;
+	//One row of the output layer, passed to toClassification() when classifying
+	final double[] output;
+
+	/**
+	 * Creates a new workspace.
+	 * @param neuronCounts - The structure of the network
+	 * @param capacity - The number of samples the workspace can hold at a time
+	 */
+	TrainingWorkspace(int[] neuronCounts, int capacity) {
+		this(neuronCounts, capacity, true);
+	}
+	/**
+	 * Creates a new workspace, optionally without the memory needed for backpropagation.
+	 * @param neuronCounts - The structure of the network
+	 * @param capacity - The number of samples the workspace can hold at a time
+	 * @param training - Whether the workspace will be used for training; if false, it can only be used to feed forward
+	 */
+	TrainingWorkspace(int[] neuronCounts, int capacity, boolean training) {
+		this.neuronCounts = neuronCounts.clone();
+		this.capacity = capacity;
+		int layers = neuronCounts.length;
+		a = new double[layers][];
+		z = new double[layers][];
+		e = new double[layers][];
+		biasDerivatives = new double[layers][];
+		weightDerivatives = new double[layers][];
+		for(int i = 0; i < layers; i ++) {
+			//a[0] comes from the input batch
+			if(i != 0)
+				a[i] = new double[capacity * neuronCounts[i]];
+			z[i] = new double[capacity * neuronCounts[i]];
+			e[i] = new double[training ? capacity * neuronCounts[i] : 0];
+			biasDerivatives[i] = new double[training ? neuronCounts[i] : 0];
+			weightDerivatives[i] = new double[training && i != 0 ? neuronCounts[i] * neuronCounts[i - 1] : 0];
+		}
+		output = new double[neuronCounts[layers - 1]];
+		inputBlock = new double[capacity * Math.min(LinearAlgebra.COL_BLOCK, neuronCounts[0])];
+		setInput(new InputBatch(neuronCounts[0], neuronCounts[layers - 1], capacity));
+	}
+
+	/**
+	 * Checks whether this workspace can be used for a network and number of samples.
+	 * @param neuronCounts - The structure of the network
+	 * @param samples - The number of samples
+	 * @return Whether this workspace fits
+	 */
+	boolean fits(int[] neuronCounts, int samples) {
+		return samples <= capacity && Arrays.equals(this.neuronCounts, neuronCounts);
+	}
+	/**
+	 * Makes a batch of stacked inputs the one this workspace works on.
+	 * @param batch - The batch; it cannot hold more samples than the workspace
+	 * @return The batch that was in use before, which is no longer used by this workspace
+	 */
+	InputBatch setInput(InputBatch batch) {
+		if(batch.capacity > capacity)
+			throw new IllegalArgumentException("The batch is larger than the workspace");
+		InputBatch old = input;
+		input = batch;
+		a[0] = batch.a0;
+		return old;
+	}
+	/**
+	 * Sets the summed gradients and the sample count to 0.
+	 */
+	void clearGradient() {
+		for(int i = 1; i < biasDerivatives.length; i ++) {
+			Arrays.fill(biasDerivatives[i], 0.0);
+			Arrays.fill(weightDerivatives[i], 0.0);
+		}
+		count = 0;
+	}
+	/**
+	 * Adds the summed gradients and sample count of another workspace to this one.
+	 * @param other - The workspace to add
+	 */
+	void addGradient(TrainingWorkspace other) {
+		for(int i = 1; i < biasDerivatives.length; i ++) {
+			final double[] b = biasDerivatives[i], ob = other.biasDerivatives[i];
+			for(int j = 0; j < b.length; j ++)
+				b[j] += ob[j];
+			final double[] w = weightDerivatives[i], ow = other.weightDerivatives[i];
+			for(int k = 0; k < w.length; k ++)
+				w[k] += ow[k];
+		}
+		count += other.count;
+	}
+}
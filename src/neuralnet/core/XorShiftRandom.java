@@ -0,0 +1,60 @@
+package neuralnet.core;
+
+/**
+ * A small, fast xorshift64* random number generator, used for shuffling training data and augmenting images.<br>
+ * It is much cheaper than java.util.Random and needs no synchronization, but a generator must only be used by one
+ * thread at a time; give each thread its own. It is not suitable for anything security-related.
+ */
+public final class XorShiftRandom {
+	//Used to give generators made at the same time different seeds
+	private static long seedUniquifier = 0x2545F4914F6CDD1DL;
+
+	private long state;
+
+	/**
+	 * Creates a new generator with a random seed.
+	 */
+	public XorShiftRandom() {
+		this(nextSeed());
+	}
+	/**
+	 * Creates a new generator with a specified seed. Two generators with the same seed produce the same numbers.
+	 * @param seed - The seed
+	 */
+	public XorShiftRandom(long seed) {
+		//xorshift cannot have a state of 0
+		state = seed != 0 ? seed : 0x9E3779B97F4A7C15L;
+	}
+
+	private static synchronized long nextSeed() {
+		seedUniquifier *= 0x9E3779B97F4A7C15L;
+		return seedUniquifier ^ System.nanoTime();
+	}
+
+	/**
+	 * @return A random long
+	 */
+	public long nextLong() {
+		long x = state;
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		state = x;
+		return x * 0x2545F4914F6CDD1DL;
+	}
+	/**
+	 * Gets a random int from 0 (inclusive) to bound (exclusive). The bias from using multiply-shift is negligible
+	 * for bounds far below 2<sup>32</sup>.
+	 * @param bound - The upper bound; must be positive
+	 * @return The random int
+	 */
+	public int nextInt(int bound) {
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+	/**
+	 * @return A random double from 0 (inclusive) to 1 (exclusive)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+}